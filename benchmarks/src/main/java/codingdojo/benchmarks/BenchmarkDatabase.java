@@ -0,0 +1,73 @@
+package codingdojo.benchmarks;
+
+import codingdojo.data.CustomerDataLayer;
+import codingdojo.entities.internal.CompanyCandidates;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory data layer for the benchmarks, so that a run measures the sync and not a database
+ */
+class BenchmarkDatabase implements CustomerDataLayer {
+
+    private final Map<String, Customer> customersByExternalId = new HashMap<>();
+    private final Map<String, Customer> customersByMasterExternalId = new HashMap<>();
+    private final Map<String, Customer> customersByCompanyNumber = new HashMap<>();
+    private final List<ShoppingList> shoppingLists = new ArrayList<>();
+    private int nextInternalId;
+
+    void addCustomer(Customer customer) {
+        if (customer.getExternalId() != null) {
+            customersByExternalId.put(customer.getExternalId(), customer);
+        }
+        if (customer.getMasterExternalId() != null) {
+            customersByMasterExternalId.put(customer.getMasterExternalId(), customer);
+        }
+        if (customer.getCompanyNumber() != null) {
+            customersByCompanyNumber.put(customer.getCompanyNumber(), customer);
+        }
+    }
+
+    @Override
+    public Customer updateCustomerRecord(Customer customer) {
+        addCustomer(customer);
+        return customer;
+    }
+
+    @Override
+    public Customer createCustomerRecord(Customer customer) {
+        customer.setInternalId("internal-" + nextInternalId++);
+        addCustomer(customer);
+        return customer;
+    }
+
+    @Override
+    public void updateShoppingList(ShoppingList consumerShoppingList) {
+        shoppingLists.add(consumerShoppingList);
+    }
+
+    @Override
+    public Customer findByExternalId(String externalId) {
+        return customersByExternalId.get(externalId);
+    }
+
+    @Override
+    public Customer findByMasterExternalId(String masterExternalId) {
+        return customersByMasterExternalId.get(masterExternalId);
+    }
+
+    @Override
+    public Customer findByCompanyNumber(String companyNumber) {
+        return customersByCompanyNumber.get(companyNumber);
+    }
+
+    @Override
+    public CompanyCandidates findCompanyCandidates(String externalId, String companyNumber) {
+        return new CompanyCandidates(findByExternalId(externalId), findByMasterExternalId(externalId), findByCompanyNumber(companyNumber));
+    }
+}
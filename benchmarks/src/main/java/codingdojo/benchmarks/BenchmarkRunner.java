@@ -0,0 +1,27 @@
+package codingdojo.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every benchmark in the modes it declares, and reports the allocation per operation from the GC profiler
+ * (gc.alloc.rate.norm). Both CustomerSyncBenchmark and JdbcWriteBenchmark give ops/s and the latency percentiles of
+ * the sample time mode.
+ * An optional argument narrows the run down to the benchmarks matching that regexp.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : CustomerSyncBenchmark.class.getSimpleName())
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,78 @@
+package codingdojo.benchmarks;
+
+import codingdojo.business.CustomerSync;
+import codingdojo.entities.internal.SyncResult;
+import codingdojo.entities.message.ExternalCustomer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One sync of a message against a database in the state of the scenario, reported as ops/s and as latency
+ * percentiles.
+ * A sync changes the database, so each sync needs a freshly seeded one. A pool of POOL databases is seeded up front,
+ * each invocation syncs the next one, and the pool is seeded again once used up, in an invocation setup that is not
+ * timed; most invocations find the pool still full, so the setup is a compare.
+ * The GC profiler measures whole iterations, refills included, so gc.alloc.rate.norm of sync is the allocation of a
+ * sync plus the seeding of one database: seed reports the latter alone, subtract it to get the allocation per sync.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CustomerSyncBenchmark {
+
+    private static final int POOL = 1024;
+
+    @Param
+    private Scenario scenario;
+
+    @State(Scope.Thread)
+    public static class SeededPool {
+        private final CustomerSync[] customerSyncs = new CustomerSync[POOL];
+        private final ExternalCustomer[] externalCustomers = new ExternalCustomer[POOL];
+        private int cursor = POOL;
+
+        @Setup(Level.Invocation)
+        public void refillWhenUsedUp(CustomerSyncBenchmark benchmark) {
+            if (cursor < POOL) {
+                return;
+            }
+            for (int i = 0; i < POOL; i++) {
+                customerSyncs[i] = new CustomerSync(benchmark.seedDatabase());
+                externalCustomers[i] = benchmark.scenario.message();
+            }
+            cursor = 0;
+        }
+    }
+
+    @Benchmark
+    public SyncResult sync(SeededPool pool) {
+        int next = pool.cursor++;
+        return pool.customerSyncs[next].sync(pool.externalCustomers[next]);
+    }
+
+    /**
+     * The seeding of one database of the pool, and its message, for the allocation it adds to sync
+     */
+    @Benchmark
+    public Object seed() {
+        BenchmarkDatabase db = seedDatabase();
+        return new Object[]{new CustomerSync(db), scenario.message()};
+    }
+
+    private BenchmarkDatabase seedDatabase() {
+        BenchmarkDatabase db = new BenchmarkDatabase();
+        scenario.seed(db);
+        return db;
+    }
+}
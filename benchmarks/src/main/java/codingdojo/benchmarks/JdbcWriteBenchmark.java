@@ -0,0 +1,104 @@
+package codingdojo.benchmarks;
+
+import codingdojo.data.jdbc.ConnectionPool;
+import codingdojo.data.jdbc.JdbcCustomerDataLayer;
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Writes of new customers to an embedded H2 database in file mode, either flushed as one unit of work, a
+ * transaction with a JDBC batch per statement, or one record at a time, each in a transaction of its own.
+ * Scores are per customer. Run with: java -cp benchmarks/target/benchmarks.jar codingdojo.benchmarks.BenchmarkRunner JdbcWriteBenchmark
+ */
+@State(Scope.Thread)
+@Fork(1)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JdbcWriteBenchmark {
+
+    private static final int CUSTOMERS = 100;
+
+    @Param({"true", "false"})
+    private boolean batched;
+
+    private Path directory;
+    private ConnectionPool connectionPool;
+    private JdbcCustomerDataLayer db;
+    private List<Customer> customers;
+    private List<ShoppingList> shoppingLists;
+    private long written;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        directory = Files.createTempDirectory("jdbc-benchmark");
+        connectionPool = new ConnectionPool("jdbc:h2:file:" + directory.resolve("customers"), "sa", "", 1);
+        db = new JdbcCustomerDataLayer(connectionPool);
+        db.createSchema();
+    }
+
+    @Setup(Level.Invocation)
+    public void createCustomers() {
+        customers = new ArrayList<>(CUSTOMERS);
+        shoppingLists = new ArrayList<>(CUSTOMERS);
+        for (int i = 0; i < CUSTOMERS; i++) {
+            long id = written++;
+            ShoppingList shoppingList = new ShoppingList("lipstick", "blusher", "product " + id);
+            Customer customer = new Customer();
+            customer.setExternalId("company " + id);
+            customer.setMasterExternalId("company " + id);
+            customer.setCompanyNumber("470813-" + id);
+            customer.setCustomerType(CustomerType.COMPANY);
+            customer.setName("Acme " + id);
+            customer.addShoppingList(shoppingList);
+            customers.add(customer);
+            shoppingLists.add(shoppingList);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CUSTOMERS)
+    public void write() {
+        if (batched) {
+            db.flush(customers, Collections.emptyList(), shoppingLists);
+            return;
+        }
+        for (int i = 0; i < CUSTOMERS; i++) {
+            db.updateShoppingList(shoppingLists.get(i));
+            db.createCustomerRecord(customers.get(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        connectionPool.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package codingdojo.benchmarks;
+
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.internal.Address;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.message.ExternalCustomer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The situations of CustomerSyncTest, each one a message plus the database it is synced against
+ */
+public enum Scenario {
+
+    NEW_PERSON {
+        @Override
+        ExternalCustomer message() {
+            return createExternalPrivatePerson();
+        }
+    },
+    NEW_COMPANY {
+        @Override
+        ExternalCustomer message() {
+            return createExternalCompany();
+        }
+    },
+    MATCH_BY_EXTERNAL_ID {
+        @Override
+        void seed(BenchmarkDatabase db) {
+            Customer customer = createCompanyCustomer();
+            customer.setExternalId(EXTERNAL_ID);
+            db.addCustomer(customer);
+        }
+
+        @Override
+        ExternalCustomer message() {
+            return createExternalCompany();
+        }
+    },
+    MATCH_BY_COMPANY_NUMBER {
+        @Override
+        void seed(BenchmarkDatabase db) {
+            Customer customer = createCompanyCustomer();
+            customer.addShoppingList(new ShoppingList("eyeliner", "mascara", "blue bombe eyeshadow"));
+            db.addCustomer(customer);
+        }
+
+        @Override
+        ExternalCustomer message() {
+            return createExternalCompany();
+        }
+    },
+    DUPLICATE_WITH_NON_MATCHING_MASTER_ID {
+        @Override
+        void seed(BenchmarkDatabase db) {
+            Customer customer = createCompanyCustomer();
+            customer.setExternalId(EXTERNAL_ID);
+            customer.setName("company 1");
+            db.addCustomer(customer);
+
+            Customer duplicate = new Customer();
+            duplicate.setCompanyNumber(COMPANY_NUMBER);
+            duplicate.setCustomerType(CustomerType.COMPANY);
+            duplicate.setInternalId("45435234");
+            duplicate.setMasterExternalId(EXTERNAL_ID);
+            duplicate.setName("company 2");
+            db.addCustomer(duplicate);
+        }
+
+        @Override
+        ExternalCustomer message() {
+            return createExternalCompany();
+        }
+    },
+    SHOPPING_LIST_HEAVY {
+        @Override
+        void seed(BenchmarkDatabase db) {
+            Customer customer = createCompanyCustomer();
+            customer.setExternalId(EXTERNAL_ID);
+            customer.setShoppingLists(shoppingLists(200, 10));
+            db.addCustomer(customer);
+        }
+
+        @Override
+        ExternalCustomer message() {
+            ExternalCustomer externalCustomer = createExternalCompany();
+            externalCustomer.setShoppingLists(shoppingLists(50, 20));
+            return externalCustomer;
+        }
+    },
+    CONFLICT_EXISTING_PERSON {
+        @Override
+        void seed(BenchmarkDatabase db) {
+            Customer customer = new Customer();
+            customer.setCustomerType(CustomerType.PERSON);
+            customer.setInternalId("45435");
+            customer.setExternalId(EXTERNAL_ID);
+            db.addCustomer(customer);
+        }
+
+        @Override
+        ExternalCustomer message() {
+            return createExternalCompany();
+        }
+    },
+    CONFLICT_COMPANY_NUMBER_WITH_OTHER_EXTERNAL_ID {
+        @Override
+        void seed(BenchmarkDatabase db) {
+            Customer customer = createCompanyCustomer();
+            customer.setExternalId("conflicting id");
+            db.addCustomer(customer);
+        }
+
+        @Override
+        ExternalCustomer message() {
+            return createExternalCompany();
+        }
+    };
+
+    static final String EXTERNAL_ID = "12345";
+    static final String COMPANY_NUMBER = "470813-8895";
+
+    void seed(BenchmarkDatabase db) {
+    }
+
+    abstract ExternalCustomer message();
+
+    private static ExternalCustomer createExternalPrivatePerson() {
+        ExternalCustomer externalCustomer = new ExternalCustomer();
+        externalCustomer.setExternalId(EXTERNAL_ID);
+        externalCustomer.setName("Joe Bloggs");
+        externalCustomer.setBonusPointsBalance(2233);
+        externalCustomer.setAddress(new Address("123 main st", "Stockholm", "SE-123 45"));
+        externalCustomer.setPreferredStore("Nordstan");
+        externalCustomer.setShoppingLists(List.of(new ShoppingList("lipstick", "foundation")));
+        return externalCustomer;
+    }
+
+    private static ExternalCustomer createExternalCompany() {
+        ExternalCustomer externalCustomer = new ExternalCustomer();
+        externalCustomer.setExternalId(EXTERNAL_ID);
+        externalCustomer.setName("Acme Inc.");
+        externalCustomer.setAddress(new Address("123 main st", "Helsingborg", "SE-123 45"));
+        externalCustomer.setCompanyNumber(COMPANY_NUMBER);
+        externalCustomer.setShoppingLists(List.of(new ShoppingList("lipstick", "blusher")));
+        return externalCustomer;
+    }
+
+    private static Customer createCompanyCustomer() {
+        Customer customer = new Customer();
+        customer.setCompanyNumber(COMPANY_NUMBER);
+        customer.setCustomerType(CustomerType.COMPANY);
+        customer.setInternalId("45435");
+        return customer;
+    }
+
+    private static List<ShoppingList> shoppingLists(int lists, int productsPerList) {
+        List<ShoppingList> shoppingLists = new ArrayList<>(lists);
+        for (int i = 0; i < lists; i++) {
+            String[] products = new String[productsPerList];
+            for (int j = 0; j < productsPerList; j++) {
+                products[j] = "product-" + i + "-" + j;
+            }
+            shoppingLists.add(new ShoppingList(products));
+        }
+        return shoppingLists;
+    }
+}
@@ -0,0 +1,248 @@
+package codingdojo.business;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.internal.SyncResult;
+import codingdojo.entities.message.ExternalCustomer;
+import codingdojo.entities.message.ExternalCustomerDelta;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects messages in a window, and syncs only the final state of each customer. A window is synced when it holds
+ * maxMessages messages, or maxDelayMillis after its first message, whichever comes first.
+ *
+ * Within a window, a message with the same externalId and companyNumber as an earlier one is merged into it: the
+ * fields of the later message win, and the shopping lists of both are kept, in order, since a sync appends them.
+ * An ExternalCustomerDelta only brings the fields it carries; two deltas merge into a delta.
+ * A message sharing only one of the two keys is synced on its own, and later messages for the earlier keys are not
+ * merged across it, so the messages of one key still reach the data layer in order.
+ * The merged messages of a window go through CustomerSync.syncBatch, windows are synced one after the other.
+ */
+public class CoalescingCustomerSync implements AutoCloseable {
+
+    private final CustomerSync customerSync;
+    private final int maxMessages;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService timer;
+    private final Object windowLock = new Object();
+    private final Object syncLock = new Object();
+    private List<Pending> window = new ArrayList<>();
+    private ScheduledFuture<?> windowTimeout;
+    private boolean closed;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder synced = new LongAdder();
+    private final LongAdder windows = new LongAdder();
+
+    public CoalescingCustomerSync(CustomerSync customerSync, int maxMessages, long maxDelayMillis) {
+        if (maxMessages <= 0 || maxDelayMillis <= 0) {
+            throw new IllegalArgumentException("maxMessages and maxDelayMillis must be positive");
+        }
+        this.customerSync = customerSync;
+        this.maxMessages = maxMessages;
+        this.maxDelayMillis = maxDelayMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "customer-sync-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Add the message to the current window. The future completes with the result of the merged message it ended up
+     * in, once its window is synced. Filling the window syncs it in the calling thread.
+     */
+    public CompletableFuture<SyncResult> submit(ExternalCustomer externalCustomer) {
+        CompletableFuture<SyncResult> result = new CompletableFuture<>();
+        boolean full;
+        synchronized (windowLock) {
+            if (closed) {
+                throw new IllegalStateException("CoalescingCustomerSync is closed");
+            }
+            window.add(new Pending(externalCustomer, result));
+            received.increment();
+            if (window.size() == 1) {
+                windowTimeout = timer.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+            full = window.size() >= maxMessages;
+        }
+        if (full) {
+            flush();
+        }
+        return result;
+    }
+
+    /**
+     * Sync the current window now
+     */
+    public void flush() {
+        synchronized (syncLock) {
+            List<Pending> pending;
+            synchronized (windowLock) {
+                pending = window;
+                window = new ArrayList<>();
+                if (windowTimeout != null) {
+                    windowTimeout.cancel(false);
+                    windowTimeout = null;
+                }
+            }
+            if (!pending.isEmpty()) {
+                sync(pending);
+            }
+        }
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * messages that were merged into another one, and never synced on their own
+     */
+    public long getCollapsed() {
+        return received.sum() - synced.sum();
+    }
+
+    public long getWindowsSynced() {
+        return windows.sum();
+    }
+
+    /**
+     * Sync what is left, and stop the timer
+     */
+    @Override
+    public void close() {
+        synchronized (windowLock) {
+            closed = true;
+        }
+        flush();
+        timer.shutdown();
+    }
+
+    private void sync(List<Pending> pending) {
+        List<Merged> merged = coalesce(pending);
+        List<ExternalCustomer> messages = new ArrayList<>(merged.size());
+        for (Merged message : merged) {
+            messages.add(message.externalCustomer);
+        }
+        synced.add(merged.size());
+        windows.increment();
+        try {
+            List<SyncResult> results = customerSync.syncBatch(messages);
+            for (int i = 0; i < results.size(); i++) {
+                for (CompletableFuture<SyncResult> future : merged.get(i).futures) {
+                    future.complete(results.get(i));
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Pending message : pending) {
+                message.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static List<Merged> coalesce(List<Pending> pending) {
+        List<Merged> merged = new ArrayList<>();
+        Map<String, Merged> lastByKey = new HashMap<>();
+        for (Pending message : pending) {
+            ExternalCustomer externalCustomer = message.externalCustomer;
+            String externalIdKey = "externalId:" + externalCustomer.getExternalId();
+            String companyNumberKey = externalCustomer.getCompanyNumber() == null ? null : "companyNumber:" + externalCustomer.getCompanyNumber();
+            Merged previous = lastByKey.get(externalIdKey);
+            boolean mergeable = previous != null
+                    && Objects.equals(previous.externalCustomer.getCompanyNumber(), externalCustomer.getCompanyNumber())
+                    && (companyNumberKey == null || lastByKey.get(companyNumberKey) == previous);
+            Merged target;
+            if (mergeable) {
+                previous.mergeWith(externalCustomer);
+                target = previous;
+            } else {
+                target = new Merged(externalCustomer);
+                merged.add(target);
+            }
+            target.futures.add(message.result);
+            lastByKey.put(externalIdKey, target);
+            if (companyNumberKey != null) {
+                lastByKey.put(companyNumberKey, target);
+            }
+        }
+        return merged;
+    }
+
+    private static class Pending {
+        private final ExternalCustomer externalCustomer;
+        private final CompletableFuture<SyncResult> result;
+
+        Pending(ExternalCustomer externalCustomer, CompletableFuture<SyncResult> result) {
+            this.externalCustomer = externalCustomer;
+            this.result = result;
+        }
+    }
+
+    /**
+     * the final state of one customer within a window, and who is waiting for it
+     */
+    private static class Merged {
+        private ExternalCustomer externalCustomer;
+        private final List<CompletableFuture<SyncResult>> futures = new ArrayList<>();
+
+        Merged(ExternalCustomer externalCustomer) {
+            this.externalCustomer = externalCustomer;
+        }
+
+        /**
+         * two deltas make a delta of the fields either carries, otherwise the result is a full message: the earlier
+         * message with the fields the later one carries on top
+         */
+        void mergeWith(ExternalCustomer later) {
+            ExternalCustomer earlier = externalCustomer;
+            ExternalCustomer merged = earlier instanceof ExternalCustomerDelta && later instanceof ExternalCustomerDelta
+                    ? new ExternalCustomerDelta(later.getExternalId(), later.getCompanyNumber())
+                    : new ExternalCustomer();
+            merged.setExternalId(later.getExternalId());
+            merged.setCompanyNumber(later.getCompanyNumber());
+            copyPresentFields(earlier, merged);
+            copyPresentFields(later, merged);
+            if (earlier.isPresent(CustomerField.SHOPPING_LISTS) || later.isPresent(CustomerField.SHOPPING_LISTS)
+                    || !(merged instanceof ExternalCustomerDelta)) {
+                List<ShoppingList> shoppingLists = new ArrayList<>();
+                addAll(shoppingLists, earlier.getShoppingLists());
+                addAll(shoppingLists, later.getShoppingLists());
+                merged.setShoppingLists(shoppingLists);
+            }
+            externalCustomer = merged;
+        }
+
+        private static void copyPresentFields(ExternalCustomer from, ExternalCustomer to) {
+            if (from.isPresent(CustomerField.NAME)) {
+                to.setName(from.getName());
+            }
+            if (from.isPresent(CustomerField.ADDRESS)) {
+                to.setAddress(from.getPostalAddress());
+            }
+            if (from.isPresent(CustomerField.PREFERRED_STORE)) {
+                to.setPreferredStore(from.getPreferredStore());
+            }
+            if (from.isPresent(CustomerField.BONUS_POINTS_BALANCE)) {
+                to.setBonusPointsBalance(from.getBonusPointsBalance());
+            }
+        }
+
+        private static void addAll(List<ShoppingList> shoppingLists, List<ShoppingList> more) {
+            if (more != null) {
+                shoppingLists.addAll(more);
+            }
+        }
+    }
+}
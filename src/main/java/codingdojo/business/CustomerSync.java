@@ -1,15 +1,29 @@
 package codingdojo.business;
 
+import codingdojo.data.AsyncCustomerDataAccess;
+import codingdojo.data.AsyncCustomerDataLayer;
 import codingdojo.data.CustomerDataAccess;
 import codingdojo.data.CustomerDataLayer;
+import codingdojo.data.CustomerUnitOfWork;
 import codingdojo.entities.internal.Customer;
 import codingdojo.entities.internal.CustomerMatches;
 import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.internal.SyncConflict;
+import codingdojo.entities.internal.SyncResult;
+import codingdojo.entities.auxiliar.ConflictReason;
+import codingdojo.entities.auxiliar.CustomerField;
 import codingdojo.entities.auxiliar.CustomerType;
 import codingdojo.entities.message.ExternalCustomer;
-import codingdojo.exceptions.ConflictException;
+import codingdojo.exceptions.OptimisticLockException;
+import codingdojo.metrics.SyncMetrics;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 import static codingdojo.entities.auxiliar.Constants.COMPANY_NUMBER;
 import static codingdojo.entities.auxiliar.Constants.EXTERNAL_ID;
@@ -17,27 +31,258 @@ import static codingdojo.entities.auxiliar.Constants.EXTERNAL_ID;
 /**
  * Class used to synchronize external Customer message with internal Customer.
  * Create or Update the customer accordingly
+ *
+ * No lock is taken on the customers: when a write finds a customer was stored by someone else since it was loaded,
+ * the data layer throws an OptimisticLockException, and the message is matched and applied again on fresh records,
+ * up to maxAttempts times in all.
+ *
+ * Redelivered messages are recognized by their fingerprint, and come back as REPLAYED without any write: once matched,
+ * when the customer found by externalId was last synced from that fingerprint, or even before any call to the data
+ * layer with a ReplayCache holding the fingerprint for the externalId. The cache is opt-in, and only right when this
+ * sync is the only writer of the data layer.
+ *
+ * An ExternalCustomerDelta only sets the fields it carries, the others keep the values the customer has, and only
+ * the fields that changed are written.
  */
 public class CustomerSync {
 
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
     private final CustomerDataAccess customerDataAccess;
+    private final AsyncCustomerDataAccess asyncCustomerDataAccess;
+    private final SyncMetrics metrics;
+    private final int maxAttempts;
+    private final ReplayCache replayCache;
 
     public CustomerSync(CustomerDataLayer customerDataLayer) {
         this(new CustomerDataAccess(customerDataLayer));
     }
 
     public CustomerSync(CustomerDataAccess db) {
+        this(db, null);
+    }
+
+    /**
+     * syncAsync runs the calls of the blocking data layer on the given executor
+     */
+    public CustomerSync(CustomerDataLayer customerDataLayer, Executor executor) {
+        this(new CustomerDataAccess(customerDataLayer),
+                new AsyncCustomerDataAccess(AsyncCustomerDataLayer.wrap(customerDataLayer, executor)));
+    }
+
+    public CustomerSync(CustomerDataAccess db, AsyncCustomerDataAccess asyncDb) {
+        this(db, asyncDb, SyncMetrics.DISABLED);
+    }
+
+    /**
+     * records the time spent in each phase of the sync and its outcome, asyncDb may be null
+     */
+    public CustomerSync(CustomerDataAccess db, AsyncCustomerDataAccess asyncDb, SyncMetrics metrics) {
+        this(db, asyncDb, metrics, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * a message still hitting a stale customer on its last attempt fails with the OptimisticLockException
+     */
+    public CustomerSync(CustomerDataAccess db, AsyncCustomerDataAccess asyncDb, SyncMetrics metrics, int maxAttempts) {
+        this(db, asyncDb, metrics, maxAttempts, null);
+    }
+
+    /**
+     * replayCache may be shared between the syncs of one data layer, or null, the default, to only rely on the stored
+     * fingerprints
+     */
+    public CustomerSync(CustomerDataAccess db, AsyncCustomerDataAccess asyncDb, SyncMetrics metrics, int maxAttempts,
+                        ReplayCache replayCache) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive, got " + maxAttempts);
+        }
         this.customerDataAccess = db;
+        this.asyncCustomerDataAccess = asyncDb;
+        this.metrics = metrics;
+        this.maxAttempts = maxAttempts;
+        this.replayCache = replayCache;
     }
 
     /**
     * The entrypoint, responsible to receive the externalCustomer, apply the rules and constraints, and take
-     * action to Create or Update the customer.
+     * action to Create or Update the customer. The writes are collected along the way, and flushed once at the end.
+     * A message breaking a rule throws a ConflictException.
     */
     public boolean syncWithDataLayer(ExternalCustomer externalCustomer) {
+        SyncResult result = sync(externalCustomer);
+        if (result.isConflict()) {
+            throw result.getConflict().toException();
+        }
+        return result.isCreated();
+    }
+
+    /**
+     * Same as syncWithDataLayer, without throwing: a message breaking a rule comes back as a CONFLICT result,
+     * with the rule and the ids involved. Reports also which fields of the customer were changed.
+     * Customers without any changed field are not written.
+     */
+    public SyncResult sync(ExternalCustomer externalCustomer) {
+        long fingerprint = externalCustomer.getFingerprint();
+        if (isCachedReplay(externalCustomer, fingerprint)) {
+            return SyncResult.replayed(externalCustomer);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return attempt(externalCustomer, fingerprint);
+            } catch (OptimisticLockException e) {
+                if (attempt >= maxAttempts) {
+                    metrics.retriesExhausted();
+                    throw e;
+                }
+                metrics.retried();
+            }
+        }
+    }
+
+    private SyncResult attempt(ExternalCustomer externalCustomer, long fingerprint) {
+        long start = metrics.start();
         CustomerMatches customerMatches = getCustomerMatches(externalCustomer);
+        if (isStoredReplay(externalCustomer, fingerprint, customerMatches)) {
+            return SyncResult.replayed(externalCustomer);
+        }
+        SyncConflict conflict = checkRules(externalCustomer, customerMatches);
+        if (conflict != null) {
+            return SyncResult.conflict(externalCustomer, conflict);
+        }
+        long applyStart = metrics.start();
+        CustomerUnitOfWork unitOfWork = customerDataAccess.beginUnitOfWork();
+        SyncResult result = applyCustomerMatches(externalCustomer, fingerprint, customerMatches, unitOfWork);
+        metrics.applied(applyStart);
+        long writeStart = metrics.start();
+        unitOfWork.flush();
+        metrics.written(writeStart);
+        metrics.synced(start, result.isCreated());
+        applied(externalCustomer, fingerprint);
+        return result;
+    }
+
+    /**
+     * Non blocking sync: the matches are loaded, the rules applied once they are there, and the writes all started
+     * at once, the customer, its duplicates and its shopping lists. A conflict completes the future with a CONFLICT
+     * result, only a failure of the data layer completes it exceptionally.
+     * Without an async data access, the sync runs in the calling thread.
+     */
+    public CompletableFuture<SyncResult> syncAsync(ExternalCustomer externalCustomer) {
+        if (asyncCustomerDataAccess == null) {
+            try {
+                return CompletableFuture.completedFuture(sync(externalCustomer));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        long fingerprint = externalCustomer.getFingerprint();
+        if (isCachedReplay(externalCustomer, fingerprint)) {
+            return CompletableFuture.completedFuture(SyncResult.replayed(externalCustomer));
+        }
+        return syncAsync(externalCustomer, fingerprint, 1);
+    }
+
+    private CompletableFuture<SyncResult> syncAsync(ExternalCustomer externalCustomer, long fingerprint, int attempt) {
+        return attemptAsync(externalCustomer, fingerprint).handle((result, failure) -> {
+            if (failure == null) {
+                return CompletableFuture.completedFuture(result);
+            }
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            if (!(cause instanceof OptimisticLockException)) {
+                return CompletableFuture.<SyncResult>failedFuture(failure);
+            }
+            if (attempt >= maxAttempts) {
+                metrics.retriesExhausted();
+                return CompletableFuture.<SyncResult>failedFuture(cause);
+            }
+            metrics.retried();
+            return syncAsync(externalCustomer, fingerprint, attempt + 1);
+        }).thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<SyncResult> attemptAsync(ExternalCustomer externalCustomer, long fingerprint) {
+        long start = metrics.start();
+        return getCustomerMatchesAsync(externalCustomer).thenCompose(customerMatches -> {
+            if (isStoredReplay(externalCustomer, fingerprint, customerMatches)) {
+                return CompletableFuture.completedFuture(SyncResult.replayed(externalCustomer));
+            }
+            SyncConflict conflict = checkRules(externalCustomer, customerMatches);
+            if (conflict != null) {
+                return CompletableFuture.completedFuture(SyncResult.conflict(externalCustomer, conflict));
+            }
+            long applyStart = metrics.start();
+            CustomerUnitOfWork unitOfWork = asyncCustomerDataAccess.beginUnitOfWork();
+            SyncResult result = applyCustomerMatches(externalCustomer, fingerprint, customerMatches, unitOfWork);
+            metrics.applied(applyStart);
+            long writeStart = metrics.start();
+            return unitOfWork.flushAsync().thenApply(flushed -> {
+                metrics.written(writeStart);
+                metrics.synced(start, result.isCreated());
+                applied(externalCustomer, fingerprint);
+                return result;
+            });
+        });
+    }
+
+    /**
+     * Decide, in memory, what to create and update from the loaded matches. The customer keeps the fingerprint of the
+     * message, written along with its changes.
+     */
+    private SyncResult applyCustomerMatches(ExternalCustomer externalCustomer, long fingerprint, CustomerMatches customerMatches,
+                                            CustomerUnitOfWork unitOfWork) {
         Customer customer = getCustomer(externalCustomer, customerMatches);
-        return createOrUpdateCustomer(externalCustomer, customer, customerMatches);
+        boolean created = createOrUpdateCustomer(externalCustomer, customer, customerMatches, unitOfWork);
+        customer.setSyncFingerprint(fingerprint);
+        return SyncResult.synced(externalCustomer, created, customer.getChangedFields());
+    }
+
+    private boolean isCachedReplay(ExternalCustomer externalCustomer, long fingerprint) {
+        if (replayCache == null || !replayCache.isApplied(externalCustomer.getExternalId(), fingerprint)) {
+            return false;
+        }
+        metrics.replayed(true);
+        return true;
+    }
+
+    /**
+     * the customer matched by externalId was last synced from the same message
+     */
+    private boolean isStoredReplay(ExternalCustomer externalCustomer, long fingerprint, CustomerMatches customerMatches) {
+        Customer customer = customerMatches.getCustomer();
+        if (customer == null || customer.getSyncFingerprint() != fingerprint
+                || !EXTERNAL_ID.equals(customerMatches.getMatchTerm())) {
+            return false;
+        }
+        metrics.replayed(false);
+        applied(externalCustomer, fingerprint);
+        return true;
+    }
+
+    private void applied(ExternalCustomer externalCustomer, long fingerprint) {
+        if (replayCache != null) {
+            replayCache.applied(externalCustomer.getExternalId(), fingerprint);
+        }
+    }
+
+    /**
+     * The batch entrypoint. All the matches of the batch are loaded from the data layer up front, then every message
+     * goes through the same rules as syncWithDataLayer, in order. A conflict doesn't stop the batch, it is reported
+     * in the result of that message. The keys of messages the replay cache knows as applied are not loaded.
+     */
+    public List<SyncResult> syncBatch(Collection<ExternalCustomer> externalCustomers) {
+        List<ExternalCustomer> toPreload = new ArrayList<>(externalCustomers.size());
+        for (ExternalCustomer externalCustomer : externalCustomers) {
+            if (replayCache == null || !replayCache.isApplied(externalCustomer.getExternalId(), externalCustomer.getFingerprint())) {
+                toPreload.add(externalCustomer);
+            }
+        }
+        CustomerSync batchSync = new CustomerSync(customerDataAccess.preload(toPreload), null, metrics, maxAttempts, replayCache);
+        List<SyncResult> results = new ArrayList<>(externalCustomers.size());
+        for (ExternalCustomer externalCustomer : externalCustomers) {
+            results.add(batchSync.sync(externalCustomer));
+        }
+        return results;
     }
 
     /**
@@ -51,6 +296,35 @@ public class CustomerSync {
         }
     }
 
+    private CompletableFuture<CustomerMatches> getCustomerMatchesAsync(ExternalCustomer externalCustomer) {
+        final String externalId = externalCustomer.getExternalId();
+        final long start = metrics.start();
+        CompletableFuture<CustomerMatches> customerMatches = externalCustomer.isCompany()
+                ? asyncCustomerDataAccess.loadCompanyCustomer(externalId, externalCustomer.getCompanyNumber())
+                : asyncCustomerDataAccess.loadPersonCustomer(externalId);
+        return customerMatches.thenApply(loaded -> {
+            metrics.matched(start);
+            return loaded;
+        });
+    }
+
+    /**
+     * Apply the rules of the loaded matches, see validateLoadCompanyCustomer and validateLoadPersonCustomer.
+     * Returns the broken rule, or null when the matches can be applied.
+     */
+    private SyncConflict checkRules(ExternalCustomer externalCustomer, CustomerMatches customerMatches) {
+        long start = metrics.start();
+        SyncConflict conflict = externalCustomer.isCompany()
+                ? validateLoadCompanyCustomer(customerMatches, externalCustomer.getExternalId(), externalCustomer.getCompanyNumber())
+                : validateLoadPersonCustomer(customerMatches, externalCustomer.getExternalId());
+        if (conflict != null) {
+            metrics.conflict(conflict.getReason());
+            return conflict;
+        }
+        metrics.rulesChecked(start, customerMatches);
+        return null;
+    }
+
     /**
      * getCustomer returned from database and check existence to populate the data
      */
@@ -64,15 +338,16 @@ public class CustomerSync {
     /**
      * Create a Customer at database and update all data
      */
-    private boolean createOrUpdateCustomer(ExternalCustomer externalCustomer, Customer customer, CustomerMatches customerMatches) {
+    private boolean createOrUpdateCustomer(ExternalCustomer externalCustomer, Customer customer, CustomerMatches customerMatches,
+                                           CustomerUnitOfWork unitOfWork) {
         boolean created = false;
         if (customer.getInternalId() == null){
-            customer = createCustomer(customer);
+            unitOfWork.createCustomerRecord(customer);
             created = true;
         } else {
-            updateCustomer(customer);
+            unitOfWork.updateCustomerRecord(customer);
         }
-        updateAllCustomerData(externalCustomer, customer, customerMatches);
+        updateAllCustomerData(externalCustomer, customer, customerMatches, unitOfWork);
         return created;
     }
 
@@ -85,41 +360,46 @@ public class CustomerSync {
             customer.setExternalId(externalCustomer.getExternalId());
             customer.setMasterExternalId(externalCustomer.getExternalId());
         }
-        customer.setName(externalCustomer.getName());
+        if (externalCustomer.isPresent(CustomerField.NAME)) {
+            customer.setName(externalCustomer.getName());
+        }
         return customer;
     }
 
     /**
      * Update all customers, check the existence of duplicate customer, to create or update, and replicate all information.
      */
-    private void updateAllCustomerData(ExternalCustomer externalCustomer, Customer customer, CustomerMatches customerMatches) {
+    private void updateAllCustomerData(ExternalCustomer externalCustomer, Customer customer, CustomerMatches customerMatches,
+                                       CustomerUnitOfWork unitOfWork) {
         updateCustomerContactInfo(externalCustomer, customer);
         if (customerMatches.hasDuplicates()) {
             for (Customer duplicate : customerMatches.getDuplicates()) {
-                createOrUpdateDuplicateCustomer(externalCustomer, duplicate);
+                createOrUpdateDuplicateCustomer(externalCustomer, duplicate, unitOfWork);
             }
         }
-        updateCustomerRelations(externalCustomer, customer);
+        updateCustomerRelations(externalCustomer, customer, unitOfWork);
         updateCustomerPreferredStore(externalCustomer, customer);
     }
 
     /**
      * there some case of duplicate customer for the same company, those cases need to be updated with same value
      */
-    private void createOrUpdateDuplicateCustomer(ExternalCustomer externalCustomer, Customer duplicate) {
+    private void createOrUpdateDuplicateCustomer(ExternalCustomer externalCustomer, Customer duplicate, CustomerUnitOfWork unitOfWork) {
         duplicate = validateCustomerExistence(externalCustomer, duplicate);
-        if(!externalCustomer.isCompany()){
+        if(!externalCustomer.isCompany() && externalCustomer.isPresent(CustomerField.BONUS_POINTS_BALANCE)){
             duplicate.setBonusPointsBalance(externalCustomer.getBonusPointsBalance());
         }
         if (duplicate.getInternalId() == null) {
-            createCustomer(duplicate);
+            unitOfWork.createCustomerRecord(duplicate);
         } else {
-            updateCustomer(duplicate);
+            unitOfWork.updateCustomerRecord(duplicate);
         }
     }
 
     private void updateCustomerPreferredStore(ExternalCustomer externalCustomer, Customer customer) {
-        customer.setPreferredStore(externalCustomer.getPreferredStore());
+        if (externalCustomer.isPresent(CustomerField.PREFERRED_STORE)) {
+            customer.setPreferredStore(externalCustomer.getPreferredStore());
+        }
     }
 
     private void populateCustomerFields(ExternalCustomer externalCustomer, Customer customer) {
@@ -128,27 +408,24 @@ public class CustomerSync {
             customer.setCustomerType(CustomerType.COMPANY);
         } else {
             customer.setCustomerType(CustomerType.PERSON);
-            customer.setBonusPointsBalance(externalCustomer.getBonusPointsBalance());
+            if (externalCustomer.isPresent(CustomerField.BONUS_POINTS_BALANCE)) {
+                customer.setBonusPointsBalance(externalCustomer.getBonusPointsBalance());
+            }
         }
     }
 
     private void updateCustomerContactInfo(ExternalCustomer externalCustomer, Customer customer) {
-        customer.setAddress(externalCustomer.getPostalAddress());
-    }
-
-    private Customer updateCustomer(Customer customer) {
-        return this.customerDataAccess.updateCustomerRecord(customer);
-    }
-
-    private Customer createCustomer(Customer customer) {
-        return this.customerDataAccess.createCustomerRecord(customer);
+        if (externalCustomer.isPresent(CustomerField.ADDRESS)) {
+            customer.setAddress(externalCustomer.getPostalAddress());
+        }
     }
 
-    private void updateCustomerRelations(ExternalCustomer externalCustomer, Customer customer) {
-        List<ShoppingList> consumerShoppingLists = externalCustomer.getShoppingLists();
-        for (ShoppingList consumerShoppingList : consumerShoppingLists) {
-            this.customerDataAccess.updateCustomerShoppingList(customer, consumerShoppingList);
+    private void updateCustomerRelations(ExternalCustomer externalCustomer, Customer customer, CustomerUnitOfWork unitOfWork) {
+        if (!externalCustomer.isPresent(CustomerField.SHOPPING_LISTS) || externalCustomer.getShoppingLists() == null) {
+            return;
         }
+        List<ShoppingList> consumerShoppingLists = externalCustomer.getShoppingLists();
+        unitOfWork.updateCustomerShoppingLists(customer, consumerShoppingLists);
     }
 
     /**
@@ -156,20 +433,21 @@ public class CustomerSync {
      */
     private CustomerMatches loadPersonCustomer(ExternalCustomer externalCustomer) {
         final String externalId = externalCustomer.getExternalId();
+        long start = metrics.start();
         CustomerMatches customerMatches = customerDataAccess.loadPersonCustomer(externalId);
-        validateLoadPersonCustomer(customerMatches, externalId);
+        metrics.matched(start);
         return customerMatches;
     }
 
     /**
      * Validate if the loaded data for Person Customer adhere to the rule
-     * 1 - Different CustomerType, throw a ConflictException
+     * 1 - Different CustomerType, return the conflict
      * 2 - Case externalId not match with the term, update the fields
      */
-    private void validateLoadPersonCustomer(CustomerMatches customerMatches, String externalId) {
+    private SyncConflict validateLoadPersonCustomer(CustomerMatches customerMatches, String externalId) {
         if (customerMatches.getCustomer() != null) {
             if (!CustomerType.PERSON.equals(customerMatches.getCustomer().getCustomerType())) {
-                throw new ConflictException("Existing customer for externalCustomer " + externalId + " already exists and is not a person");
+                return new SyncConflict(ConflictReason.EXISTING_NOT_A_PERSON, externalId, null, customerMatches.getCustomer());
             }
             if (!EXTERNAL_ID.equals(customerMatches.getMatchTerm())) {
                 Customer customer = customerMatches.getCustomer();
@@ -177,6 +455,7 @@ public class CustomerSync {
                 customer.setMasterExternalId(externalId);
             }
         }
+        return null;
     }
 
     /**
@@ -185,37 +464,40 @@ public class CustomerSync {
     private CustomerMatches loadCompanyCustomer(ExternalCustomer externalCustomer) {
         final String externalId = externalCustomer.getExternalId();
         final String companyNumber = externalCustomer.getCompanyNumber();
+        long start = metrics.start();
         CustomerMatches customerMatches = customerDataAccess.loadCompanyCustomer(externalId, companyNumber);
-        validateLoadCompanyCustomer(customerMatches, externalId, companyNumber);
+        metrics.matched(start);
         return customerMatches;
     }
 
     /**
      * Validate if the loaded data for Company Customer adhere to the rule
-     * 1 - Different CustomerType and the customer not null, throw a ConflictException
+     * 1 - Different CustomerType and the customer not null, return the conflict
      * 2 - Case EXTERNAL_ID match with the term, update the fields with "fillDuplicateCustomer"
      *      or case COMPANY_NUMBER match with the term, update the fields "fillNonDuplicateCustomer"
      */
-    private void validateLoadCompanyCustomer(CustomerMatches customerMatches, String externalId, String companyNumber) {
+    private SyncConflict validateLoadCompanyCustomer(CustomerMatches customerMatches, String externalId, String companyNumber) {
         if (customerMatches.getCustomer() != null && !CustomerType.COMPANY.equals(customerMatches.getCustomer().getCustomerType())) {
-            throw new ConflictException("Existing customer for externalCustomer " + externalId + " already exists and is not a company");
+            return new SyncConflict(ConflictReason.EXISTING_NOT_A_COMPANY, externalId, companyNumber, customerMatches.getCustomer());
         }
         if (EXTERNAL_ID.equals(customerMatches.getMatchTerm())) {
             fillDuplicateCustomer(customerMatches, companyNumber);
         } else if (COMPANY_NUMBER.equals(customerMatches.getMatchTerm())) {
-            fillNonDuplicateCustomer(customerMatches, externalId, companyNumber);
+            return fillNonDuplicateCustomer(customerMatches, externalId, companyNumber);
         }
+        return null;
     }
 
-    private void fillNonDuplicateCustomer(CustomerMatches customerMatches, String externalId, String companyNumber) {
+    private SyncConflict fillNonDuplicateCustomer(CustomerMatches customerMatches, String externalId, String companyNumber) {
         String customerExternalId = customerMatches.getCustomer().getExternalId();
         if (customerExternalId != null && !externalId.equals(customerExternalId)) {
-            throw new ConflictException("Existing customer for externalCustomer " + companyNumber + " doesn't match external id " + externalId + " instead found " + customerExternalId );
+            return new SyncConflict(ConflictReason.COMPANY_NUMBER_OF_OTHER_EXTERNAL_ID, externalId, companyNumber, customerMatches.getCustomer());
         }
         Customer customer = customerMatches.getCustomer();
         customer.setExternalId(externalId);
         customer.setMasterExternalId(externalId);
         customerMatches.addDuplicate(null);
+        return null;
     }
 
     private void fillDuplicateCustomer(CustomerMatches customerMatches, String companyNumber) {
@@ -0,0 +1,329 @@
+package codingdojo.business;
+
+import codingdojo.entities.internal.SyncResult;
+import codingdojo.entities.message.ExternalCustomer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Runs CustomerSync on several worker threads. Each externalCustomer is routed by its match keys, the externalId
+ * and the companyNumber: while a message for a key is in flight, every other message sharing that key goes to the
+ * same worker, so messages for the same key are synced in order, one at a time, and unrelated keys run in parallel.
+ * A message whose keys are held by two different workers waits until one of them is done with its key.
+ *
+ * Messages submitted from one thread keep their order per key, concurrent submitters are ordered as they come.
+ * The worker queues are bounded, submit blocks when the queue of the chosen worker is full.
+ * A message is either submitted before close, and synced, or rejected, submit and close share a lock so no message
+ * is queued behind the end of a worker.
+ * The data layer behind the CustomerSync must be thread safe.
+ */
+public class ParallelCustomerSync implements AutoCloseable {
+
+    private static final Task STOP = new Task(null, null, null);
+
+    private final CustomerSync customerSync;
+    private final List<BlockingQueue<Task>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Map<String, KeyAssignment> assignments = new HashMap<>();
+    private final Object routingLock = new Object();
+    private final ReadWriteLock lifecycleLock = new ReentrantReadWriteLock();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder updated = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder keyWaits = new LongAdder();
+    private final LongAdder[] processedByWorker;
+    private final long startNanos = System.nanoTime();
+    private boolean closed;
+
+    public ParallelCustomerSync(CustomerSync customerSync) {
+        this(customerSync, Runtime.getRuntime().availableProcessors(), 1024);
+    }
+
+    public ParallelCustomerSync(CustomerSync customerSync, int workerCount, int queueCapacity) {
+        if (workerCount <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("workerCount and queueCapacity must be positive");
+        }
+        this.customerSync = customerSync;
+        this.processedByWorker = new LongAdder[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            final int worker = i;
+            processedByWorker[i] = new LongAdder();
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+            Thread thread = new Thread(() -> work(worker), "customer-sync-" + i);
+            thread.setDaemon(true);
+            workers.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Queue the externalCustomer on the worker owning its keys. The future completes with the result of the sync,
+     * a conflict is a result, any other failure completes it exceptionally.
+     */
+    public CompletableFuture<SyncResult> submit(ExternalCustomer externalCustomer) {
+        Set<String> keys = keysOf(externalCustomer);
+        CompletableFuture<SyncResult> result = new CompletableFuture<>();
+        Task task = new Task(externalCustomer, keys, result);
+        lifecycleLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("ParallelCustomerSync is closed");
+            }
+            int worker;
+            synchronized (routingLock) {
+                worker = assign(keys);
+            }
+            try {
+                queues.get(worker).put(task);
+            } catch (InterruptedException e) {
+                release(keys);
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        } finally {
+            lifecycleLock.readLock().unlock();
+        }
+        submitted.increment();
+        return result;
+    }
+
+    /**
+     * Submit all the messages, and wait for their results, in the same order
+     */
+    public List<SyncResult> syncAll(Collection<ExternalCustomer> externalCustomers) {
+        List<CompletableFuture<SyncResult>> futures = new ArrayList<>(externalCustomers.size());
+        for (ExternalCustomer externalCustomer : externalCustomers) {
+            futures.add(submit(externalCustomer));
+        }
+        List<SyncResult> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<SyncResult> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    public SyncThroughputReport getReport() {
+        long[] processed = new long[processedByWorker.length];
+        int[] queueDepths = new int[processedByWorker.length];
+        for (int i = 0; i < processed.length; i++) {
+            processed[i] = processedByWorker[i].sum();
+            queueDepths[i] = queues.get(i).size();
+        }
+        return new SyncThroughputReport(System.nanoTime() - startNanos, submitted.sum(), created.sum(), updated.sum(),
+                unchanged.sum(), conflicts.sum(), failed.sum(), keyWaits.sum(), processed, queueDepths);
+    }
+
+    /**
+     * Stop accepting messages, and wait for the queued ones to be synced. The wait is not interrupted, an interrupt
+     * received meanwhile is restored on return.
+     */
+    @Override
+    public void close() {
+        boolean interrupted = false;
+        lifecycleLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (BlockingQueue<Task> queue : queues) {
+                interrupted |= putUninterruptibly(queue, STOP);
+            }
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
+        for (Thread worker : workers) {
+            interrupted |= joinUninterruptibly(worker);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean putUninterruptibly(BlockingQueue<Task> queue, Task task) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(task);
+                return interrupted;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    private static boolean joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                return interrupted;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    private static Set<String> keysOf(ExternalCustomer externalCustomer) {
+        Set<String> keys = new LinkedHashSet<>();
+        if (externalCustomer.getExternalId() != null) {
+            keys.add("externalId:" + externalCustomer.getExternalId());
+        }
+        if (externalCustomer.isCompany()) {
+            keys.add("companyNumber:" + externalCustomer.getCompanyNumber());
+        }
+        return keys;
+    }
+
+    /**
+     * called holding the routing lock
+     */
+    private int assign(Set<String> keys) {
+        int worker;
+        boolean waited = false;
+        while (true) {
+            worker = -1;
+            boolean split = false;
+            for (String key : keys) {
+                KeyAssignment assignment = assignments.get(key);
+                if (assignment != null) {
+                    if (worker == -1) {
+                        worker = assignment.worker;
+                    } else if (worker != assignment.worker) {
+                        split = true;
+                    }
+                }
+            }
+            if (!split) {
+                break;
+            }
+            if (!waited) {
+                keyWaits.increment();
+                waited = true;
+            }
+            try {
+                routingLock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }
+        if (worker == -1) {
+            int hash = keys.isEmpty() ? 0 : keys.iterator().next().hashCode();
+            worker = Math.floorMod(hash, queues.size());
+        }
+        for (String key : keys) {
+            assignments.computeIfAbsent(key, k -> new KeyAssignment()).retain(worker);
+        }
+        return worker;
+    }
+
+    private void release(Set<String> keys) {
+        synchronized (routingLock) {
+            for (String key : keys) {
+                KeyAssignment assignment = assignments.get(key);
+                if (assignment != null && assignment.release()) {
+                    assignments.remove(key);
+                }
+            }
+            routingLock.notifyAll();
+        }
+    }
+
+    private void work(int worker) {
+        BlockingQueue<Task> queue = queues.get(worker);
+        while (true) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                abandon(queue);
+                return;
+            }
+            if (task == STOP) {
+                abandon(queue);
+                return;
+            }
+            try {
+                SyncResult result = customerSync.sync(task.externalCustomer);
+                count(result);
+                task.result.complete(result);
+            } catch (RuntimeException e) {
+                failed.increment();
+                task.result.completeExceptionally(e);
+            } finally {
+                processedByWorker[worker].increment();
+                release(task.keys);
+            }
+        }
+    }
+
+    /**
+     * Fail whatever is still queued once the worker stopped, so no caller waits on a future nobody completes
+     */
+    private void abandon(BlockingQueue<Task> queue) {
+        Task task;
+        while ((task = queue.poll()) != null) {
+            if (task != STOP) {
+                failed.increment();
+                task.result.completeExceptionally(new IllegalStateException("ParallelCustomerSync is closed"));
+                release(task.keys);
+            }
+        }
+    }
+
+    private void count(SyncResult result) {
+        if (result.isConflict()) {
+            conflicts.increment();
+        } else if (result.isCreated()) {
+            created.increment();
+        } else if (result.hasChanges()) {
+            updated.increment();
+        } else {
+            unchanged.increment();
+        }
+    }
+
+    private static class KeyAssignment {
+        private int worker;
+        private int inFlight;
+
+        void retain(int worker) {
+            this.worker = worker;
+            inFlight++;
+        }
+
+        boolean release() {
+            return --inFlight == 0;
+        }
+    }
+
+    private static class Task {
+        private final ExternalCustomer externalCustomer;
+        private final Set<String> keys;
+        private final CompletableFuture<SyncResult> result;
+
+        Task(ExternalCustomer externalCustomer, Set<String> keys, CompletableFuture<SyncResult> result) {
+            this.externalCustomer = externalCustomer;
+            this.keys = keys;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package codingdojo.business;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fingerprint of the last message applied for each externalId, see ExternalCustomer.getFingerprint, for about
+ * the maximumSize externalIds synced most recently. A message found here is a redelivery of one already applied.
+ * Only knows about the syncs that went through it, a record changed by another writer since is not noticed.
+ * Thread safe: the externalIds are spread over stripes, each one an LRU map of its own behind its own lock.
+ */
+public class ReplayCache {
+
+    private static final int STRIPES = 16;
+
+    private final List<Map<String, Long>> stripes = new ArrayList<>(STRIPES);
+
+    public ReplayCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive, got " + maximumSize);
+        }
+        int stripeSize = Math.max(1, (maximumSize + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > stripeSize;
+                }
+            });
+        }
+    }
+
+    public boolean isApplied(String externalId, long fingerprint) {
+        if (externalId == null) {
+            return false;
+        }
+        Map<String, Long> stripe = stripeOf(externalId);
+        synchronized (stripe) {
+            Long applied = stripe.get(externalId);
+            return applied != null && applied == fingerprint;
+        }
+    }
+
+    public void applied(String externalId, long fingerprint) {
+        if (externalId == null) {
+            return;
+        }
+        Map<String, Long> stripe = stripeOf(externalId);
+        synchronized (stripe) {
+            stripe.put(externalId, fingerprint);
+        }
+    }
+
+    public void forget(String externalId) {
+        if (externalId == null) {
+            return;
+        }
+        Map<String, Long> stripe = stripeOf(externalId);
+        synchronized (stripe) {
+            stripe.remove(externalId);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<String, Long> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private Map<String, Long> stripeOf(String externalId) {
+        return stripes.get(Math.floorMod(externalId.hashCode(), STRIPES));
+    }
+}
@@ -0,0 +1,98 @@
+package codingdojo.business;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the work done by a ParallelCustomerSync since it was started
+ */
+public class SyncThroughputReport {
+    private final long elapsedNanos;
+    private final long submitted;
+    private final long created;
+    private final long updated;
+    private final long unchanged;
+    private final long conflicts;
+    private final long failed;
+    private final long keyWaits;
+    private final long[] processedByWorker;
+    private final int[] queueDepthByWorker;
+
+    public SyncThroughputReport(long elapsedNanos, long submitted, long created, long updated, long unchanged,
+                                long conflicts, long failed, long keyWaits, long[] processedByWorker, int[] queueDepthByWorker) {
+        this.elapsedNanos = elapsedNanos;
+        this.submitted = submitted;
+        this.created = created;
+        this.updated = updated;
+        this.unchanged = unchanged;
+        this.conflicts = conflicts;
+        this.failed = failed;
+        this.keyWaits = keyWaits;
+        this.processedByWorker = processedByWorker;
+        this.queueDepthByWorker = queueDepthByWorker;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public long getProcessed() {
+        return Arrays.stream(processedByWorker).sum();
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    /**
+     * synced without any change to write
+     */
+    public long getUnchanged() {
+        return unchanged;
+    }
+
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * number of messages that had to wait because their keys were held by two different workers
+     */
+    public long getKeyWaits() {
+        return keyWaits;
+    }
+
+    public long[] getProcessedByWorker() {
+        return processedByWorker.clone();
+    }
+
+    public int[] getQueueDepthByWorker() {
+        return queueDepthByWorker.clone();
+    }
+
+    public double getMessagesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : getProcessed() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncThroughputReport{processed=" + getProcessed() + "/" + submitted
+                + ", messagesPerSecond=" + String.format("%.1f", getMessagesPerSecond())
+                + ", created=" + created + ", updated=" + updated + ", unchanged=" + unchanged
+                + ", conflicts=" + conflicts + ", failed=" + failed + ", keyWaits=" + keyWaits
+                + ", processedByWorker=" + Arrays.toString(processedByWorker)
+                + ", queueDepthByWorker=" + Arrays.toString(queueDepthByWorker) + '}';
+    }
+}
@@ -0,0 +1,34 @@
+package codingdojo.data;
+
+import codingdojo.entities.internal.CustomerMatches;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non blocking counterpart of CustomerDataAccess, the matches are decided the same way once loaded
+ */
+public class AsyncCustomerDataAccess {
+
+    private final AsyncCustomerDataLayer customerDataLayer;
+
+    public AsyncCustomerDataAccess(AsyncCustomerDataLayer customerDataLayer) {
+        this.customerDataLayer = customerDataLayer;
+    }
+
+    public CompletableFuture<CustomerMatches> loadCompanyCustomer(String externalId, String companyNumber) {
+        return customerDataLayer.findCompanyCandidates(externalId, companyNumber)
+                .thenApply(CustomerDataAccess::companyMatches);
+    }
+
+    public CompletableFuture<CustomerMatches> loadPersonCustomer(String externalId) {
+        return customerDataLayer.findByExternalId(externalId)
+                .thenApply(CustomerDataAccess::personMatches);
+    }
+
+    /**
+     * Start collecting the writes of one sync, to be flushed at its end with flushAsync
+     */
+    public CustomerUnitOfWork beginUnitOfWork() {
+        return new CustomerUnitOfWork(customerDataLayer);
+    }
+}
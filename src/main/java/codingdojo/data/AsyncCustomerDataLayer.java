@@ -0,0 +1,109 @@
+package codingdojo.data;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.CompanyCandidates;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Non blocking variant of CustomerDataLayer, every call returns at once with a future of its result
+ */
+public interface AsyncCustomerDataLayer {
+
+    CompletableFuture<Customer> updateCustomerRecord(Customer customer);
+
+    CompletableFuture<Customer> createCustomerRecord(Customer customer);
+
+    /**
+     * Same contract as CustomerDataLayer.updateCustomerFields, defaults to updateCustomerRecord
+     */
+    default CompletableFuture<Customer> updateCustomerFields(Customer customer, Set<CustomerField> changedFields) {
+        return updateCustomerRecord(customer);
+    }
+
+    CompletableFuture<Void> updateShoppingList(ShoppingList consumerShoppingList);
+
+    /**
+     * Same contract as CustomerDataLayer.containsShoppingLists, defaults to none stored, every list is written
+     */
+    default CompletableFuture<Set<Long>> containsShoppingLists(Collection<Long> contentHashes) {
+        return CompletableFuture.completedFuture(Collections.emptySet());
+    }
+
+    CompletableFuture<Customer> findByExternalId(String externalId);
+
+    CompletableFuture<Customer> findByMasterExternalId(String externalId);
+
+    CompletableFuture<Customer> findByCompanyNumber(String companyNumber);
+
+    /**
+     * Same contract as CustomerDataLayer.findCompanyCandidates, defaults to the sequential lookups chained
+     */
+    default CompletableFuture<CompanyCandidates> findCompanyCandidates(String externalId, String companyNumber) {
+        return findByExternalId(externalId).thenCompose(byExternalId -> {
+            if (byExternalId != null) {
+                return findByMasterExternalId(externalId)
+                        .thenApply(byMasterExternalId -> new CompanyCandidates(byExternalId, byMasterExternalId, null));
+            }
+            return findByCompanyNumber(companyNumber)
+                    .thenApply(byCompanyNumber -> new CompanyCandidates(null, null, byCompanyNumber));
+        });
+    }
+
+    /**
+     * Same contract as CustomerDataLayer.flush, except that the records are independent writes, at most
+     * maxConcurrentWrites of them running at a time. A failed write stops the writes queued behind it, the other
+     * ones still run. New customers get the internalId of the stored record when the data layer returns another instance.
+     */
+    default CompletableFuture<Void> flush(List<Customer> createdCustomers, List<Customer> updatedCustomers, List<ShoppingList> shoppingLists) {
+        List<Supplier<CompletableFuture<Void>>> writes = new ArrayList<>();
+        for (ShoppingList shoppingList : shoppingLists) {
+            writes.add(() -> updateShoppingList(shoppingList));
+        }
+        for (Customer customer : createdCustomers) {
+            writes.add(() -> createCustomerRecord(customer).thenAccept(created -> {
+                if (created != null && created != customer) {
+                    customer.setInternalId(created.getInternalId());
+                }
+            }));
+        }
+        for (Customer customer : updatedCustomers) {
+            Set<CustomerField> changedFields = customer.getChangedFields();
+            writes.add(() -> updateCustomerFields(customer, changedFields).thenAccept(updated -> { }));
+        }
+        CompletableFuture<?>[] lanes = new CompletableFuture<?>[Math.min(Math.max(maxConcurrentWrites(), 1), writes.size())];
+        for (int lane = 0; lane < lanes.length; lane++) {
+            CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+            for (int i = lane; i < writes.size(); i += lanes.length) {
+                Supplier<CompletableFuture<Void>> write = writes.get(i);
+                chain = chain.thenCompose(previous -> write.get());
+            }
+            lanes[lane] = chain;
+        }
+        return CompletableFuture.allOf(lanes);
+    }
+
+    /**
+     * How many writes of a flush may run at once, defaults to 16
+     */
+    default int maxConcurrentWrites() {
+        return 16;
+    }
+
+    /**
+     * Run the calls of a blocking data layer on the given executor. The delegate must be thread safe if the
+     * executor runs more than one call at a time.
+     */
+    static AsyncCustomerDataLayer wrap(CustomerDataLayer customerDataLayer, Executor executor) {
+        return new BlockingCustomerDataLayerAdapter(customerDataLayer, executor);
+    }
+}
@@ -0,0 +1,80 @@
+package codingdojo.data;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.CompanyCandidates;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * AsyncCustomerDataLayer running each call of a blocking CustomerDataLayer as a task of an executor. A flush is one
+ * task calling the flush of the delegate, so a backend writing the whole unit of work at once still does.
+ */
+class BlockingCustomerDataLayerAdapter implements AsyncCustomerDataLayer {
+
+    private final CustomerDataLayer delegate;
+    private final Executor executor;
+
+    BlockingCustomerDataLayerAdapter(CustomerDataLayer delegate, Executor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Customer> updateCustomerRecord(Customer customer) {
+        return CompletableFuture.supplyAsync(() -> delegate.updateCustomerRecord(customer), executor);
+    }
+
+    @Override
+    public CompletableFuture<Customer> createCustomerRecord(Customer customer) {
+        return CompletableFuture.supplyAsync(() -> delegate.createCustomerRecord(customer), executor);
+    }
+
+    @Override
+    public CompletableFuture<Customer> updateCustomerFields(Customer customer, Set<CustomerField> changedFields) {
+        return CompletableFuture.supplyAsync(() -> delegate.updateCustomerFields(customer, changedFields), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateShoppingList(ShoppingList consumerShoppingList) {
+        return CompletableFuture.runAsync(() -> delegate.updateShoppingList(consumerShoppingList), executor);
+    }
+
+    @Override
+    public CompletableFuture<Set<Long>> containsShoppingLists(Collection<Long> contentHashes) {
+        return CompletableFuture.supplyAsync(() -> delegate.containsShoppingLists(contentHashes), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> flush(List<Customer> createdCustomers, List<Customer> updatedCustomers, List<ShoppingList> shoppingLists) {
+        return CompletableFuture.runAsync(() -> delegate.flush(createdCustomers, updatedCustomers, shoppingLists), executor);
+    }
+
+    @Override
+    public CompletableFuture<Customer> findByExternalId(String externalId) {
+        return CompletableFuture.supplyAsync(() -> delegate.findByExternalId(externalId), executor);
+    }
+
+    @Override
+    public CompletableFuture<Customer> findByMasterExternalId(String externalId) {
+        return CompletableFuture.supplyAsync(() -> delegate.findByMasterExternalId(externalId), executor);
+    }
+
+    @Override
+    public CompletableFuture<Customer> findByCompanyNumber(String companyNumber) {
+        return CompletableFuture.supplyAsync(() -> delegate.findByCompanyNumber(companyNumber), executor);
+    }
+
+    /**
+     * one task, so the delegate can still answer in a single round trip
+     */
+    @Override
+    public CompletableFuture<CompanyCandidates> findCompanyCandidates(String externalId, String companyNumber) {
+        return CompletableFuture.supplyAsync(() -> delegate.findCompanyCandidates(externalId, companyNumber), executor);
+    }
+}
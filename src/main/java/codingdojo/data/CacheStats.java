@@ -0,0 +1,57 @@
+package codingdojo.data;
+
+/**
+ * Snapshot of the statistics of a CachingCustomerDataLayer, to size it
+ */
+public class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+    private final long size;
+
+    public CacheStats(long hits, long misses, long evictions, long invalidations, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * number of writes that refreshed the cache
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * number of entries, summed over the three indexes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", invalidations=" + invalidations + ", size=" + size + '}';
+    }
+}
@@ -0,0 +1,477 @@
+package codingdojo.data;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.CompanyCandidates;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Read-through cache in front of another data layer.
+ * Lookups are cached under the three keys of the interface, externalId, masterExternalId and companyNumber,
+ * "not found" included. Each index keeps at most maximumSize entries, evicting with a second chance: an entry read
+ * since it was last passed over is moved to the back once, so lookups only take the read lock.
+ * Creating or updating a record drops the keys it no longer has, and refreshes the ones it has.
+ *
+ * The cache holds copies, and every lookup hands out a copy of its own, so a sync changing a customer never
+ * changes what another sync reads. A write that fails, however, drops every key of the customers it held,
+ * "not found" included, since the delegate may have stored part of it: the retry reads them again from the delegate.
+ */
+public class CachingCustomerDataLayer implements CustomerDataLayer {
+
+    private final CustomerDataLayer delegate;
+    private final Index byExternalId;
+    private final Index byMasterExternalId;
+    private final Index byCompanyNumber;
+    private final Map<String, CachedKeys> keysByInternalId = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * bumped on every write, a lookup started before a write doesn't cache what it found. Read under the read lock,
+     * bumped under the write lock.
+     */
+    private long writeGeneration;
+
+    public CachingCustomerDataLayer(CustomerDataLayer delegate, int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive, got " + maximumSize);
+        }
+        this.delegate = delegate;
+        this.byExternalId = new Index(maximumSize);
+        this.byMasterExternalId = new Index(maximumSize);
+        this.byCompanyNumber = new Index(maximumSize);
+    }
+
+    @Override
+    public Customer findByExternalId(String externalId) {
+        return find(externalId, byExternalId, delegate::findByExternalId);
+    }
+
+    @Override
+    public Customer findByMasterExternalId(String masterExternalId) {
+        return find(masterExternalId, byMasterExternalId, delegate::findByMasterExternalId);
+    }
+
+    @Override
+    public Customer findByCompanyNumber(String companyNumber) {
+        return find(companyNumber, byCompanyNumber, delegate::findByCompanyNumber);
+    }
+
+    @Override
+    public Map<String, Customer> findByExternalIds(Collection<String> externalIds) {
+        return findAll(externalIds, byExternalId, delegate::findByExternalIds);
+    }
+
+    @Override
+    public Map<String, Customer> findByMasterExternalIds(Collection<String> masterExternalIds) {
+        return findAll(masterExternalIds, byMasterExternalId, delegate::findByMasterExternalIds);
+    }
+
+    @Override
+    public Map<String, Customer> findByCompanyNumbers(Collection<String> companyNumbers) {
+        return findAll(companyNumbers, byCompanyNumber, delegate::findByCompanyNumbers);
+    }
+
+    /**
+     * Answered from the cache when every candidate the match needs is there, otherwise in one call to the delegate.
+     * Only the candidates the sequential match would have looked up are cached, since the delegate may not fill the others.
+     */
+    @Override
+    public CompanyCandidates findCompanyCandidates(String externalId, String companyNumber) {
+        long generation;
+        lock.readLock().lock();
+        try {
+            Optional<Customer> cachedByExternalId = byExternalId.lookup(externalId);
+            if (cachedByExternalId != null) {
+                Customer matchByExternalId = cachedByExternalId.orElse(null);
+                Optional<Customer> cachedOther = matchByExternalId != null
+                        ? byMasterExternalId.lookup(externalId)
+                        : byCompanyNumber.lookup(companyNumber);
+                if (cachedOther != null) {
+                    hits.increment();
+                    return matchByExternalId != null
+                            ? new CompanyCandidates(copyOf(matchByExternalId), copyOf(cachedOther.orElse(null)), null)
+                            : new CompanyCandidates(null, null, copyOf(cachedOther.orElse(null)));
+                }
+            }
+            misses.increment();
+            generation = writeGeneration;
+        } finally {
+            lock.readLock().unlock();
+        }
+        CompanyCandidates candidates = delegate.findCompanyCandidates(externalId, companyNumber);
+        Customer byExternalIdCopy = copyOf(candidates.getByExternalId());
+        Customer otherCopy = copyOf(candidates.getByExternalId() != null
+                ? candidates.getByMasterExternalId() : candidates.getByCompanyNumber());
+        lock.writeLock().lock();
+        try {
+            if (generation == writeGeneration) {
+                byExternalId.cache(externalId, byExternalIdCopy);
+                if (byExternalIdCopy != null) {
+                    byMasterExternalId.cache(externalId, otherCopy);
+                } else {
+                    byCompanyNumber.cache(companyNumber, otherCopy);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return candidates;
+    }
+
+    @Override
+    public Customer updateCustomerRecord(Customer customer) {
+        Customer updated;
+        try {
+            updated = delegate.updateCustomerRecord(customer);
+        } catch (RuntimeException e) {
+            evict(Collections.singletonList(customer));
+            throw e;
+        }
+        refresh(updated != null ? updated : customer);
+        return updated;
+    }
+
+    @Override
+    public Customer updateCustomerFields(Customer customer, Set<CustomerField> changedFields) {
+        Customer updated;
+        try {
+            updated = delegate.updateCustomerFields(customer, changedFields);
+        } catch (RuntimeException e) {
+            evict(Collections.singletonList(customer));
+            throw e;
+        }
+        refresh(updated != null ? updated : customer);
+        return updated;
+    }
+
+    @Override
+    public Customer createCustomerRecord(Customer customer) {
+        Customer created;
+        try {
+            created = delegate.createCustomerRecord(customer);
+        } catch (RuntimeException e) {
+            evict(Collections.singletonList(customer));
+            throw e;
+        }
+        refresh(created != null ? created : customer);
+        return created;
+    }
+
+    @Override
+    public void flush(List<Customer> createdCustomers, List<Customer> updatedCustomers, List<ShoppingList> shoppingLists) {
+        try {
+            delegate.flush(createdCustomers, updatedCustomers, shoppingLists);
+        } catch (RuntimeException e) {
+            evict(createdCustomers);
+            evict(updatedCustomers);
+            throw e;
+        }
+        createdCustomers.forEach(this::refresh);
+        updatedCustomers.forEach(this::refresh);
+    }
+
+    @Override
+    public void updateShoppingList(ShoppingList consumerShoppingList) {
+        delegate.updateShoppingList(consumerShoppingList);
+    }
+
+    @Override
+    public boolean containsShoppingList(long contentHash) {
+        return delegate.containsShoppingList(contentHash);
+    }
+
+    @Override
+    public Set<Long> containsShoppingLists(Collection<Long> contentHashes) {
+        return delegate.containsShoppingLists(contentHashes);
+    }
+
+    public CacheStats getStats() {
+        lock.readLock().lock();
+        try {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(),
+                    byExternalId.size() + byMasterExternalId.size() + byCompanyNumber.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drop every cached entry, the statistics are kept
+     */
+    public void invalidateAll() {
+        lock.writeLock().lock();
+        try {
+            writeGeneration++;
+            byExternalId.clear();
+            byMasterExternalId.clear();
+            byCompanyNumber.clear();
+            keysByInternalId.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Customer find(String key, Index index, Function<String, Customer> finder) {
+        long generation;
+        lock.readLock().lock();
+        try {
+            Optional<Customer> cached = index.lookup(key);
+            if (cached != null) {
+                hits.increment();
+                return copyOf(cached.orElse(null));
+            }
+            misses.increment();
+            generation = writeGeneration;
+        } finally {
+            lock.readLock().unlock();
+        }
+        Customer customer = finder.apply(key);
+        Customer copy = copyOf(customer);
+        lock.writeLock().lock();
+        try {
+            if (generation == writeGeneration) {
+                index.cache(key, copy);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return customer;
+    }
+
+    private Map<String, Customer> findAll(Collection<String> keys, Index index,
+                                          Function<Collection<String>, Map<String, Customer>> bulkFinder) {
+        Map<String, Customer> customers = new HashMap<>();
+        List<String> missingKeys = new ArrayList<>();
+        long generation;
+        lock.readLock().lock();
+        try {
+            for (String key : keys) {
+                Optional<Customer> cached = index.lookup(key);
+                if (cached != null) {
+                    hits.increment();
+                    cached.ifPresent(customer -> customers.put(key, customer.copy()));
+                } else {
+                    misses.increment();
+                    missingKeys.add(key);
+                }
+            }
+            generation = writeGeneration;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (missingKeys.isEmpty()) {
+            return customers;
+        }
+        Map<String, Customer> found = bulkFinder.apply(missingKeys);
+        customers.putAll(found);
+        Map<String, Customer> copies = new HashMap<>();
+        for (String key : missingKeys) {
+            copies.put(key, copyOf(found.get(key)));
+        }
+        lock.writeLock().lock();
+        try {
+            if (generation == writeGeneration) {
+                for (String key : missingKeys) {
+                    index.cache(key, copies.get(key));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return customers;
+    }
+
+    /**
+     * the keys the record had when cached point to nothing anymore, unless it still has them
+     */
+    private void refresh(Customer written) {
+        Customer customer = written.copy();
+        lock.writeLock().lock();
+        try {
+            writeGeneration++;
+            invalidations.increment();
+            if (customer.getInternalId() == null) {
+                return;
+            }
+            CachedKeys previous = keysByInternalId.get(customer.getInternalId());
+            if (previous != null) {
+                byExternalId.forget(previous.externalId, customer);
+                byMasterExternalId.forget(previous.masterExternalId, customer);
+                byCompanyNumber.forget(previous.companyNumber, customer);
+            }
+            byExternalId.cache(customer.getExternalId(), customer);
+            byMasterExternalId.cache(customer.getMasterExternalId(), customer);
+            byCompanyNumber.cache(customer.getCompanyNumber(), customer);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * the keys the customers were cached under and the ones they have now point to nothing cached anymore
+     */
+    private void evict(Collection<Customer> customers) {
+        lock.writeLock().lock();
+        try {
+            writeGeneration++;
+            for (Customer customer : customers) {
+                invalidations.increment();
+                CachedKeys previous = customer.getInternalId() == null ? null : keysByInternalId.get(customer.getInternalId());
+                if (previous != null) {
+                    byExternalId.drop(previous.externalId);
+                    byMasterExternalId.drop(previous.masterExternalId);
+                    byCompanyNumber.drop(previous.companyNumber);
+                }
+                byExternalId.drop(customer.getExternalId());
+                byMasterExternalId.drop(customer.getMasterExternalId());
+                byCompanyNumber.drop(customer.getCompanyNumber());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static Customer copyOf(Customer customer) {
+        return customer == null ? null : customer.copy();
+    }
+
+    private void retain(Customer customer) {
+        if (customer != null && customer.getInternalId() != null) {
+            keysByInternalId.computeIfAbsent(customer.getInternalId(), id -> new CachedKeys()).retain(customer);
+        }
+    }
+
+    private void release(Customer customer) {
+        if (customer != null && customer.getInternalId() != null) {
+            CachedKeys keys = keysByInternalId.get(customer.getInternalId());
+            if (keys != null && keys.release()) {
+                keysByInternalId.remove(customer.getInternalId());
+            }
+        }
+    }
+
+    /**
+     * The keys a record was cached under, with the number of index entries pointing to it
+     */
+    private static class CachedKeys {
+        private String externalId;
+        private String masterExternalId;
+        private String companyNumber;
+        private int references;
+
+        void retain(Customer customer) {
+            externalId = customer.getExternalId();
+            masterExternalId = customer.getMasterExternalId();
+            companyNumber = customer.getCompanyNumber();
+            references++;
+        }
+
+        boolean release() {
+            return --references == 0;
+        }
+    }
+
+    /**
+     * One index in insertion order, an empty Optional is a cached "not found". Reading an entry only marks it, which
+     * is safe under the read lock; the marked entries get a second chance when the index is full.
+     */
+    private class Index {
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+        private final int maximumSize;
+
+        Index(int maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        /**
+         * null when not cached
+         */
+        Optional<Customer> lookup(String value) {
+            Entry entry = entries.get(value);
+            if (entry == null) {
+                return null;
+            }
+            entry.referenced = true;
+            return entry.customer;
+        }
+
+        void cache(String value, Customer customer) {
+            if (value == null) {
+                return;
+            }
+            Entry previous = entries.remove(value);
+            if (previous != null) {
+                previous.customer.ifPresent(CachingCustomerDataLayer.this::release);
+            }
+            entries.put(value, new Entry(Optional.ofNullable(customer)));
+            retain(customer);
+            while (entries.size() > maximumSize) {
+                Map.Entry<String, Entry> eldest = entries.entrySet().iterator().next();
+                entries.remove(eldest.getKey());
+                if (eldest.getValue().referenced) {
+                    eldest.getValue().referenced = false;
+                    entries.put(eldest.getKey(), eldest.getValue());
+                } else {
+                    evictions.increment();
+                    eldest.getValue().customer.ifPresent(CachingCustomerDataLayer.this::release);
+                }
+            }
+        }
+
+        void forget(String value, Customer customer) {
+            if (value == null) {
+                return;
+            }
+            Entry cached = entries.get(value);
+            if (cached != null && cached.customer.isPresent()
+                    && Objects.equals(cached.customer.get().getInternalId(), customer.getInternalId())) {
+                entries.remove(value);
+                release(cached.customer.get());
+            }
+        }
+
+        void drop(String value) {
+            Entry cached = value == null ? null : entries.remove(value);
+            if (cached != null) {
+                cached.customer.ifPresent(CachingCustomerDataLayer.this::release);
+            }
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        void clear() {
+            entries.clear();
+        }
+    }
+
+    private static class Entry {
+        private final Optional<Customer> customer;
+        private volatile boolean referenced;
+
+        Entry(Optional<Customer> customer) {
+            this.customer = customer;
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package codingdojo.data;
 
 import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.internal.CompanyCandidates;
 import codingdojo.entities.internal.Customer;
 import codingdojo.entities.internal.CustomerMatches;
 import codingdojo.entities.internal.ShoppingList;
 import codingdojo.entities.message.ExternalCustomer;
 import codingdojo.exceptions.ConflictException;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 import static codingdojo.entities.auxiliar.Constants.COMPANY_NUMBER;
 import static codingdojo.entities.auxiliar.Constants.EXTERNAL_ID;
 
@@ -18,34 +23,91 @@ public class CustomerDataAccess {
         this.customerDataLayer = customerDataLayer;
     }
 
+    /**
+     * Resolve up front every key the sync rules will look for in the given messages, and return a data access
+     * answering those lookups from memory. Writes still go to this data layer.
+     */
+    public CustomerDataAccess preload(Collection<ExternalCustomer> externalCustomers) {
+        Set<String> externalIds = new LinkedHashSet<>();
+        Set<String> masterExternalIds = new LinkedHashSet<>();
+        Set<String> companyNumbers = new LinkedHashSet<>();
+        for (ExternalCustomer externalCustomer : externalCustomers) {
+            externalIds.add(externalCustomer.getExternalId());
+            if (externalCustomer.isCompany()) {
+                masterExternalIds.add(externalCustomer.getExternalId());
+                companyNumbers.add(externalCustomer.getCompanyNumber());
+            }
+        }
+        PreloadedCustomerDataLayer preloaded = new PreloadedCustomerDataLayer(this.customerDataLayer);
+        preloaded.preloadExternalIds(externalIds);
+        preloaded.preloadMasterExternalIds(masterExternalIds);
+        preloaded.preloadCompanyNumbers(companyNumbers);
+        return new CustomerDataAccess(preloaded);
+    }
+
+    /**
+     * The candidates are loaded in one call, then the EXTERNAL_ID vs COMPANY_NUMBER match is decided in memory
+     */
     public CustomerMatches loadCompanyCustomer(String externalId, String companyNumber) {
+        return companyMatches(this.customerDataLayer.findCompanyCandidates(externalId, companyNumber));
+    }
+
+    public CustomerMatches loadPersonCustomer(String externalId) {
+        return personMatches(this.customerDataLayer.findByExternalId(externalId));
+    }
+
+    /**
+     * A record found by both externalId and masterExternalId is matched as one instance, even when the data layer
+     * returned two copies of it, so that the sync writes it once
+     */
+    static CustomerMatches companyMatches(CompanyCandidates candidates) {
         CustomerMatches matches = new CustomerMatches();
-        Customer matchByExternalId = this.customerDataLayer.findByExternalId(externalId);
-        if (matchByExternalId != null) {
-            matches.setCustomer(matchByExternalId);
+        if (candidates.getByExternalId() != null) {
+            Customer byExternalId = candidates.getByExternalId();
+            Customer byMasterExternalId = candidates.getByMasterExternalId();
+            matches.setCustomer(byExternalId);
             matches.setMatchTerm(EXTERNAL_ID);
-            Customer matchByMasterExternalId = this.customerDataLayer.findByMasterExternalId(externalId);
-            if (matchByMasterExternalId != null) matches.addDuplicate(matchByMasterExternalId);
-        } else {
-            Customer matchByCompanyNumber = this.customerDataLayer.findByCompanyNumber(companyNumber);
-            if (matchByCompanyNumber != null) {
-                matches.setCustomer(matchByCompanyNumber);
-                matches.setMatchTerm(COMPANY_NUMBER);
+            if (byMasterExternalId != null && byMasterExternalId.getInternalId() != null
+                    && byMasterExternalId.getInternalId().equals(byExternalId.getInternalId())) {
+                byMasterExternalId = byExternalId;
             }
+            if (byMasterExternalId != null) matches.addDuplicate(byMasterExternalId);
+        } else if (candidates.getByCompanyNumber() != null) {
+            matches.setCustomer(candidates.getByCompanyNumber());
+            matches.setMatchTerm(COMPANY_NUMBER);
         }
 
-        return matches;
+        return loaded(matches);
     }
 
-    public CustomerMatches loadPersonCustomer(String externalId) {
+    static CustomerMatches personMatches(Customer matchByExternalId) {
         CustomerMatches matches = new CustomerMatches();
-        Customer matchByExternalId = this.customerDataLayer.findByExternalId(externalId);
         matches.setCustomer(matchByExternalId);
 
         if (matchByExternalId != null) matches.setMatchTerm(EXTERNAL_ID);
+        return loaded(matches);
+    }
+
+    /**
+     * the matched customers are in sync with the data layer, only what the sync changes from now on is tracked
+     */
+    private static CustomerMatches loaded(CustomerMatches matches) {
+        if (matches.getCustomer() != null) {
+            matches.getCustomer().clearChanges();
+        }
+        for (Customer duplicate : matches.getDuplicates()) {
+            duplicate.clearChanges();
+        }
         return matches;
     }
 
+    /**
+     * Start collecting the writes of one sync, to be flushed at its end
+     */
+    public CustomerUnitOfWork beginUnitOfWork() {
+        return new CustomerUnitOfWork(customerDataLayer);
+    }
+
     public Customer updateCustomerRecord(Customer customer) {
         return customerDataLayer.updateCustomerRecord(customer);
     }
@@ -55,8 +117,13 @@ public class CustomerDataAccess {
     }
 
     public void updateCustomerShoppingList(Customer customer, ShoppingList consumerShoppingList) {
+        if (customer.hasShoppingList(consumerShoppingList)) {
+            return;
+        }
         customer.addShoppingList(consumerShoppingList);
-        customerDataLayer.updateShoppingList(consumerShoppingList);
+        if (!customerDataLayer.containsShoppingList(consumerShoppingList.getContentHash())) {
+            customerDataLayer.updateShoppingList(consumerShoppingList);
+        }
         customerDataLayer.updateCustomerRecord(customer);
     }
 }
@@ -1,19 +1,135 @@
 package codingdojo.data;
 
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.CompanyCandidates;
 import codingdojo.entities.internal.Customer;
 import codingdojo.entities.internal.ShoppingList;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
 public interface CustomerDataLayer {
 
+    /**
+     * Backends keeping record versions make this a compare-and-set: it throws an OptimisticLockException when the
+     * stored version is no longer the one of the customer, and otherwise bumps the version on the customer too.
+     * A customer with version 0 is written unconditionally. Other backends ignore versions.
+     */
     Customer updateCustomerRecord(Customer customer);
 
     Customer createCustomerRecord(Customer customer);
 
+    /**
+     * Delta write of a stored customer: only the given fields changed since it was loaded, the other ones may be left
+     * as stored. Same version check as updateCustomerRecord. Of the shopping lists, only the ones appended since the
+     * customer was loaded are new, see Customer.getShoppingListsAdded.
+     * Defaults to updateCustomerRecord, the customer always holds the whole record.
+     */
+    default Customer updateCustomerFields(Customer customer, Set<CustomerField> changedFields) {
+        return updateCustomerRecord(customer);
+    }
+
     void updateShoppingList(ShoppingList consumerShoppingList);
 
+    /**
+     * Whether a list with this content hash, see ShoppingList.getContentHash, is already stored, in which case
+     * it is not sent again. Defaults to false, every list is written.
+     */
+    default boolean containsShoppingList(long contentHash) {
+        return false;
+    }
+
+    /**
+     * The content hashes among these that are already stored, in one lookup where the backend can. Defaults to one
+     * containsShoppingList call per hash.
+     */
+    default Set<Long> containsShoppingLists(Collection<Long> contentHashes) {
+        Set<Long> stored = new HashSet<>();
+        for (Long contentHash : contentHashes) {
+            if (containsShoppingList(contentHash)) {
+                stored.add(contentHash);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Write all the records of a unit of work in one call: the shopping lists, then the new customers, then the
+     * updated ones. Each record is given once. New customers must get their internalId set.
+     * A stale updated customer throws an OptimisticLockException, possibly after some of the records were written.
+     * Updated customers only need their changed fields written, see updateCustomerFields.
+     * Defaults to one call per record, backends supporting batched writes should override it.
+     */
+    default void flush(List<Customer> createdCustomers, List<Customer> updatedCustomers, List<ShoppingList> shoppingLists) {
+        for (ShoppingList shoppingList : shoppingLists) {
+            updateShoppingList(shoppingList);
+        }
+        for (Customer customer : createdCustomers) {
+            Customer created = createCustomerRecord(customer);
+            if (created != null && created != customer) {
+                customer.setInternalId(created.getInternalId());
+            }
+        }
+        for (Customer customer : updatedCustomers) {
+            updateCustomerFields(customer, customer.getChangedFields());
+        }
+    }
+
     Customer findByExternalId(String externalId);
 
     Customer findByMasterExternalId(String externalId);
 
     Customer findByCompanyNumber(String companyNumber);
+
+    /**
+     * Bulk variant of findByExternalId, the returned map only holds the keys that were found.
+     * Defaults to one findByExternalId per key, backends able to run IN-list queries or multi-gets should override it.
+     */
+    default Map<String, Customer> findByExternalIds(Collection<String> externalIds) {
+        return findEach(externalIds, this::findByExternalId);
+    }
+
+    /**
+     * Bulk variant of findByMasterExternalId, the returned map only holds the keys that were found.
+     */
+    default Map<String, Customer> findByMasterExternalIds(Collection<String> externalIds) {
+        return findEach(externalIds, this::findByMasterExternalId);
+    }
+
+    /**
+     * Bulk variant of findByCompanyNumber, the returned map only holds the keys that were found.
+     */
+    default Map<String, Customer> findByCompanyNumbers(Collection<String> companyNumbers) {
+        return findEach(companyNumbers, this::findByCompanyNumber);
+    }
+
+    /**
+     * All the records needed to match a company, in one call. Backends able to answer the three lookups in a single
+     * round trip should override it and fill every candidate.
+     * Defaults to the sequential path: the masterExternalId is only looked up when the externalId matched,
+     * and the companyNumber only when it didn't.
+     */
+    default CompanyCandidates findCompanyCandidates(String externalId, String companyNumber) {
+        Customer byExternalId = findByExternalId(externalId);
+        if (byExternalId != null) {
+            return new CompanyCandidates(byExternalId, findByMasterExternalId(externalId), null);
+        }
+        return new CompanyCandidates(null, null, findByCompanyNumber(companyNumber));
+    }
+
+    private static Map<String, Customer> findEach(Collection<String> keys, Function<String, Customer> finder) {
+        Map<String, Customer> customers = new HashMap<>();
+        for (String key : keys) {
+            Customer customer = finder.apply(key);
+            if (customer != null) {
+                customers.put(key, customer);
+            }
+        }
+        return customers;
+    }
 }
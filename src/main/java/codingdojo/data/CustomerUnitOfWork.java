@@ -0,0 +1,197 @@
+package codingdojo.data;
+
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Collects the writes of one sync, and flushes them to the data layer at the end, each distinct record once.
+ * A customer created and then updated during the sync is only created, with its final state, and an updated
+ * customer without any changed field is not written at all.
+ * Not thread safe, there is one unit of work per sync.
+ */
+public class CustomerUnitOfWork {
+
+    private final CustomerDataLayer customerDataLayer;
+    private final AsyncCustomerDataLayer asyncCustomerDataLayer;
+    private final PendingRecords<Customer> createdCustomers = new PendingRecords<>();
+    private final PendingRecords<Customer> updatedCustomers = new PendingRecords<>();
+    private final PendingRecords<ShoppingList> shoppingLists = new PendingRecords<>();
+
+    CustomerUnitOfWork(CustomerDataLayer customerDataLayer) {
+        this.customerDataLayer = customerDataLayer;
+        this.asyncCustomerDataLayer = null;
+    }
+
+    CustomerUnitOfWork(AsyncCustomerDataLayer asyncCustomerDataLayer) {
+        this.customerDataLayer = null;
+        this.asyncCustomerDataLayer = asyncCustomerDataLayer;
+    }
+
+    public void createCustomerRecord(Customer customer) {
+        updatedCustomers.remove(customer);
+        createdCustomers.add(customer);
+    }
+
+    public void updateCustomerRecord(Customer customer) {
+        if (!createdCustomers.contains(customer)) {
+            updatedCustomers.add(customer);
+        }
+    }
+
+    /**
+     * A list the customer already holds is skipped, the customer is left as it is and nothing is written
+     */
+    public void updateCustomerShoppingList(Customer customer, ShoppingList consumerShoppingList) {
+        if (customer.hasShoppingList(consumerShoppingList)) {
+            return;
+        }
+        customer.addShoppingList(consumerShoppingList);
+        shoppingLists.add(consumerShoppingList);
+        updateCustomerRecord(customer);
+    }
+
+    /**
+     * Same as updateCustomerShoppingList for all the lists, appended to the customer in one go
+     */
+    public void updateCustomerShoppingLists(Customer customer, Collection<ShoppingList> consumerShoppingLists) {
+        Set<ShoppingList> newLists = new LinkedHashSet<>();
+        for (ShoppingList consumerShoppingList : consumerShoppingLists) {
+            if (!customer.hasShoppingList(consumerShoppingList)) {
+                newLists.add(consumerShoppingList);
+            }
+        }
+        if (newLists.isEmpty()) {
+            return;
+        }
+        customer.addShoppingLists(newLists);
+        newLists.forEach(shoppingLists::add);
+        updateCustomerRecord(customer);
+    }
+
+    /**
+     * Send all the pending writes to the data layer in one call, and start over
+     */
+    public void flush() {
+        if (customerDataLayer == null) {
+            flushAsync().join();
+            return;
+        }
+        List<Customer> created = createdCustomers.records();
+        List<Customer> changed = changedCustomers();
+        List<ShoppingList> lists = shoppingLists.records();
+        if (!lists.isEmpty()) {
+            Set<Long> stored = customerDataLayer.containsShoppingLists(contentHashes(lists));
+            lists.removeIf(list -> stored.contains(list.getContentHash()));
+        }
+        clear();
+        if (!created.isEmpty() || !changed.isEmpty() || !lists.isEmpty()) {
+            customerDataLayer.flush(created, changed, lists);
+        }
+        written(created, changed);
+    }
+
+    /**
+     * Same as flush, without blocking when the unit of work was started on an AsyncCustomerDataAccess. The lists
+     * already stored are looked up first, and left out of the write.
+     */
+    public CompletableFuture<Void> flushAsync() {
+        if (asyncCustomerDataLayer == null) {
+            flush();
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Customer> created = createdCustomers.records();
+        List<Customer> changed = changedCustomers();
+        List<ShoppingList> lists = shoppingLists.records();
+        clear();
+        if (created.isEmpty() && changed.isEmpty() && lists.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<List<ShoppingList>> unstoredLists = lists.isEmpty()
+                ? CompletableFuture.completedFuture(lists)
+                : asyncCustomerDataLayer.containsShoppingLists(contentHashes(lists)).thenApply(stored -> {
+                    lists.removeIf(list -> stored.contains(list.getContentHash()));
+                    return lists;
+                });
+        return unstoredLists.thenCompose(unstored -> {
+            if (created.isEmpty() && changed.isEmpty() && unstored.isEmpty()) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            return asyncCustomerDataLayer.flush(created, changed, unstored);
+        }).thenRun(() -> written(created, changed));
+    }
+
+    private static List<Long> contentHashes(List<ShoppingList> lists) {
+        List<Long> contentHashes = new ArrayList<>(lists.size());
+        for (ShoppingList list : lists) {
+            contentHashes.add(list.getContentHash());
+        }
+        return contentHashes;
+    }
+
+    private List<Customer> changedCustomers() {
+        List<Customer> changed = new ArrayList<>();
+        for (Customer customer : updatedCustomers.records()) {
+            if (customer.hasChanges()) {
+                changed.add(customer);
+            }
+        }
+        return changed;
+    }
+
+    private void written(List<Customer> created, List<Customer> changed) {
+        created.forEach(Customer::clearChanges);
+        changed.forEach(Customer::clearChanges);
+    }
+
+    private void clear() {
+        createdCustomers.clear();
+        updatedCustomers.clear();
+        shoppingLists.clear();
+    }
+
+    /**
+     * Records in registration order, distinct by identity since Customer equality is based on its keys only
+     */
+    private static class PendingRecords<T> {
+        private final List<T> records = new ArrayList<>();
+        private final Set<T> registered = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        void add(T record) {
+            if (registered.add(record)) {
+                records.add(record);
+            }
+        }
+
+        void remove(T record) {
+            if (registered.remove(record)) {
+                records.removeIf(r -> r == record);
+            }
+        }
+
+        boolean contains(T record) {
+            return registered.contains(record);
+        }
+
+        boolean isEmpty() {
+            return records.isEmpty();
+        }
+
+        List<T> records() {
+            return new ArrayList<>(records);
+        }
+
+        void clear() {
+            records.clear();
+            registered.clear();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package codingdojo.data;
+
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.exceptions.OptimisticLockException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Thread safe data layer keeping the customers in memory.
+ *
+ * Each customer is stored as a private copy, replaced as a whole on update, so a reader sees a customer as it was
+ * after some write, never half of one, and the Customer it gets is its own copy. The externalId, masterExternalId
+ * and companyNumber indexes map a key to the internalIds of every customer holding it, in write order, and a lookup
+ * checks the record it lands on still holds the key, so a key an update moved away is not found anymore even before
+ * its index entry is dropped.
+ * Reads take no lock. Writes to the same internalId are serialized by a striped lock, writes to different customers
+ * run in parallel. A key held by two customers finds the last one written, and the other one again once the last
+ * one drops the key.
+ *
+ * Every record has a version, 1 once created and bumped on each write, and an update from a customer loaded at an
+ * older version throws an OptimisticLockException instead of overwriting the newer one.
+ */
+public class InMemoryCustomerDataLayer implements CustomerDataLayer {
+
+    private static final int STRIPES = 64;
+
+    private final Map<String, Customer> customersByInternalId = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> internalIdsByExternalId = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> internalIdsByMasterExternalId = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> internalIdsByCompanyNumber = new ConcurrentHashMap<>();
+    private final Set<Long> shoppingLists = ConcurrentHashMap.newKeySet();
+    private final Object[] stripes = new Object[STRIPES];
+    private final AtomicLong nextInternalId = new AtomicLong(1);
+
+    public InMemoryCustomerDataLayer() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Store a new record. A customer without internalId gets a new one, unique in this store, one with the internalId
+     * of a stored customer is rejected rather than overwrite it.
+     */
+    @Override
+    public Customer createCustomerRecord(Customer customer) {
+        if (customer.getInternalId() == null) {
+            customer.setInternalId(newInternalId());
+        }
+        return store(customer, false);
+    }
+
+    @Override
+    public Customer updateCustomerRecord(Customer customer) {
+        if (customer.getInternalId() == null) {
+            throw new IllegalArgumentException("cannot update a customer without internalId");
+        }
+        return store(customer, true);
+    }
+
+    @Override
+    public void updateShoppingList(ShoppingList consumerShoppingList) {
+        shoppingLists.add(consumerShoppingList.getContentHash());
+    }
+
+    @Override
+    public boolean containsShoppingList(long contentHash) {
+        return shoppingLists.contains(contentHash);
+    }
+
+    @Override
+    public Customer findByExternalId(String externalId) {
+        return find(internalIdsByExternalId, externalId, Customer::getExternalId);
+    }
+
+    @Override
+    public Customer findByMasterExternalId(String externalId) {
+        return find(internalIdsByMasterExternalId, externalId, Customer::getMasterExternalId);
+    }
+
+    @Override
+    public Customer findByCompanyNumber(String companyNumber) {
+        return find(internalIdsByCompanyNumber, companyNumber, Customer::getCompanyNumber);
+    }
+
+    public Customer findByInternalId(String internalId) {
+        Customer stored = internalId == null ? null : customersByInternalId.get(internalId);
+        return stored == null ? null : stored.copy();
+    }
+
+    public int getCustomerCount() {
+        return customersByInternalId.size();
+    }
+
+    /**
+     * Replace the stored copy, then move the keys it changed: the customer is indexed as the last holder of its new
+     * keys, and taken off the holders of the old ones. A create fails when the internalId is stored already, an update
+     * first checks the customer is at the stored version.
+     */
+    private Customer store(Customer customer, boolean compareVersion) {
+        Customer copy = customer.copy();
+        synchronized (stripeOf(copy.getInternalId())) {
+            Customer stored = customersByInternalId.get(copy.getInternalId());
+            if (!compareVersion && stored != null) {
+                throw new IllegalArgumentException("a customer is already stored with internalId " + customer.getInternalId());
+            }
+            long storedVersion = stored == null ? 0 : stored.getVersion();
+            if (compareVersion && customer.getVersion() != 0 && customer.getVersion() != storedVersion) {
+                throw new OptimisticLockException(customer.getInternalId(), customer.getVersion(), storedVersion);
+            }
+            copy.setVersion(storedVersion + 1);
+            customer.setVersion(storedVersion + 1);
+            Customer previous = customersByInternalId.put(copy.getInternalId(), copy);
+            reindex(internalIdsByExternalId, previous, copy, Customer::getExternalId);
+            reindex(internalIdsByMasterExternalId, previous, copy, Customer::getMasterExternalId);
+            reindex(internalIdsByCompanyNumber, previous, copy, Customer::getCompanyNumber);
+        }
+        return customer;
+    }
+
+    /**
+     * The holders of a key are an immutable list replaced atomically per key, so a reader walks a consistent list
+     * without lock while writers of different customers sharing the key do not lose each other's entries.
+     */
+    private static void reindex(Map<String, List<String>> index, Customer previous, Customer stored, Function<Customer, String> key) {
+        String internalId = stored.getInternalId();
+        String oldKey = previous == null ? null : key.apply(previous);
+        String newKey = key.apply(stored);
+        if (newKey != null) {
+            index.compute(newKey, (k, holders) -> withLastHolder(holders, internalId));
+        }
+        if (oldKey != null && !oldKey.equals(newKey)) {
+            index.computeIfPresent(oldKey, (k, holders) -> withoutHolder(holders, internalId));
+        }
+    }
+
+    private static List<String> withLastHolder(List<String> holders, String internalId) {
+        if (holders == null) {
+            return List.of(internalId);
+        }
+        if (!holders.isEmpty() && holders.get(holders.size() - 1).equals(internalId)) {
+            return holders;
+        }
+        List<String> moved = new ArrayList<>(holders.size() + 1);
+        for (String holder : holders) {
+            if (!holder.equals(internalId)) {
+                moved.add(holder);
+            }
+        }
+        moved.add(internalId);
+        return List.copyOf(moved);
+    }
+
+    private static List<String> withoutHolder(List<String> holders, String internalId) {
+        if (!holders.contains(internalId)) {
+            return holders;
+        }
+        List<String> remaining = new ArrayList<>(holders);
+        remaining.remove(internalId);
+        return remaining.isEmpty() ? null : List.copyOf(remaining);
+    }
+
+    private Customer find(Map<String, List<String>> index, String key, Function<Customer, String> keyOf) {
+        if (key == null) {
+            return null;
+        }
+        List<String> holders = index.get(key);
+        if (holders == null) {
+            return null;
+        }
+        for (int i = holders.size() - 1; i >= 0; i--) {
+            Customer stored = customersByInternalId.get(holders.get(i));
+            if (stored != null && Objects.equals(key, keyOf.apply(stored))) {
+                return stored.copy();
+            }
+        }
+        return null;
+    }
+
+    private String newInternalId() {
+        String internalId;
+        do {
+            internalId = Long.toString(nextInternalId.getAndIncrement());
+        } while (customersByInternalId.containsKey(internalId));
+        return internalId;
+    }
+
+    private Object stripeOf(String internalId) {
+        return stripes[Math.floorMod(internalId.hashCode(), STRIPES)];
+    }
+}
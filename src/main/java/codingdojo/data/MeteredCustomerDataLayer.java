@@ -0,0 +1,192 @@
+package codingdojo.data;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.CompanyCandidates;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.metrics.LatencyHistogram;
+import codingdojo.metrics.MetricsRegistry;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Times every call to another data layer, one "dataLayer.<method>" timer per method, failed calls included.
+ * Every method is forwarded, the bulk and batched ones too, so the delegate's own implementations are the ones timed.
+ */
+public class MeteredCustomerDataLayer implements CustomerDataLayer {
+
+    private final CustomerDataLayer delegate;
+    private final LatencyHistogram updateCustomerRecord;
+    private final LatencyHistogram updateCustomerFields;
+    private final LatencyHistogram createCustomerRecord;
+    private final LatencyHistogram updateShoppingList;
+    private final LatencyHistogram containsShoppingList;
+    private final LatencyHistogram flush;
+    private final LatencyHistogram findByExternalId;
+    private final LatencyHistogram findByMasterExternalId;
+    private final LatencyHistogram findByCompanyNumber;
+    private final LatencyHistogram findByExternalIds;
+    private final LatencyHistogram findByMasterExternalIds;
+    private final LatencyHistogram findByCompanyNumbers;
+    private final LatencyHistogram findCompanyCandidates;
+
+    public MeteredCustomerDataLayer(CustomerDataLayer delegate, MetricsRegistry registry) {
+        this.delegate = delegate;
+        this.updateCustomerRecord = registry.timer("dataLayer.updateCustomerRecord");
+        this.updateCustomerFields = registry.timer("dataLayer.updateCustomerFields");
+        this.createCustomerRecord = registry.timer("dataLayer.createCustomerRecord");
+        this.updateShoppingList = registry.timer("dataLayer.updateShoppingList");
+        this.containsShoppingList = registry.timer("dataLayer.containsShoppingList");
+        this.flush = registry.timer("dataLayer.flush");
+        this.findByExternalId = registry.timer("dataLayer.findByExternalId");
+        this.findByMasterExternalId = registry.timer("dataLayer.findByMasterExternalId");
+        this.findByCompanyNumber = registry.timer("dataLayer.findByCompanyNumber");
+        this.findByExternalIds = registry.timer("dataLayer.findByExternalIds");
+        this.findByMasterExternalIds = registry.timer("dataLayer.findByMasterExternalIds");
+        this.findByCompanyNumbers = registry.timer("dataLayer.findByCompanyNumbers");
+        this.findCompanyCandidates = registry.timer("dataLayer.findCompanyCandidates");
+    }
+
+    @Override
+    public Customer updateCustomerRecord(Customer customer) {
+        long start = System.nanoTime();
+        try {
+            return delegate.updateCustomerRecord(customer);
+        } finally {
+            updateCustomerRecord.recordSince(start);
+        }
+    }
+
+    @Override
+    public Customer updateCustomerFields(Customer customer, Set<CustomerField> changedFields) {
+        long start = System.nanoTime();
+        try {
+            return delegate.updateCustomerFields(customer, changedFields);
+        } finally {
+            updateCustomerFields.recordSince(start);
+        }
+    }
+
+    @Override
+    public Customer createCustomerRecord(Customer customer) {
+        long start = System.nanoTime();
+        try {
+            return delegate.createCustomerRecord(customer);
+        } finally {
+            createCustomerRecord.recordSince(start);
+        }
+    }
+
+    @Override
+    public void updateShoppingList(ShoppingList consumerShoppingList) {
+        long start = System.nanoTime();
+        try {
+            delegate.updateShoppingList(consumerShoppingList);
+        } finally {
+            updateShoppingList.recordSince(start);
+        }
+    }
+
+    @Override
+    public boolean containsShoppingList(long contentHash) {
+        long start = System.nanoTime();
+        try {
+            return delegate.containsShoppingList(contentHash);
+        } finally {
+            containsShoppingList.recordSince(start);
+        }
+    }
+
+    @Override
+    public Set<Long> containsShoppingLists(Collection<Long> contentHashes) {
+        long start = System.nanoTime();
+        try {
+            return delegate.containsShoppingLists(contentHashes);
+        } finally {
+            containsShoppingList.recordSince(start);
+        }
+    }
+
+    @Override
+    public void flush(List<Customer> createdCustomers, List<Customer> updatedCustomers, List<ShoppingList> shoppingLists) {
+        long start = System.nanoTime();
+        try {
+            delegate.flush(createdCustomers, updatedCustomers, shoppingLists);
+        } finally {
+            flush.recordSince(start);
+        }
+    }
+
+    @Override
+    public Customer findByExternalId(String externalId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findByExternalId(externalId);
+        } finally {
+            findByExternalId.recordSince(start);
+        }
+    }
+
+    @Override
+    public Customer findByMasterExternalId(String externalId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findByMasterExternalId(externalId);
+        } finally {
+            findByMasterExternalId.recordSince(start);
+        }
+    }
+
+    @Override
+    public Customer findByCompanyNumber(String companyNumber) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findByCompanyNumber(companyNumber);
+        } finally {
+            findByCompanyNumber.recordSince(start);
+        }
+    }
+
+    @Override
+    public Map<String, Customer> findByExternalIds(Collection<String> externalIds) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findByExternalIds(externalIds);
+        } finally {
+            findByExternalIds.recordSince(start);
+        }
+    }
+
+    @Override
+    public Map<String, Customer> findByMasterExternalIds(Collection<String> externalIds) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findByMasterExternalIds(externalIds);
+        } finally {
+            findByMasterExternalIds.recordSince(start);
+        }
+    }
+
+    @Override
+    public Map<String, Customer> findByCompanyNumbers(Collection<String> companyNumbers) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findByCompanyNumbers(companyNumbers);
+        } finally {
+            findByCompanyNumbers.recordSince(start);
+        }
+    }
+
+    @Override
+    public CompanyCandidates findCompanyCandidates(String externalId, String companyNumber) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findCompanyCandidates(externalId, companyNumber);
+        } finally {
+            findCompanyCandidates.recordSince(start);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package codingdojo.data;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.exceptions.OptimisticLockException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Data layer used during a batch sync. All the lookups of the batch are resolved up front, and answered from memory
+ * afterwards, including the keys that were not found. Writes go straight to the delegate and refresh the in-memory
+ * indexes, so a message later in the batch sees what an earlier message created or changed.
+ * A write failing on an OptimisticLockException forgets every key of the customers it held, so the retry of that
+ * message loads them again from the delegate.
+ */
+class PreloadedCustomerDataLayer implements CustomerDataLayer {
+
+    private final CustomerDataLayer delegate;
+    private final Map<String, Customer> customersByExternalId = new HashMap<>();
+    private final Map<String, Customer> customersByMasterExternalId = new HashMap<>();
+    private final Map<String, Customer> customersByCompanyNumber = new HashMap<>();
+    private final Map<Customer, IndexedKeys> indexedKeys = new IdentityHashMap<>();
+
+    PreloadedCustomerDataLayer(CustomerDataLayer delegate) {
+        this.delegate = delegate;
+    }
+
+    void preloadExternalIds(Collection<String> externalIds) {
+        preload(externalIds, customersByExternalId, delegate::findByExternalId, delegate::findByExternalIds);
+    }
+
+    void preloadMasterExternalIds(Collection<String> masterExternalIds) {
+        preload(masterExternalIds, customersByMasterExternalId, delegate::findByMasterExternalId, delegate::findByMasterExternalIds);
+    }
+
+    void preloadCompanyNumbers(Collection<String> companyNumbers) {
+        preload(companyNumbers, customersByCompanyNumber, delegate::findByCompanyNumber, delegate::findByCompanyNumbers);
+    }
+
+    /**
+     * a single missing key goes through the single-key finder, more than one through the bulk finder
+     */
+    private void preload(Collection<String> keys, Map<String, Customer> index, Function<String, Customer> finder,
+                         Function<Collection<String>, Map<String, Customer>> bulkFinder) {
+        List<String> missingKeys = new ArrayList<>();
+        for (String key : keys) {
+            if (key != null && !index.containsKey(key)) {
+                missingKeys.add(key);
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return;
+        }
+        Map<String, Customer> found = missingKeys.size() == 1
+                ? Collections.singletonMap(missingKeys.get(0), finder.apply(missingKeys.get(0)))
+                : bulkFinder.apply(missingKeys);
+        for (String key : missingKeys) {
+            remember(key, found.get(key), index);
+        }
+    }
+
+    private Customer remember(String key, Customer customer, Map<String, Customer> index) {
+        index.put(key, customer);
+        if (customer != null) {
+            indexedKeys.computeIfAbsent(customer, IndexedKeys::new);
+        }
+        return customer;
+    }
+
+    @Override
+    public Customer updateCustomerRecord(Customer customer) {
+        Customer updated;
+        try {
+            updated = delegate.updateCustomerRecord(customer);
+        } catch (OptimisticLockException e) {
+            forget(customer);
+            throw e;
+        }
+        reindex(customer);
+        return updated;
+    }
+
+    @Override
+    public Customer updateCustomerFields(Customer customer, Set<CustomerField> changedFields) {
+        Customer updated;
+        try {
+            updated = delegate.updateCustomerFields(customer, changedFields);
+        } catch (OptimisticLockException e) {
+            forget(customer);
+            throw e;
+        }
+        reindex(customer);
+        return updated;
+    }
+
+    @Override
+    public Customer createCustomerRecord(Customer customer) {
+        Customer created = delegate.createCustomerRecord(customer);
+        reindex(customer);
+        return created;
+    }
+
+    @Override
+    public void flush(List<Customer> createdCustomers, List<Customer> updatedCustomers, List<ShoppingList> shoppingLists) {
+        try {
+            delegate.flush(createdCustomers, updatedCustomers, shoppingLists);
+        } catch (OptimisticLockException e) {
+            createdCustomers.forEach(this::forget);
+            updatedCustomers.forEach(this::forget);
+            throw e;
+        }
+        createdCustomers.forEach(this::reindex);
+        updatedCustomers.forEach(this::reindex);
+    }
+
+    @Override
+    public void updateShoppingList(ShoppingList consumerShoppingList) {
+        delegate.updateShoppingList(consumerShoppingList);
+    }
+
+    @Override
+    public boolean containsShoppingList(long contentHash) {
+        return delegate.containsShoppingList(contentHash);
+    }
+
+    @Override
+    public Set<Long> containsShoppingLists(Collection<Long> contentHashes) {
+        return delegate.containsShoppingLists(contentHashes);
+    }
+
+    @Override
+    public Customer findByExternalId(String externalId) {
+        return find(externalId, customersByExternalId, delegate::findByExternalId);
+    }
+
+    @Override
+    public Customer findByMasterExternalId(String masterExternalId) {
+        return find(masterExternalId, customersByMasterExternalId, delegate::findByMasterExternalId);
+    }
+
+    @Override
+    public Customer findByCompanyNumber(String companyNumber) {
+        return find(companyNumber, customersByCompanyNumber, delegate::findByCompanyNumber);
+    }
+
+    /**
+     * keys that were not part of the preload are still resolved, one by one, against the delegate
+     */
+    private Customer find(String key, Map<String, Customer> index, Function<String, Customer> finder) {
+        if (!index.containsKey(key)) {
+            return remember(key, finder.apply(key), index);
+        }
+        return index.get(key);
+    }
+
+    /**
+     * the customer keys may have been changed by the sync rules, so the old ones pointing to it are dropped
+     */
+    private void reindex(Customer customer) {
+        IndexedKeys previous = indexedKeys.get(customer);
+        if (previous != null) {
+            unindex(previous.externalId, customer, customersByExternalId);
+            unindex(previous.masterExternalId, customer, customersByMasterExternalId);
+            unindex(previous.companyNumber, customer, customersByCompanyNumber);
+        }
+        index(customer.getExternalId(), customer, customersByExternalId);
+        index(customer.getMasterExternalId(), customer, customersByMasterExternalId);
+        index(customer.getCompanyNumber(), customer, customersByCompanyNumber);
+        indexedKeys.put(customer, new IndexedKeys(customer));
+    }
+
+    /**
+     * the keys the customer was indexed under and the ones it has now are resolved against the delegate again
+     */
+    private void forget(Customer customer) {
+        IndexedKeys previous = indexedKeys.remove(customer);
+        if (previous != null) {
+            forget(previous.externalId, previous.masterExternalId, previous.companyNumber);
+        }
+        forget(customer.getExternalId(), customer.getMasterExternalId(), customer.getCompanyNumber());
+    }
+
+    private void forget(String externalId, String masterExternalId, String companyNumber) {
+        customersByExternalId.remove(externalId);
+        customersByMasterExternalId.remove(masterExternalId);
+        customersByCompanyNumber.remove(companyNumber);
+    }
+
+    private void unindex(String key, Customer customer, Map<String, Customer> index) {
+        if (key != null && index.get(key) == customer) {
+            index.put(key, null);
+        }
+    }
+
+    private void index(String key, Customer customer, Map<String, Customer> index) {
+        if (key != null) {
+            index.put(key, customer);
+        }
+    }
+
+    private static class IndexedKeys {
+        private final String externalId;
+        private final String masterExternalId;
+        private final String companyNumber;
+
+        private IndexedKeys(Customer customer) {
+            this.externalId = customer.getExternalId();
+            this.masterExternalId = customer.getMasterExternalId();
+            this.companyNumber = customer.getCompanyNumber();
+        }
+    }
+}
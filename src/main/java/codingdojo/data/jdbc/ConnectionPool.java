@@ -0,0 +1,116 @@
+package codingdojo.data.jdbc;
+
+import codingdojo.exceptions.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of JDBC connections. Connections are opened on demand, up to maxConnections at a time, and kept
+ * for reuse once released; a caller finding every connection in use waits up to the acquire timeout.
+ * A connection is handed back with auto-commit on; one that fails on release is closed instead of pooled.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 30_000;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxConnections;
+    private final long acquireTimeoutMillis;
+    private final Semaphore permits;
+    private final Deque<Connection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password, int maxConnections) {
+        this(url, user, password, maxConnections, DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+    }
+
+    public ConnectionPool(String url, String user, String password, int maxConnections, long acquireTimeoutMillis) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("maxConnections must be positive");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxConnections = maxConnections;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    /**
+     * A connection for the caller alone, to give back with release
+     */
+    public Connection acquire() {
+        if (closed) {
+            throw new IllegalStateException("ConnectionPool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new DataAccessException("no connection available within " + acquireTimeoutMillis + "ms, all "
+                        + maxConnections + " are in use");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("interrupted waiting for a connection", e);
+        }
+        Connection connection = idle.pollFirst();
+        if (connection != null) {
+            return connection;
+        }
+        try {
+            return DriverManager.getConnection(url, user, password);
+        } catch (SQLException e) {
+            permits.release();
+            throw new DataAccessException("could not connect to " + url, e);
+        }
+    }
+
+    public void release(Connection connection) {
+        try {
+            if (closed || connection.isClosed()) {
+                connection.close();
+            } else {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                idle.offerFirst(connection);
+            }
+        } catch (SQLException e) {
+            closeQuietly(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Close the idle connections, the ones in use are closed as they are released
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // the connection is dropped either way
+        }
+    }
+}
@@ -0,0 +1,555 @@
+package codingdojo.data.jdbc;
+
+import codingdojo.data.CustomerDataLayer;
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.internal.Address;
+import codingdojo.entities.internal.CompanyCandidates;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.exceptions.DataAccessException;
+import codingdojo.exceptions.OptimisticLockException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Data layer on a relational database, through JDBC and prepared statements. The SQL is the one of H2, which also
+ * runs embedded in file mode, jdbc:h2:file:/path/to/customers; upserts use its MERGE INTO ... KEY.
+ *
+ * Tables: customer, with an index on each of external_id, master_external_id and company_number;
+ * customer_shopping_list, the lists of a customer by position; shopping_list, the content hashes of the lists stored.
+ * A flush writes the whole unit of work in one transaction, with one JDBC batch per statement, the single record
+ * methods each run in a transaction of their own. An update only sets the columns of the changed fields, with one
+ * batch per set of fields, and only writes the shopping lists appended since the customer was loaded; updateCustomerRecord
+ * sets every column. New customers get a random UUID as internalId.
+ *
+ * Each row has a version, 1 once inserted and bumped by every update, which only matches the row at the version the
+ * customer was loaded at: a stale customer rolls the whole flush back and throws an OptimisticLockException.
+ * A customer with version 0 is updated whatever the stored version, and inserted when there is no row yet.
+ * Creating a customer whose internalId already has a row fails, rather than overwrite that row.
+ */
+public class JdbcCustomerDataLayer implements CustomerDataLayer {
+
+    private static final String CUSTOMER_COLUMNS = "internal_id, external_id, master_external_id, company_number, "
+            + "customer_type, name, preferred_store, bonus_points_balance, street, city, postal_code, sync_fingerprint, version";
+    private static final String INSERT_CUSTOMER = "INSERT INTO customer (" + CUSTOMER_COLUMNS + ") "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 1)";
+    private static final String UPDATE_CUSTOMER = "UPDATE customer SET %s sync_fingerprint = ?, version = version + 1 "
+            + "WHERE internal_id = ? AND (version = ? OR ? = 0)";
+    private static final Set<CustomerField> ALL_FIELDS = Collections.unmodifiableSet(EnumSet.allOf(CustomerField.class));
+    private static final String SELECT_VERSION = "SELECT version FROM customer WHERE internal_id = ?";
+    private static final String UPSERT_CUSTOMER_SHOPPING_LIST = "MERGE INTO customer_shopping_list "
+            + "(internal_id, position, products) KEY (internal_id, position) VALUES (?, ?, ?)";
+    private static final String UPSERT_SHOPPING_LIST = "MERGE INTO shopping_list (content_hash, products) KEY (content_hash) VALUES (?, ?)";
+    private static final String SELECT_SHOPPING_LIST = "SELECT 1 FROM shopping_list WHERE content_hash = ?";
+    private static final String SELECT_SHOPPING_LISTS = "SELECT content_hash FROM shopping_list WHERE content_hash IN (%s)";
+    private static final String SELECT_CUSTOMER_SHOPPING_LISTS = "SELECT internal_id, products FROM customer_shopping_list "
+            + "WHERE internal_id IN (%s) ORDER BY internal_id, position";
+    private static final String SELECT_CUSTOMERS = "SELECT " + CUSTOMER_COLUMNS + " FROM customer WHERE %s";
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS customer (internal_id VARCHAR(64) PRIMARY KEY, external_id VARCHAR(64), "
+                    + "master_external_id VARCHAR(64), company_number VARCHAR(64), customer_type VARCHAR(16), "
+                    + "name VARCHAR(255), preferred_store VARCHAR(255), bonus_points_balance INT, "
+                    + "street VARCHAR(255), city VARCHAR(255), postal_code VARCHAR(32), sync_fingerprint BIGINT, version BIGINT NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS customer_external_id ON customer (external_id)",
+            "CREATE INDEX IF NOT EXISTS customer_master_external_id ON customer (master_external_id)",
+            "CREATE INDEX IF NOT EXISTS customer_company_number ON customer (company_number)",
+            "CREATE TABLE IF NOT EXISTS customer_shopping_list (internal_id VARCHAR(64), position INT, "
+                    + "products VARCHAR(4096), PRIMARY KEY (internal_id, position))",
+            "CREATE TABLE IF NOT EXISTS shopping_list (content_hash BIGINT PRIMARY KEY, products VARCHAR(4096))"
+    };
+
+    private static final int IN_LIST_SIZE = 100;
+    private static final String PRODUCT_SEPARATOR = "\u001f";
+
+    private final ConnectionPool connectionPool;
+
+    public JdbcCustomerDataLayer(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Create the tables and indexes that do not exist yet
+     */
+    public void createSchema() {
+        Connection connection = connectionPool.acquire();
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("could not create the customer schema", e);
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    @Override
+    public Customer createCustomerRecord(Customer customer) {
+        write(Collections.singletonList(customer), Collections.emptyList(), Collections.emptyList(), c -> ALL_FIELDS);
+        return customer;
+    }
+
+    @Override
+    public Customer updateCustomerRecord(Customer customer) {
+        write(Collections.emptyList(), Collections.singletonList(customer), Collections.emptyList(), c -> ALL_FIELDS);
+        return customer;
+    }
+
+    @Override
+    public Customer updateCustomerFields(Customer customer, Set<CustomerField> changedFields) {
+        write(Collections.emptyList(), Collections.singletonList(customer), Collections.emptyList(), c -> changedFields);
+        return customer;
+    }
+
+    @Override
+    public void updateShoppingList(ShoppingList consumerShoppingList) {
+        write(Collections.emptyList(), Collections.emptyList(), Collections.singletonList(consumerShoppingList), c -> ALL_FIELDS);
+    }
+
+    @Override
+    public void flush(List<Customer> createdCustomers, List<Customer> updatedCustomers, List<ShoppingList> shoppingLists) {
+        write(createdCustomers, updatedCustomers, shoppingLists, Customer::getChangedFields);
+    }
+
+    @Override
+    public boolean containsShoppingList(long contentHash) {
+        Connection connection = connectionPool.acquire();
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_SHOPPING_LIST)) {
+            statement.setLong(1, contentHash);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("could not look up shopping list " + contentHash, e);
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    @Override
+    public Set<Long> containsShoppingLists(Collection<Long> contentHashes) {
+        List<Long> distinctHashes = new ArrayList<>(new LinkedHashSet<>(contentHashes));
+        Set<Long> stored = new HashSet<>();
+        if (distinctHashes.isEmpty()) {
+            return stored;
+        }
+        Connection connection = connectionPool.acquire();
+        try {
+            for (int from = 0; from < distinctHashes.size(); from += IN_LIST_SIZE) {
+                List<Long> chunk = distinctHashes.subList(from, Math.min(from + IN_LIST_SIZE, distinctHashes.size()));
+                try (PreparedStatement statement = connection.prepareStatement(String.format(SELECT_SHOPPING_LISTS, placeholders(chunk.size())))) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setLong(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            stored.add(resultSet.getLong(1));
+                        }
+                    }
+                }
+            }
+            return stored;
+        } catch (SQLException e) {
+            throw new DataAccessException("could not look up shopping lists", e);
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    @Override
+    public Customer findByExternalId(String externalId) {
+        return findAll("external_id", Collections.singletonList(externalId)).get(externalId);
+    }
+
+    @Override
+    public Customer findByMasterExternalId(String externalId) {
+        return findAll("master_external_id", Collections.singletonList(externalId)).get(externalId);
+    }
+
+    @Override
+    public Customer findByCompanyNumber(String companyNumber) {
+        return findAll("company_number", Collections.singletonList(companyNumber)).get(companyNumber);
+    }
+
+    @Override
+    public Map<String, Customer> findByExternalIds(Collection<String> externalIds) {
+        return findAll("external_id", externalIds);
+    }
+
+    @Override
+    public Map<String, Customer> findByMasterExternalIds(Collection<String> externalIds) {
+        return findAll("master_external_id", externalIds);
+    }
+
+    @Override
+    public Map<String, Customer> findByCompanyNumbers(Collection<String> companyNumbers) {
+        return findAll("company_number", companyNumbers);
+    }
+
+    /**
+     * one query for the three candidates
+     */
+    @Override
+    public CompanyCandidates findCompanyCandidates(String externalId, String companyNumber) {
+        String sql = String.format(SELECT_CUSTOMERS, "external_id = ? OR master_external_id = ? OR company_number = ?");
+        Connection connection = connectionPool.acquire();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, externalId);
+            statement.setString(2, externalId);
+            statement.setString(3, companyNumber);
+            List<Customer> customers = readCustomers(connection, statement);
+            Customer byExternalId = null;
+            Customer byMasterExternalId = null;
+            Customer byCompanyNumber = null;
+            for (Customer customer : customers) {
+                if (byExternalId == null && Objects.equals(externalId, customer.getExternalId())) {
+                    byExternalId = customer;
+                }
+                if (byMasterExternalId == null && Objects.equals(externalId, customer.getMasterExternalId())) {
+                    byMasterExternalId = customer;
+                }
+                if (byCompanyNumber == null && companyNumber != null && companyNumber.equals(customer.getCompanyNumber())) {
+                    byCompanyNumber = customer;
+                }
+            }
+            return new CompanyCandidates(byExternalId, byMasterExternalId, byCompanyNumber);
+        } catch (SQLException e) {
+            throw new DataAccessException("could not load the candidates for " + externalId, e);
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /**
+     * fieldsOf gives the fields to set on each updated customer
+     */
+    private void write(List<Customer> createdCustomers, List<Customer> updatedCustomers, List<ShoppingList> shoppingLists,
+                       Function<Customer, Set<CustomerField>> fieldsOf) {
+        if (createdCustomers.isEmpty() && updatedCustomers.isEmpty() && shoppingLists.isEmpty()) {
+            return;
+        }
+        for (Customer customer : createdCustomers) {
+            if (customer.getInternalId() == null) {
+                customer.setInternalId(UUID.randomUUID().toString());
+            }
+        }
+        Connection connection = connectionPool.acquire();
+        try {
+            connection.setAutoCommit(false);
+            if (!shoppingLists.isEmpty()) {
+                try (PreparedStatement statement = connection.prepareStatement(UPSERT_SHOPPING_LIST)) {
+                    for (ShoppingList shoppingList : shoppingLists) {
+                        statement.setLong(1, shoppingList.getContentHash());
+                        statement.setString(2, String.join(PRODUCT_SEPARATOR, shoppingList.getProducts()));
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+            List<Customer> inserted = new ArrayList<>(createdCustomers);
+            List<Customer> updated = new ArrayList<>();
+            Map<Set<CustomerField>, List<Customer>> updatesByFields = new LinkedHashMap<>();
+            for (Customer customer : updatedCustomers) {
+                Set<CustomerField> fields = EnumSet.noneOf(CustomerField.class);
+                fields.addAll(fieldsOf.apply(customer));
+                updatesByFields.computeIfAbsent(fields, f -> new ArrayList<>()).add(customer);
+            }
+            for (Map.Entry<Set<CustomerField>, List<Customer>> update : updatesByFields.entrySet()) {
+                Set<CustomerField> fields = update.getKey();
+                List<Customer> customers = update.getValue();
+                try (PreparedStatement statement = connection.prepareStatement(updateStatement(fields))) {
+                    for (Customer customer : customers) {
+                        int index = bindFields(statement, customer, fields);
+                        statement.setString(index, customer.getInternalId());
+                        statement.setLong(index + 1, customer.getVersion());
+                        statement.setLong(index + 2, customer.getVersion());
+                        statement.addBatch();
+                    }
+                    int[] updateCounts = statement.executeBatch();
+                    for (int i = 0; i < updateCounts.length; i++) {
+                        Customer customer = customers.get(i);
+                        if (updateCounts[i] > 0) {
+                            updated.add(customer);
+                        } else if (customer.getVersion() == 0) {
+                            inserted.add(customer);
+                        } else {
+                            throw new OptimisticLockException(customer.getInternalId(), customer.getVersion(),
+                                    storedVersion(connection, customer.getInternalId()));
+                        }
+                    }
+                }
+            }
+            if (!inserted.isEmpty()) {
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_CUSTOMER)) {
+                    for (Customer customer : inserted) {
+                        statement.setString(1, customer.getInternalId());
+                        bindColumns(statement, customer, 2);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+            if (!inserted.isEmpty() || !updated.isEmpty()) {
+                try (PreparedStatement statement = connection.prepareStatement(UPSERT_CUSTOMER_SHOPPING_LIST)) {
+                    boolean batched = false;
+                    for (Customer customer : inserted) {
+                        batched |= bindShoppingLists(statement, customer, customer.getShoppingLists());
+                    }
+                    for (Customer customer : updated) {
+                        batched |= bindShoppingLists(statement, customer, customer.getShoppingListsAdded());
+                    }
+                    if (batched) {
+                        statement.executeBatch();
+                    }
+                }
+            }
+            connection.commit();
+            for (Customer customer : inserted) {
+                customer.setVersion(1);
+            }
+            for (Customer customer : updated) {
+                if (customer.getVersion() != 0) {
+                    customer.setVersion(customer.getVersion() + 1);
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("could not write " + createdCustomers.size() + " new customers, "
+                    + updatedCustomers.size() + " updated customers and " + shoppingLists.size() + " shopping lists", e);
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /**
+     * the eleven columns after internal_id, from the parameter at index first
+     */
+    private static void bindColumns(PreparedStatement statement, Customer customer, int first) throws SQLException {
+        statement.setString(first, customer.getExternalId());
+        statement.setString(first + 1, customer.getMasterExternalId());
+        statement.setString(first + 2, customer.getCompanyNumber());
+        statement.setString(first + 3, customer.getCustomerType() == null ? null : customer.getCustomerType().name());
+        statement.setString(first + 4, customer.getName());
+        statement.setString(first + 5, customer.getPreferredStore());
+        if (customer.getBonusPointsBalance() == null) {
+            statement.setNull(first + 6, Types.INTEGER);
+        } else {
+            statement.setInt(first + 6, customer.getBonusPointsBalance());
+        }
+        Address address = customer.getAddress();
+        statement.setString(first + 7, address == null ? null : address.getStreet());
+        statement.setString(first + 8, address == null ? null : address.getCity());
+        statement.setString(first + 9, address == null ? null : address.getPostalCode());
+        statement.setLong(first + 10, customer.getSyncFingerprint());
+    }
+
+    /**
+     * the columns of the fields, then sync_fingerprint, followed by the WHERE clause parameters
+     */
+    private static String updateStatement(Set<CustomerField> fields) {
+        StringBuilder columns = new StringBuilder();
+        for (CustomerField field : fields) {
+            switch (field) {
+                case EXTERNAL_ID: columns.append("external_id = ?, "); break;
+                case MASTER_EXTERNAL_ID: columns.append("master_external_id = ?, "); break;
+                case COMPANY_NUMBER: columns.append("company_number = ?, "); break;
+                case CUSTOMER_TYPE: columns.append("customer_type = ?, "); break;
+                case NAME: columns.append("name = ?, "); break;
+                case PREFERRED_STORE: columns.append("preferred_store = ?, "); break;
+                case BONUS_POINTS_BALANCE: columns.append("bonus_points_balance = ?, "); break;
+                case ADDRESS: columns.append("street = ?, city = ?, postal_code = ?, "); break;
+                default: break; // the shopping lists are rows of their own
+            }
+        }
+        return String.format(UPDATE_CUSTOMER, columns);
+    }
+
+    /**
+     * binds the parameters of updateStatement up to sync_fingerprint, and returns the index of the next one
+     */
+    private static int bindFields(PreparedStatement statement, Customer customer, Set<CustomerField> fields) throws SQLException {
+        int index = 1;
+        for (CustomerField field : fields) {
+            switch (field) {
+                case EXTERNAL_ID: statement.setString(index++, customer.getExternalId()); break;
+                case MASTER_EXTERNAL_ID: statement.setString(index++, customer.getMasterExternalId()); break;
+                case COMPANY_NUMBER: statement.setString(index++, customer.getCompanyNumber()); break;
+                case CUSTOMER_TYPE:
+                    statement.setString(index++, customer.getCustomerType() == null ? null : customer.getCustomerType().name());
+                    break;
+                case NAME: statement.setString(index++, customer.getName()); break;
+                case PREFERRED_STORE: statement.setString(index++, customer.getPreferredStore()); break;
+                case BONUS_POINTS_BALANCE:
+                    if (customer.getBonusPointsBalance() == null) {
+                        statement.setNull(index++, Types.INTEGER);
+                    } else {
+                        statement.setInt(index++, customer.getBonusPointsBalance());
+                    }
+                    break;
+                case ADDRESS:
+                    Address address = customer.getAddress();
+                    statement.setString(index++, address == null ? null : address.getStreet());
+                    statement.setString(index++, address == null ? null : address.getCity());
+                    statement.setString(index++, address == null ? null : address.getPostalCode());
+                    break;
+                default: break;
+            }
+        }
+        statement.setLong(index, customer.getSyncFingerprint());
+        return index + 1;
+    }
+
+    private static long storedVersion(Connection connection, String internalId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_VERSION)) {
+            statement.setString(1, internalId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * the lists only grow, so the lists given are the last ones of the customer, at the positions after the ones kept
+     */
+    private static boolean bindShoppingLists(PreparedStatement statement, Customer customer, List<ShoppingList> shoppingLists)
+            throws SQLException {
+        if (shoppingLists == null || shoppingLists.isEmpty()) {
+            return false;
+        }
+        int first = customer.getShoppingLists().size() - shoppingLists.size();
+        for (int i = 0; i < shoppingLists.size(); i++) {
+            statement.setString(1, customer.getInternalId());
+            statement.setInt(2, first + i);
+            statement.setString(3, String.join(PRODUCT_SEPARATOR, shoppingLists.get(i).getProducts()));
+            statement.addBatch();
+        }
+        return true;
+    }
+
+    /**
+     * the customers holding each key, in chunks of IN_LIST_SIZE keys; a key held by several customers maps to one
+     */
+    private Map<String, Customer> findAll(String column, Collection<String> keys) {
+        Set<String> keySet = new LinkedHashSet<>(keys);
+        keySet.remove(null);
+        List<String> distinctKeys = new ArrayList<>(keySet);
+        Map<String, Customer> found = new HashMap<>();
+        if (distinctKeys.isEmpty()) {
+            return found;
+        }
+        Connection connection = connectionPool.acquire();
+        try {
+            for (int from = 0; from < distinctKeys.size(); from += IN_LIST_SIZE) {
+                List<String> chunk = distinctKeys.subList(from, Math.min(from + IN_LIST_SIZE, distinctKeys.size()));
+                String sql = String.format(SELECT_CUSTOMERS, column + " IN (" + placeholders(chunk.size()) + ")");
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setString(i + 1, chunk.get(i));
+                    }
+                    for (Customer customer : readCustomers(connection, statement)) {
+                        found.putIfAbsent(keyOf(column, customer), customer);
+                    }
+                }
+            }
+            return found;
+        } catch (SQLException e) {
+            throw new DataAccessException("could not load customers by " + column, e);
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    private static String keyOf(String column, Customer customer) {
+        switch (column) {
+            case "external_id":
+                return customer.getExternalId();
+            case "master_external_id":
+                return customer.getMasterExternalId();
+            default:
+                return customer.getCompanyNumber();
+        }
+    }
+
+    /**
+     * the customers the query returns, with their shopping lists, and no changes pending
+     */
+    private static List<Customer> readCustomers(Connection connection, PreparedStatement statement) throws SQLException {
+        Map<String, Customer> customers = new LinkedHashMap<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                Customer customer = new Customer();
+                customer.setInternalId(resultSet.getString(1));
+                customer.setExternalId(resultSet.getString(2));
+                customer.setMasterExternalId(resultSet.getString(3));
+                customer.setCompanyNumber(resultSet.getString(4));
+                String customerType = resultSet.getString(5);
+                customer.setCustomerType(customerType == null ? null : CustomerType.valueOf(customerType));
+                customer.setName(resultSet.getString(6));
+                customer.setPreferredStore(resultSet.getString(7));
+                int bonusPointsBalance = resultSet.getInt(8);
+                customer.setBonusPointsBalance(resultSet.wasNull() ? null : bonusPointsBalance);
+                String street = resultSet.getString(9);
+                String city = resultSet.getString(10);
+                String postalCode = resultSet.getString(11);
+                if (street != null || city != null || postalCode != null) {
+                    customer.setAddress(new Address(street, city, postalCode));
+                }
+                customer.setSyncFingerprint(resultSet.getLong(12));
+                customer.setVersion(resultSet.getLong(13));
+                customers.put(customer.getInternalId(), customer);
+            }
+        }
+        if (!customers.isEmpty()) {
+            loadShoppingLists(connection, customers);
+        }
+        for (Customer customer : customers.values()) {
+            customer.clearChanges();
+        }
+        return new ArrayList<>(customers.values());
+    }
+
+    private static void loadShoppingLists(Connection connection, Map<String, Customer> customers) throws SQLException {
+        List<String> internalIds = new ArrayList<>(customers.keySet());
+        for (int from = 0; from < internalIds.size(); from += IN_LIST_SIZE) {
+            List<String> chunk = internalIds.subList(from, Math.min(from + IN_LIST_SIZE, internalIds.size()));
+            Map<String, List<ShoppingList>> shoppingLists = new HashMap<>();
+            try (PreparedStatement statement = connection.prepareStatement(String.format(SELECT_CUSTOMER_SHOPPING_LISTS, placeholders(chunk.size())))) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        String products = resultSet.getString(2);
+                        shoppingLists.computeIfAbsent(resultSet.getString(1), id -> new ArrayList<>())
+                                .add(new ShoppingList(products.isEmpty() ? new String[0] : products.split(PRODUCT_SEPARATOR, -1)));
+                    }
+                }
+            }
+            shoppingLists.forEach((internalId, lists) -> customers.get(internalId).addShoppingLists(lists));
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
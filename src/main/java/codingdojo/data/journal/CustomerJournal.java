@@ -0,0 +1,233 @@
+package codingdojo.data.journal;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only file of data layer writes. An entry is its payload length, a CRC32C of its type and payload, its type,
+ * then the payload. Replay stops at the first incomplete or corrupt entry, what a crash in the middle of a write
+ * leaves behind, and the file is cut there before new entries are appended.
+ *
+ * Appending only copies the entry into a memory buffer and gives it a sequence number; commit then waits for the
+ * entry to reach the file as the Durability asks. The thread that gets to write takes every entry appended so far,
+ * so writers committing at the same time share a single write and a single fsync: group commit.
+ */
+public class CustomerJournal implements Closeable {
+
+    static final byte CREATE = 1;
+    static final byte UPDATE = 2;
+    static final byte SHOPPING_LIST = 3;
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    interface EntryHandler {
+        void entry(byte type, ByteBuffer payload);
+    }
+
+    private final FileChannel channel;
+    private final Durability durability;
+    private final ScheduledExecutorService timer;
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
+    private final CRC32C checksum = new CRC32C();
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private long appended;
+    private volatile long written;
+    private volatile long durable;
+    private volatile IOException failure;
+
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+
+    private CustomerJournal(FileChannel channel, Durability durability, long syncIntervalMillis) {
+        this.channel = channel;
+        this.durability = durability;
+        if (durability == Durability.INTERVAL) {
+            if (syncIntervalMillis <= 0) {
+                throw new IllegalArgumentException("syncIntervalMillis must be positive");
+            }
+            this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "customer-journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.scheduleWithFixedDelay(this::syncAll, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.timer = null;
+        }
+    }
+
+    /**
+     * Hand every valid entry of the file, if it exists, to the replay handler, then open it for appending
+     */
+    static CustomerJournal open(Path file, Durability durability, long syncIntervalMillis, EntryHandler replay) throws IOException {
+        long validLength = Files.exists(file) ? replay(file, replay) : 0;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(validLength);
+            channel.position(validLength);
+            return new CustomerJournal(channel, durability, syncIntervalMillis);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * the sequence number of the entry, to give to commit
+     */
+    long append(byte type, byte[] payload, int length) {
+        synchronized (appendLock) {
+            if (pending.remaining() < 9 + length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + 9 + length));
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            checksum.reset();
+            checksum.update(type);
+            checksum.update(payload, 0, length);
+            pending.putInt(length);
+            pending.putInt((int) checksum.getValue());
+            pending.put(type);
+            pending.put(payload, 0, length);
+            entries.increment();
+            return ++appended;
+        }
+    }
+
+    /**
+     * Wait until the entry, and every one before it, is as durable as the journal was configured for
+     */
+    void commit(long sequence) {
+        if (durability == Durability.EVERY_WRITE) {
+            sync(sequence, true);
+        } else if (durability == Durability.OS_MANAGED) {
+            sync(sequence, false);
+        }
+    }
+
+    public long getEntriesAppended() {
+        return entries.sum();
+    }
+
+    /**
+     * fsyncs done, lower than the entries appended when writers shared them
+     */
+    public long getSyncs() {
+        return syncs.sum();
+    }
+
+    /**
+     * Force every appended entry to disk, and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (timer != null) {
+            timer.shutdown();
+        }
+        syncAll();
+        channel.close();
+    }
+
+    private void syncAll() {
+        long upTo;
+        synchronized (appendLock) {
+            upTo = appended;
+        }
+        sync(upTo, true);
+    }
+
+    private void sync(long sequence, boolean force) {
+        if ((force ? durable : written) >= sequence) {
+            return;
+        }
+        synchronized (syncLock) {
+            if ((force ? durable : written) >= sequence) {
+                return;
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("journal failed, later entries are not written", failure);
+            }
+            ByteBuffer batch;
+            long upTo;
+            synchronized (appendLock) {
+                batch = pending;
+                upTo = appended;
+                pending = spare;
+            }
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                written = upTo;
+                if (force) {
+                    channel.force(false);
+                    durable = upTo;
+                    syncs.increment();
+                }
+            } catch (IOException e) {
+                failure = e;
+                throw new UncheckedIOException(e);
+            } finally {
+                batch.clear();
+                spare = batch;
+            }
+        }
+    }
+
+    /**
+     * the length of the valid entries at the start of the file
+     */
+    private static long replay(Path file, EntryHandler handler) throws IOException {
+        long validLength = 0;
+        long fileLength = Files.size(file);
+        CRC32C checksum = new CRC32C();
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, INITIAL_BUFFER_SIZE))) {
+            while (true) {
+                byte[] payload;
+                byte type;
+                int expected;
+                try {
+                    int length = in.readInt();
+                    expected = in.readInt();
+                    type = in.readByte();
+                    if (length < 0 || length > fileLength - validLength) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                checksum.reset();
+                checksum.update(type);
+                checksum.update(payload);
+                if ((int) checksum.getValue() != expected) {
+                    break;
+                }
+                handler.entry(type, ByteBuffer.wrap(payload));
+                validLength += 9 + payload.length;
+            }
+        }
+        return validLength;
+    }
+}
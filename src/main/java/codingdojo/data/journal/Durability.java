@@ -0,0 +1,19 @@
+package codingdojo.data.journal;
+
+/**
+ * When a journaled write reaches the disk
+ */
+public enum Durability {
+    /**
+     * a write returns once it is forced to disk; writers waiting at the same time share one fsync
+     */
+    EVERY_WRITE,
+    /**
+     * a write returns once it is appended, the journal is forced to disk every sync interval
+     */
+    INTERVAL,
+    /**
+     * a write returns once it is handed to the OS, which decides when it reaches the disk
+     */
+    OS_MANAGED
+}
@@ -0,0 +1,227 @@
+package codingdojo.data.journal;
+
+import codingdojo.data.CustomerDataLayer;
+import codingdojo.data.offheap.CustomerCodec;
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.CompanyCandidates;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Makes an in-memory data layer durable: every write is applied to the delegate and appended to a CustomerJournal,
+ * and returns once the journal holds it as durably as asked. Opening the layer replays the journal into the delegate,
+ * which rebuilds its records and indexes as they were after the last durable write.
+ *
+ * Writes are applied and appended in one order, so the journal replays them in the order the delegate saw them;
+ * waiting for the disk happens outside that lock, shared between writers. A write is visible to readers of the
+ * delegate before it is durable. A flush is journaled as a whole and committed once.
+ *
+ * Compare-and-set is the delegate's: a stale update it rejects is not journaled. The journal holds each record with
+ * the version it was written at, and replays updates unconditionally, the delegate then bumping its versions as it
+ * did the first time.
+ */
+public class JournaledCustomerDataLayer implements CustomerDataLayer, Closeable {
+
+    private final CustomerDataLayer delegate;
+    private final CustomerJournal journal;
+    private final CustomerCodec codec = new CustomerCodec();
+    private final Object writeLock = new Object();
+
+    private JournaledCustomerDataLayer(CustomerDataLayer delegate, CustomerJournal journal) {
+        this.delegate = delegate;
+        this.journal = journal;
+    }
+
+    /**
+     * Replay the journal file into the delegate, an empty data layer, then journal the writes to that file
+     *
+     * @param syncIntervalMillis only used with Durability.INTERVAL
+     */
+    public static JournaledCustomerDataLayer open(Path file, CustomerDataLayer delegate, Durability durability,
+                                                  long syncIntervalMillis) throws IOException {
+        CustomerJournal journal = CustomerJournal.open(file, durability, syncIntervalMillis, (type, payload) -> replay(delegate, type, payload));
+        return new JournaledCustomerDataLayer(delegate, journal);
+    }
+
+    @Override
+    public Customer createCustomerRecord(Customer customer) {
+        long sequence;
+        Customer created;
+        synchronized (writeLock) {
+            created = create(customer);
+            sequence = append(CustomerJournal.CREATE, created);
+        }
+        journal.commit(sequence);
+        return created;
+    }
+
+    @Override
+    public Customer updateCustomerRecord(Customer customer) {
+        long sequence;
+        Customer updated;
+        synchronized (writeLock) {
+            updated = delegate.updateCustomerRecord(customer);
+            sequence = append(CustomerJournal.UPDATE, customer);
+        }
+        journal.commit(sequence);
+        return updated;
+    }
+
+    /**
+     * the delegate gets the delta, the journal the whole record, as for updateCustomerRecord
+     */
+    @Override
+    public Customer updateCustomerFields(Customer customer, Set<CustomerField> changedFields) {
+        long sequence;
+        Customer updated;
+        synchronized (writeLock) {
+            updated = delegate.updateCustomerFields(customer, changedFields);
+            sequence = append(CustomerJournal.UPDATE, customer);
+        }
+        journal.commit(sequence);
+        return updated;
+    }
+
+    @Override
+    public void updateShoppingList(ShoppingList consumerShoppingList) {
+        long sequence;
+        synchronized (writeLock) {
+            delegate.updateShoppingList(consumerShoppingList);
+            sequence = append(consumerShoppingList);
+        }
+        journal.commit(sequence);
+    }
+
+    /**
+     * When the delegate rejects a stale update, the writes it already applied are still committed before the
+     * OptimisticLockException is passed on
+     */
+    @Override
+    public void flush(List<Customer> createdCustomers, List<Customer> updatedCustomers, List<ShoppingList> shoppingLists) {
+        long sequence = 0;
+        try {
+            synchronized (writeLock) {
+                for (ShoppingList shoppingList : shoppingLists) {
+                    delegate.updateShoppingList(shoppingList);
+                    sequence = append(shoppingList);
+                }
+                for (Customer customer : createdCustomers) {
+                    sequence = append(CustomerJournal.CREATE, create(customer));
+                }
+                for (Customer customer : updatedCustomers) {
+                    delegate.updateCustomerFields(customer, customer.getChangedFields());
+                    sequence = append(CustomerJournal.UPDATE, customer);
+                }
+            }
+        } finally {
+            if (sequence > 0) {
+                journal.commit(sequence);
+            }
+        }
+    }
+
+    @Override
+    public boolean containsShoppingList(long contentHash) {
+        return delegate.containsShoppingList(contentHash);
+    }
+
+    @Override
+    public Set<Long> containsShoppingLists(Collection<Long> contentHashes) {
+        return delegate.containsShoppingLists(contentHashes);
+    }
+
+    @Override
+    public Customer findByExternalId(String externalId) {
+        return delegate.findByExternalId(externalId);
+    }
+
+    @Override
+    public Customer findByMasterExternalId(String externalId) {
+        return delegate.findByMasterExternalId(externalId);
+    }
+
+    @Override
+    public Customer findByCompanyNumber(String companyNumber) {
+        return delegate.findByCompanyNumber(companyNumber);
+    }
+
+    @Override
+    public Map<String, Customer> findByExternalIds(Collection<String> externalIds) {
+        return delegate.findByExternalIds(externalIds);
+    }
+
+    @Override
+    public Map<String, Customer> findByMasterExternalIds(Collection<String> externalIds) {
+        return delegate.findByMasterExternalIds(externalIds);
+    }
+
+    @Override
+    public Map<String, Customer> findByCompanyNumbers(Collection<String> companyNumbers) {
+        return delegate.findByCompanyNumbers(companyNumbers);
+    }
+
+    @Override
+    public CompanyCandidates findCompanyCandidates(String externalId, String companyNumber) {
+        return delegate.findCompanyCandidates(externalId, companyNumber);
+    }
+
+    public CustomerJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    /**
+     * the customer as created, with the internalId the delegate gave it
+     */
+    private Customer create(Customer customer) {
+        Customer created = delegate.createCustomerRecord(customer);
+        if (created != null && created != customer) {
+            customer.setInternalId(created.getInternalId());
+        }
+        return created == null ? customer : created;
+    }
+
+    /**
+     * called holding the write lock, which also guards the codec
+     */
+    private long append(byte type, Customer customer) {
+        int length = codec.encode(customer);
+        return journal.append(type, codec.bytes(), length);
+    }
+
+    private long append(ShoppingList shoppingList) {
+        int length = codec.encode(shoppingList);
+        return journal.append(CustomerJournal.SHOPPING_LIST, codec.bytes(), length);
+    }
+
+    private static void replay(CustomerDataLayer delegate, byte type, ByteBuffer payload) {
+        switch (type) {
+            case CustomerJournal.CREATE:
+                delegate.createCustomerRecord(CustomerCodec.decode(payload, 0));
+                break;
+            case CustomerJournal.UPDATE:
+                Customer customer = CustomerCodec.decode(payload, 0);
+                customer.setVersion(0);
+                delegate.updateCustomerRecord(customer);
+                break;
+            case CustomerJournal.SHOPPING_LIST:
+                delegate.updateShoppingList(CustomerCodec.decodeShoppingList(payload, 0));
+                break;
+            default:
+                throw new IllegalStateException("unknown journal entry type " + type);
+        }
+    }
+}
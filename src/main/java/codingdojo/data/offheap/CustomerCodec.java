@@ -0,0 +1,278 @@
+package codingdojo.data.offheap;
+
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.internal.Address;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serialized form of a Customer, as stored off-heap and in the journal. The four key fields come first, so a key
+ * can be compared in place without decoding the record:
+ *
+ * string internalId, externalId, masterExternalId, companyNumber, name, preferredStore
+ * byte customerType (ordinal, -1 when null)
+ * byte flags (1 bonus points present, 2 address present)
+ * int bonusPointsBalance
+ * long syncFingerprint
+ * long version
+ * [string street, city, postalCode] when the address is present
+ * int list count, then per list: int product count, strings
+ *
+ * A string is an int byte length, -1 for null, followed by its UTF-8 bytes. Integers are big endian.
+ * An encoder is reused from one record to the next, and is not thread safe; decoding is.
+ * A shopping list on its own is encoded as its product count and products, as within a customer.
+ */
+public final class CustomerCodec {
+
+    static final int INTERNAL_ID = 0;
+    static final int EXTERNAL_ID = 1;
+    static final int MASTER_EXTERNAL_ID = 2;
+    static final int COMPANY_NUMBER = 3;
+    private static final int STRING_FIELDS = 6;
+
+    private static final byte HAS_BONUS_POINTS = 1;
+    private static final byte HAS_ADDRESS = 2;
+    private static final int NULL_STRING = -1;
+
+    private byte[] buffer = new byte[256];
+    private int length;
+
+    /**
+     * encode the customer into the reused buffer, and return its length
+     */
+    public int encode(Customer customer) {
+        length = 0;
+        writeString(customer.getInternalId());
+        writeString(customer.getExternalId());
+        writeString(customer.getMasterExternalId());
+        writeString(customer.getCompanyNumber());
+        writeString(customer.getName());
+        writeString(customer.getPreferredStore());
+        writeByte(customer.getCustomerType() == null ? -1 : customer.getCustomerType().ordinal());
+        Address address = customer.getAddress();
+        int flags = (customer.getBonusPointsBalance() != null ? HAS_BONUS_POINTS : 0) | (address != null ? HAS_ADDRESS : 0);
+        writeByte(flags);
+        writeInt(customer.getBonusPointsBalance() == null ? 0 : customer.getBonusPointsBalance());
+        writeInt((int) (customer.getSyncFingerprint() >>> 32));
+        writeInt((int) customer.getSyncFingerprint());
+        writeInt((int) (customer.getVersion() >>> 32));
+        writeInt((int) customer.getVersion());
+        if (address != null) {
+            writeString(address.getStreet());
+            writeString(address.getCity());
+            writeString(address.getPostalCode());
+        }
+        List<ShoppingList> shoppingLists = customer.getShoppingLists();
+        writeInt(shoppingLists == null ? 0 : shoppingLists.size());
+        if (shoppingLists != null) {
+            for (ShoppingList shoppingList : shoppingLists) {
+                writeShoppingList(shoppingList);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * encode the list into the reused buffer, and return its length
+     */
+    public int encode(ShoppingList shoppingList) {
+        length = 0;
+        writeShoppingList(shoppingList);
+        return length;
+    }
+
+    /**
+     * the bytes of the last encoded record, valid up to the length encode returned
+     */
+    public byte[] bytes() {
+        return buffer;
+    }
+
+    /**
+     * A new Customer read from the record at offset, with no changes pending
+     */
+    public static Customer decode(ByteBuffer buffer, int offset) {
+        Cursor cursor = new Cursor(buffer, offset);
+        Customer customer = new Customer();
+        customer.setInternalId(cursor.string());
+        customer.setExternalId(cursor.string());
+        customer.setMasterExternalId(cursor.string());
+        customer.setCompanyNumber(cursor.string());
+        customer.setName(cursor.string());
+        customer.setPreferredStore(cursor.string());
+        int customerType = cursor.readByte();
+        customer.setCustomerType(customerType < 0 ? null : CustomerType.values()[customerType]);
+        int flags = cursor.readByte();
+        int bonusPointsBalance = cursor.readInt();
+        if ((flags & HAS_BONUS_POINTS) != 0) {
+            customer.setBonusPointsBalance(bonusPointsBalance);
+        }
+        customer.setSyncFingerprint(cursor.readLong());
+        customer.setVersion(cursor.readLong());
+        if ((flags & HAS_ADDRESS) != 0) {
+            customer.setAddress(new Address(cursor.string(), cursor.string(), cursor.string()));
+        }
+        int listCount = cursor.readInt();
+        if (listCount > 0) {
+            List<ShoppingList> shoppingLists = new ArrayList<>(listCount);
+            for (int i = 0; i < listCount; i++) {
+                shoppingLists.add(cursor.shoppingList());
+            }
+            customer.addShoppingLists(shoppingLists);
+        }
+        customer.clearChanges();
+        return customer;
+    }
+
+    public static ShoppingList decodeShoppingList(ByteBuffer buffer, int offset) {
+        return new Cursor(buffer, offset).shoppingList();
+    }
+
+    /**
+     * the UTF-8 bytes of one of the key fields of the record at offset, null when the field is null
+     */
+    static byte[] readKey(ByteBuffer buffer, int offset, int field) {
+        int position = keyPosition(buffer, offset, field);
+        int keyLength = buffer.getInt(position);
+        if (keyLength == NULL_STRING) {
+            return null;
+        }
+        byte[] key = new byte[keyLength];
+        for (int i = 0; i < keyLength; i++) {
+            key[i] = buffer.get(position + 4 + i);
+        }
+        return key;
+    }
+
+    /**
+     * whether one of the key fields of the record at offset holds these UTF-8 bytes, compared in place
+     */
+    static boolean keyEquals(ByteBuffer buffer, int offset, int field, byte[] key) {
+        int position = keyPosition(buffer, offset, field);
+        if (buffer.getInt(position) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(position + 4 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * the version of the record at offset, read in place
+     */
+    static long readVersion(ByteBuffer buffer, int offset) {
+        return buffer.getLong(keyPosition(buffer, offset, STRING_FIELDS) + 14);
+    }
+
+    static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * where one of the key fields of the record at offset starts: its int length, then its bytes
+     */
+    static int keyPosition(ByteBuffer buffer, int offset, int field) {
+        int position = offset;
+        for (int i = 0; i < field; i++) {
+            int skipped = buffer.getInt(position);
+            position += 4 + Math.max(skipped, 0);
+        }
+        return position;
+    }
+
+    private void writeShoppingList(ShoppingList shoppingList) {
+        List<String> products = shoppingList.getProducts();
+        writeInt(products.size());
+        for (String product : products) {
+            writeString(product);
+        }
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            writeInt(NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        buffer[length++] = (byte) (value >>> 24);
+        buffer[length++] = (byte) (value >>> 16);
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+
+    private static class Cursor {
+        private final ByteBuffer buffer;
+        private int position;
+
+        Cursor(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int readInt() {
+            int value = buffer.getInt(position);
+            position += 4;
+            return value;
+        }
+
+        long readLong() {
+            long value = buffer.getLong(position);
+            position += 8;
+            return value;
+        }
+
+        int readByte() {
+            return buffer.get(position++);
+        }
+
+        String string() {
+            int stringLength = readInt();
+            if (stringLength == NULL_STRING) {
+                return null;
+            }
+            byte[] bytes = new byte[stringLength];
+            for (int i = 0; i < stringLength; i++) {
+                bytes[i] = buffer.get(position + i);
+            }
+            position += stringLength;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        ShoppingList shoppingList() {
+            String[] products = new String[readInt()];
+            for (int i = 0; i < products.length; i++) {
+                products[i] = string();
+            }
+            return new ShoppingList(products);
+        }
+    }
+}
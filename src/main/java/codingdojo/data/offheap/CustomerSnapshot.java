@@ -0,0 +1,156 @@
+package codingdojo.data.offheap;
+
+import codingdojo.entities.internal.Customer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+/**
+ * Read-only, memory-mapped image of a set of customers, as written by CustomerSnapshotWriter. Opening it reads only
+ * the header: lookups go straight to the mapped index and record pages, which the OS loads the first time they are
+ * touched, and only the record found is decoded.
+ *
+ * Layout: a 64 byte header, the records, then one hash table per key field.
+ * Header: int magic, int version, long record count, long records length, long table capacity, then the start of
+ * the internalId, externalId, masterExternalId and companyNumber tables.
+ * Records: int length then the CustomerCodec bytes; a record never crosses a 1GB segment, a length of 0, or less
+ * than 4 bytes left, moves on to the next segment.
+ * Tables: open addressing with linear probing, 16 byte slots holding the key hash, 0 when empty, and the position of
+ * the record within the records.
+ */
+public final class CustomerSnapshot implements Closeable {
+
+    static final int MAGIC = 0x43534e31;
+    static final int VERSION = 3;
+    static final int HEADER_LENGTH = 64;
+    static final int SLOT = 16;
+    static final int[] KEY_FIELDS = {
+            CustomerCodec.INTERNAL_ID, CustomerCodec.EXTERNAL_ID, CustomerCodec.MASTER_EXTERNAL_ID, CustomerCodec.COMPANY_NUMBER
+    };
+
+    private final FileChannel channel;
+    private final long recordCount;
+    private final long recordsLength;
+    private final long tableCapacity;
+    private final MappedRegion records;
+    private final MappedRegion[] tables = new MappedRegion[KEY_FIELDS.length];
+
+    private CustomerSnapshot(FileChannel channel, Path file) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                break;
+            }
+        }
+        header.flip();
+        if (header.limit() < HEADER_LENGTH || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException(file + " is not a customer snapshot");
+        }
+        this.recordCount = header.getLong();
+        this.recordsLength = header.getLong();
+        this.tableCapacity = header.getLong();
+        this.records = MappedRegion.map(channel, HEADER_LENGTH, recordsLength, FileChannel.MapMode.READ_ONLY);
+        for (int field : KEY_FIELDS) {
+            tables[field] = MappedRegion.map(channel, header.getLong(), tableCapacity * SLOT, FileChannel.MapMode.READ_ONLY);
+        }
+    }
+
+    public static CustomerSnapshot open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new CustomerSnapshot(channel, file);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Customer findByInternalId(String internalId) {
+        return find(CustomerCodec.INTERNAL_ID, CustomerCodec.utf8(internalId));
+    }
+
+    public Customer findByExternalId(String externalId) {
+        return find(CustomerCodec.EXTERNAL_ID, CustomerCodec.utf8(externalId));
+    }
+
+    public Customer findByMasterExternalId(String masterExternalId) {
+        return find(CustomerCodec.MASTER_EXTERNAL_ID, CustomerCodec.utf8(masterExternalId));
+    }
+
+    public Customer findByCompanyNumber(String companyNumber) {
+        return find(CustomerCodec.COMPANY_NUMBER, CustomerCodec.utf8(companyNumber));
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * The mapped pages stay readable until they are collected, closing only releases the file
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    Customer find(int field, byte[] key) {
+        long position = position(field, key);
+        if (position == -1) {
+            return null;
+        }
+        return CustomerCodec.decode(records.segment(position), MappedRegion.offset(position) + 4);
+    }
+
+    boolean contains(int field, byte[] key) {
+        return position(field, key) != -1;
+    }
+
+    void forEachRecord(RecordVisitor visitor) {
+        scan(records, recordsLength, position -> visitor.visit(records.segment(position),
+                MappedRegion.offset(position) + 4, records.getInt(position)));
+    }
+
+    /**
+     * hand the position of each record, its length, to the consumer
+     */
+    static void scan(MappedRegion records, long recordsLength, LongConsumer consumer) {
+        long position = 0;
+        while (position < recordsLength) {
+            long segmentEnd = ((position >>> MappedRegion.SEGMENT_BITS) + 1) << MappedRegion.SEGMENT_BITS;
+            int length = segmentEnd - position < 4 ? 0 : records.getInt(position);
+            if (length == 0) {
+                position = segmentEnd;
+                continue;
+            }
+            consumer.accept(position);
+            position += 4 + length;
+        }
+    }
+
+    private long position(int field, byte[] key) {
+        if (key == null) {
+            return -1;
+        }
+        long hash = OffHeapHashIndex.hash(key);
+        long mask = tableCapacity - 1;
+        MappedRegion table = tables[field];
+        for (long slot = OffHeapHashIndex.spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            long slotHash = table.getLong(slot * SLOT);
+            if (slotHash == 0) {
+                return -1;
+            }
+            if (slotHash == hash) {
+                long position = table.getLong(slot * SLOT + 8);
+                if (CustomerCodec.keyEquals(records.segment(position), MappedRegion.offset(position) + 4, field, key)) {
+                    return position;
+                }
+            }
+        }
+    }
+}
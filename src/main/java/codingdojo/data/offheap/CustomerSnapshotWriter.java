@@ -0,0 +1,196 @@
+package codingdojo.data.offheap;
+
+import codingdojo.entities.internal.Customer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Writes a CustomerSnapshot. The records are appended to a temporary file next to the target; finish then builds the
+ * hash tables in place, in mapped pages of the same file, so neither the records nor the tables go through the heap,
+ * forces the file to disk and renames it over the target. Readers of the previous snapshot keep their mapping.
+ * A customer added twice is found as the last one added.
+ */
+public final class CustomerSnapshotWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long HEADER_POSITION = CustomerSnapshot.HEADER_LENGTH;
+
+    private final Path target;
+    private final Path temporary;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CustomerCodec codec = new CustomerCodec();
+    private long recordsLength;
+    private long flushedLength;
+    private long recordCount;
+    private boolean finished;
+
+    private CustomerSnapshotWriter(Path target) throws IOException {
+        this.target = target;
+        this.temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    public static CustomerSnapshotWriter create(Path target) throws IOException {
+        return new CustomerSnapshotWriter(target);
+    }
+
+    /**
+     * Write a snapshot of all the customers, and return how many were written
+     */
+    public static long write(Path target, Iterator<Customer> customers) throws IOException {
+        try (CustomerSnapshotWriter writer = create(target)) {
+            while (customers.hasNext()) {
+                writer.add(customers.next());
+            }
+            writer.finish();
+            return writer.recordCount;
+        }
+    }
+
+    public void add(Customer customer) throws IOException {
+        int length = codec.encode(customer);
+        addRecord(ByteBuffer.wrap(codec.bytes()), 0, length);
+    }
+
+    /**
+     * add a record already encoded with CustomerCodec
+     */
+    void addRecord(ByteBuffer record, int offset, int length) throws IOException {
+        long total = 4L + length;
+        if (total > MappedRegion.SEGMENT_SIZE) {
+            throw new IllegalArgumentException("record of " + length + " bytes is too large for a snapshot");
+        }
+        long segmentEnd = ((recordsLength >>> MappedRegion.SEGMENT_BITS) + 1) << MappedRegion.SEGMENT_BITS;
+        if (recordsLength + total > segmentEnd) {
+            flush();
+            recordsLength = segmentEnd;
+            flushedLength = segmentEnd;
+        }
+        if (buffer.remaining() < total) {
+            flush();
+        }
+        ByteBuffer source = record.duplicate();
+        source.limit(offset + length).position(offset);
+        if (buffer.remaining() < total) {
+            ByteBuffer lengthBytes = ByteBuffer.allocate(4).putInt(0, length);
+            writeFully(lengthBytes, HEADER_POSITION + recordsLength);
+            writeFully(source, HEADER_POSITION + recordsLength + 4);
+            flushedLength += total;
+        } else {
+            buffer.putInt(length);
+            buffer.put(source);
+        }
+        recordsLength += total;
+        recordCount++;
+    }
+
+    /**
+     * Index the records, and put the snapshot in place of the target
+     */
+    public void finish() throws IOException {
+        flush();
+        long tableCapacity = tableCapacity(recordCount);
+        long tableLength = tableCapacity * CustomerSnapshot.SLOT;
+        long tablesStart = (HEADER_POSITION + recordsLength + 15) & ~15L;
+        MappedRegion records = MappedRegion.map(channel, HEADER_POSITION, recordsLength, FileChannel.MapMode.READ_ONLY);
+        MappedRegion[] tables = new MappedRegion[CustomerSnapshot.KEY_FIELDS.length];
+        ByteBuffer header = ByteBuffer.allocate(CustomerSnapshot.HEADER_LENGTH);
+        header.putInt(CustomerSnapshot.MAGIC).putInt(CustomerSnapshot.VERSION)
+                .putLong(recordCount).putLong(recordsLength).putLong(tableCapacity);
+        for (int field : CustomerSnapshot.KEY_FIELDS) {
+            long tableStart = tablesStart + field * tableLength;
+            tables[field] = MappedRegion.map(channel, tableStart, tableLength, FileChannel.MapMode.READ_WRITE);
+            header.putLong(tableStart);
+        }
+        CustomerSnapshot.scan(records, recordsLength, position -> {
+            for (int field : CustomerSnapshot.KEY_FIELDS) {
+                index(tables[field], tableCapacity, records, position, field);
+            }
+        });
+        for (MappedRegion table : tables) {
+            table.force();
+        }
+        header.flip();
+        writeFully(header, 0);
+        channel.force(true);
+        channel.close();
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * An unfinished snapshot is dropped
+     */
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            channel.close();
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * a power of two, at most half full
+     */
+    private static long tableCapacity(long recordCount) {
+        long capacity = 16;
+        while (capacity < recordCount * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static void index(MappedRegion table, long capacity, MappedRegion records, long position, int field) {
+        ByteBuffer segment = records.segment(position);
+        int recordOffset = MappedRegion.offset(position) + 4;
+        int keyPosition = CustomerCodec.keyPosition(segment, recordOffset, field);
+        int keyLength = segment.getInt(keyPosition);
+        if (keyLength < 0) {
+            return;
+        }
+        long hash = OffHeapHashIndex.hash(segment, keyPosition + 4, keyLength);
+        long mask = capacity - 1;
+        for (long slot = OffHeapHashIndex.spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            long slotHash = table.getLong(slot * CustomerSnapshot.SLOT);
+            if (slotHash == 0 || (slotHash == hash && sameKey(records, table.getLong(slot * CustomerSnapshot.SLOT + 8), segment, recordOffset, field))) {
+                table.putLong(slot * CustomerSnapshot.SLOT, hash);
+                table.putLong(slot * CustomerSnapshot.SLOT + 8, position);
+                return;
+            }
+        }
+    }
+
+    private static boolean sameKey(MappedRegion records, long otherPosition, ByteBuffer segment, int recordOffset, int field) {
+        byte[] key = CustomerCodec.readKey(segment, recordOffset, field);
+        ByteBuffer other = records.segment(otherPosition);
+        return Arrays.equals(key, CustomerCodec.readKey(other, MappedRegion.offset(otherPosition) + 4, field));
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer, HEADER_POSITION + flushedLength);
+        flushedLength += buffer.limit();
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package codingdojo.data.offheap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A part of a file, memory-mapped in segments of 1GB, since a single mapping cannot go beyond 2GB. Positions are
+ * relative to the start of the region; whatever is read with a single call must not cross a segment boundary.
+ * Pages are only read from disk when first touched.
+ */
+final class MappedRegion {
+
+    static final int SEGMENT_BITS = 30;
+    static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+    private final MappedByteBuffer[] segments;
+
+    private MappedRegion(MappedByteBuffer[] segments) {
+        this.segments = segments;
+    }
+
+    static MappedRegion map(FileChannel channel, long start, long length, FileChannel.MapMode mode) throws IOException {
+        MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+        for (int i = 0; i < segments.length; i++) {
+            long from = (long) i << SEGMENT_BITS;
+            segments[i] = channel.map(mode, start + from, Math.min(SEGMENT_SIZE, length - from));
+        }
+        return new MappedRegion(segments);
+    }
+
+    ByteBuffer segment(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)];
+    }
+
+    static int offset(long position) {
+        return (int) (position & (SEGMENT_SIZE - 1));
+    }
+
+    int getInt(long position) {
+        return segment(position).getInt(offset(position));
+    }
+
+    long getLong(long position) {
+        return segment(position).getLong(offset(position));
+    }
+
+    void putLong(long position, long value) {
+        segment(position).putLong(offset(position), value);
+    }
+
+    /**
+     * write the changes of a READ_WRITE region to disk
+     */
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+}
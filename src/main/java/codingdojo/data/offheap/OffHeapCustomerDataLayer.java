@@ -0,0 +1,371 @@
+package codingdojo.data.offheap;
+
+import codingdojo.data.CustomerDataLayer;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.exceptions.OptimisticLockException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Data layer keeping every customer serialized in direct memory, so the heap, and the work of the garbage collector,
+ * stay the same however many customers are stored. The records live in slabs, see SlabAllocator, the internalId,
+ * externalId, masterExternalId and companyNumber indexes are open addressing tables, also off-heap, and so is the
+ * table from record id to block. Only the current encoding buffer and a few bookkeeping arrays stay on the heap.
+ *
+ * Lookups decode a new Customer on each call: changing it changes nothing until it is written back with
+ * updateCustomerRecord. An update rewrites the record in its block when it still fits, otherwise it moves to a block
+ * of the right size class, and a size class is compacted once it is mostly free.
+ * A key held by two records finds the last one written, and the other one again once the last one drops the key.
+ * Reads run in parallel, writes one at a time.
+ *
+ * Creating a customer whose internalId is already stored fails, rather than overwrite that record.
+ * Each record keeps its version, 1 once created and bumped by every update. An update of a customer loaded at another
+ * version than the stored one throws an OptimisticLockException, checked under the write lock; a customer with
+ * version 0 is written whatever the stored version.
+ */
+public class OffHeapCustomerDataLayer implements CustomerDataLayer {
+
+    public static final int DEFAULT_SLAB_SIZE = 4 << 20;
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+    private static final int[] KEY_FIELDS = {
+            CustomerCodec.INTERNAL_ID, CustomerCodec.EXTERNAL_ID, CustomerCodec.MASTER_EXTERNAL_ID, CustomerCodec.COMPANY_NUMBER
+    };
+
+    private final SlabAllocator allocator;
+    private final HandleTable handles = new HandleTable();
+    private final OffHeapHashIndex[] indexes = new OffHeapHashIndex[KEY_FIELDS.length];
+    private final OffHeapHashIndex shoppingLists = new OffHeapHashIndex(INITIAL_INDEX_CAPACITY);
+    private final CustomerCodec codec = new CustomerCodec();
+    private final Lock readLock;
+    private final Lock writeLock;
+    private int recordCount;
+    private long nextInternalId = 1;
+
+    public OffHeapCustomerDataLayer() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param slabSize bytes per slab, a power of two; larger records get a slab of their own
+     */
+    public OffHeapCustomerDataLayer(int slabSize) {
+        this.allocator = new SlabAllocator(slabSize);
+        for (int field : KEY_FIELDS) {
+            indexes[field] = new OffHeapHashIndex(INITIAL_INDEX_CAPACITY);
+        }
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+    }
+
+    /**
+     * Store a new record. A customer without internalId gets one that no stored customer has, one with the internalId
+     * of a stored customer is rejected rather than stored twice.
+     */
+    @Override
+    public Customer createCustomerRecord(Customer customer) {
+        writeLock.lock();
+        try {
+            if (customer.getInternalId() == null) {
+                customer.setInternalId(newInternalId());
+            } else if (find(CustomerCodec.INTERNAL_ID, CustomerCodec.utf8(customer.getInternalId())) != -1) {
+                throw new IllegalArgumentException("a customer is already stored with internalId " + customer.getInternalId());
+            }
+            customer.setVersion(1);
+            return insert(customer);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Store a customer held by an older layer, at storedVersion there, as an update of that record would
+     */
+    Customer copyIn(Customer customer, long storedVersion) {
+        writeLock.lock();
+        try {
+            checkVersion(customer, storedVersion);
+            customer.setVersion(storedVersion + 1);
+            return insert(customer);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * called holding the write lock
+     */
+    private Customer insert(Customer customer) {
+        int length = codec.encode(customer);
+        int recordId = recordCount++;
+        long handle = allocator.allocate(recordId, length);
+        write(handle, length);
+        handles.set(recordId, handle);
+        for (int field : KEY_FIELDS) {
+            index(field, CustomerCodec.readKey(payload(handle), payloadOffset(handle), field), recordId);
+        }
+        return customer;
+    }
+
+    @Override
+    public Customer updateCustomerRecord(Customer customer) {
+        writeLock.lock();
+        try {
+            int recordId = find(CustomerCodec.INTERNAL_ID, CustomerCodec.utf8(customer.getInternalId()));
+            if (recordId == -1) {
+                throw new IllegalArgumentException("no customer stored with internalId " + customer.getInternalId());
+            }
+            long handle = handles.get(recordId);
+            long storedVersion = CustomerCodec.readVersion(payload(handle), payloadOffset(handle));
+            checkVersion(customer, storedVersion);
+            customer.setVersion(storedVersion + 1);
+            byte[][] oldKeys = new byte[KEY_FIELDS.length][];
+            for (int field : KEY_FIELDS) {
+                oldKeys[field] = CustomerCodec.readKey(payload(handle), payloadOffset(handle), field);
+            }
+            int length = codec.encode(customer);
+            if (length <= allocator.capacity(handle)) {
+                allocator.setLength(handle, length);
+                write(handle, length);
+            } else {
+                long moved = allocator.allocate(recordId, length);
+                write(moved, length);
+                handles.set(recordId, moved);
+                int sizeClass = allocator.free(handle);
+                allocator.compactIfFragmented(sizeClass, handles::set);
+                handle = handles.get(recordId);
+            }
+            for (int field : KEY_FIELDS) {
+                byte[] newKey = CustomerCodec.readKey(payload(handle), payloadOffset(handle), field);
+                if (!Arrays.equals(oldKeys[field], newKey)) {
+                    if (oldKeys[field] != null) {
+                        indexes[field].remove(OffHeapHashIndex.hash(oldKeys[field]), recordId);
+                    }
+                    index(field, newKey, recordId);
+                }
+            }
+            return customer;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * The lists are stored with the customers holding them, only their content hash is kept here
+     */
+    @Override
+    public void updateShoppingList(ShoppingList consumerShoppingList) {
+        writeLock.lock();
+        try {
+            shoppingLists.put(OffHeapHashIndex.hash(consumerShoppingList.getContentHash()), 0, recordId -> true);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean containsShoppingList(long contentHash) {
+        readLock.lock();
+        try {
+            return shoppingLists.get(OffHeapHashIndex.hash(contentHash), recordId -> true) != -1;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public Customer findByExternalId(String externalId) {
+        return findBy(CustomerCodec.EXTERNAL_ID, externalId);
+    }
+
+    @Override
+    public Customer findByMasterExternalId(String externalId) {
+        return findBy(CustomerCodec.MASTER_EXTERNAL_ID, externalId);
+    }
+
+    @Override
+    public Customer findByCompanyNumber(String companyNumber) {
+        return findBy(CustomerCodec.COMPANY_NUMBER, companyNumber);
+    }
+
+    public Customer findByInternalId(String internalId) {
+        return findBy(CustomerCodec.INTERNAL_ID, internalId);
+    }
+
+    boolean containsInternalId(byte[] internalId) {
+        readLock.lock();
+        try {
+            return find(CustomerCodec.INTERNAL_ID, internalId) != -1;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Every stored record, in place, in creation order. Writes wait until the visit is over.
+     */
+    void forEachRecord(RecordVisitor visitor) {
+        readLock.lock();
+        try {
+            for (int recordId = 0; recordId < recordCount; recordId++) {
+                long handle = handles.get(recordId);
+                ByteBuffer slab = allocator.slab(handle);
+                visitor.visit(slab, payloadOffset(handle), slab.getInt(SlabAllocator.offset(handle) + 4));
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Compact every size class now, instead of waiting for it to be mostly free
+     */
+    public void compact() {
+        writeLock.lock();
+        try {
+            allocator.compactAll(handles::set);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int getCustomerCount() {
+        readLock.lock();
+        try {
+            return recordCount;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * direct memory held by the slabs, the indexes and the record table
+     */
+    public long getReservedBytes() {
+        readLock.lock();
+        try {
+            long reserved = allocator.getReservedBytes() + shoppingLists.getReservedBytes() + handles.getReservedBytes();
+            for (OffHeapHashIndex index : indexes) {
+                reserved += index.getReservedBytes();
+            }
+            return reserved;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * bytes of the slabs taken by the blocks of live records
+     */
+    public long getUsedBytes() {
+        readLock.lock();
+        try {
+            return allocator.getUsedBytes();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    Customer findBy(int field, String key) {
+        if (key == null) {
+            return null;
+        }
+        readLock.lock();
+        try {
+            int recordId = find(field, CustomerCodec.utf8(key));
+            if (recordId == -1) {
+                return null;
+            }
+            long handle = handles.get(recordId);
+            return CustomerCodec.decode(payload(handle), payloadOffset(handle));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private int find(int field, byte[] key) {
+        if (key == null) {
+            return -1;
+        }
+        return indexes[field].get(OffHeapHashIndex.hash(key), recordId -> holdsKey(recordId, field, key));
+    }
+
+    private void index(int field, byte[] key, int recordId) {
+        if (key != null) {
+            indexes[field].addHolder(OffHeapHashIndex.hash(key), recordId, other -> holdsKey(other, field, key));
+        }
+    }
+
+    private boolean holdsKey(int recordId, int field, byte[] key) {
+        long handle = handles.get(recordId);
+        return CustomerCodec.keyEquals(payload(handle), payloadOffset(handle), field, key);
+    }
+
+    private static void checkVersion(Customer customer, long storedVersion) {
+        if (customer.getVersion() != 0 && customer.getVersion() != storedVersion) {
+            throw new OptimisticLockException(customer.getInternalId(), customer.getVersion(), storedVersion);
+        }
+    }
+
+    private String newInternalId() {
+        String internalId;
+        do {
+            internalId = Long.toString(nextInternalId++);
+        } while (find(CustomerCodec.INTERNAL_ID, CustomerCodec.utf8(internalId)) != -1);
+        return internalId;
+    }
+
+    private void write(long handle, int length) {
+        ByteBuffer target = allocator.slab(handle).duplicate();
+        target.position(payloadOffset(handle));
+        target.put(codec.bytes(), 0, length);
+    }
+
+    private ByteBuffer payload(long handle) {
+        return allocator.slab(handle);
+    }
+
+    private static int payloadOffset(long handle) {
+        return SlabAllocator.offset(handle) + SlabAllocator.HEADER;
+    }
+
+    /**
+     * record id to block handle, in direct chunks of 64k handles
+     */
+    private static class HandleTable {
+        private static final int CHUNK_BITS = 16;
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+        private ByteBuffer[] chunks = new ByteBuffer[16];
+
+        long get(int recordId) {
+            return chunks[recordId >>> CHUNK_BITS].getLong((recordId & (CHUNK_SIZE - 1)) * 8);
+        }
+
+        void set(int recordId, long handle) {
+            int chunk = recordId >>> CHUNK_BITS;
+            if (chunk == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunks.length * 2);
+            }
+            if (chunks[chunk] == null) {
+                chunks[chunk] = ByteBuffer.allocateDirect(CHUNK_SIZE * 8);
+            }
+            chunks[chunk].putLong((recordId & (CHUNK_SIZE - 1)) * 8, handle);
+        }
+
+        long getReservedBytes() {
+            long reserved = 0;
+            for (ByteBuffer chunk : chunks) {
+                if (chunk != null) {
+                    reserved += chunk.capacity();
+                }
+            }
+            return reserved;
+        }
+    }
+}
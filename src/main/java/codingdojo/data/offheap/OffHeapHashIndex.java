@@ -0,0 +1,243 @@
+package codingdojo.data.offheap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Open addressing hash table from the 64-bit hash of a key to a record id, with linear probing, held in a direct
+ * ByteBuffer. A slot is the hash, 0 for an empty slot, then the record id, TOMBSTONE once removed.
+ * The keys themselves are not kept: two keys may share a hash, so lookups ask the owner whether the record in a slot
+ * really holds the key. A key held by several records, see addHolder, has a slot per holder, the last one written
+ * first along the probe sequence. Not thread safe for writes, the owner locks.
+ */
+final class OffHeapHashIndex {
+
+    private static final int SLOT = 12;
+    private static final int TOMBSTONE = -1;
+    private static final int MAX_CAPACITY = 1 << 27;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    interface KeyMatcher {
+        boolean matches(int recordId);
+    }
+
+    private ByteBuffer table;
+    private int capacity;
+    private int size;
+    private int tombstones;
+
+    OffHeapHashIndex(int initialCapacity) {
+        allocate(Math.max(Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1, 16));
+    }
+
+    /**
+     * the id of the record holding the key, -1 when there is none
+     */
+    int get(long hash, KeyMatcher matcher) {
+        int mask = capacity - 1;
+        for (int slot = (int) spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            long slotHash = table.getLong(slot * SLOT);
+            if (slotHash == 0) {
+                return -1;
+            }
+            int recordId = table.getInt(slot * SLOT + 8);
+            if (slotHash == hash && recordId != TOMBSTONE && matcher.matches(recordId)) {
+                return recordId;
+            }
+        }
+    }
+
+    /**
+     * Point the key at the record, replacing the record already holding the same key, if any
+     */
+    void put(long hash, int recordId, KeyMatcher sameKey) {
+        if ((size + tombstones + 1) * 10L > capacity * 7L) {
+            rehash();
+        }
+        int mask = capacity - 1;
+        int firstTombstone = -1;
+        int slot = (int) spread(hash) & mask;
+        for (; ; slot = (slot + 1) & mask) {
+            long slotHash = table.getLong(slot * SLOT);
+            if (slotHash == 0) {
+                break;
+            }
+            int slotRecord = table.getInt(slot * SLOT + 8);
+            if (slotRecord == TOMBSTONE) {
+                if (firstTombstone == -1) {
+                    firstTombstone = slot;
+                }
+            } else if (slotHash == hash && sameKey.matches(slotRecord)) {
+                table.putInt(slot * SLOT + 8, recordId);
+                return;
+            }
+        }
+        if (firstTombstone != -1) {
+            slot = firstTombstone;
+            tombstones--;
+        }
+        table.putLong(slot * SLOT, hash);
+        table.putInt(slot * SLOT + 8, recordId);
+        size++;
+    }
+
+    /**
+     * Add the record as the first holder of the key, ahead of the records already holding it, which keep their slot
+     * so that get finds them again once the first one is removed
+     */
+    void addHolder(long hash, int recordId, KeyMatcher sameKey) {
+        if ((size + tombstones + 1) * 10L > capacity * 7L) {
+            rehash();
+        }
+        int mask = capacity - 1;
+        int firstMatch = -1;
+        int own = -1;
+        int free = -1;
+        int slot = (int) spread(hash) & mask;
+        for (; ; slot = (slot + 1) & mask) {
+            long slotHash = table.getLong(slot * SLOT);
+            if (slotHash == 0) {
+                break;
+            }
+            int slotRecord = table.getInt(slot * SLOT + 8);
+            if (slotRecord == TOMBSTONE) {
+                if (free == -1) {
+                    free = slot;
+                }
+            } else if (slotHash == hash && slotRecord == recordId) {
+                own = slot;
+                break;
+            } else if (firstMatch == -1 && slotHash == hash && sameKey.matches(slotRecord)) {
+                // the holder pushed back by this record goes after it, in the first free slot past this one
+                firstMatch = slot;
+                free = -1;
+            }
+        }
+        if (firstMatch == -1) {
+            if (own != -1) {
+                return;
+            }
+            occupy(free == -1 ? slot : free, hash, recordId);
+            return;
+        }
+        int displaced = table.getInt(firstMatch * SLOT + 8);
+        table.putInt(firstMatch * SLOT + 8, recordId);
+        if (own != -1) {
+            table.putInt(own * SLOT + 8, displaced);
+        } else {
+            occupy(free == -1 ? slot : free, hash, displaced);
+        }
+    }
+
+    private void occupy(int slot, long hash, int recordId) {
+        if (table.getLong(slot * SLOT) != 0) {
+            tombstones--;
+        }
+        table.putLong(slot * SLOT, hash);
+        table.putInt(slot * SLOT + 8, recordId);
+        size++;
+    }
+
+    /**
+     * Drop the key, if it still points at this record
+     */
+    void remove(long hash, int recordId) {
+        int mask = capacity - 1;
+        for (int slot = (int) spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            long slotHash = table.getLong(slot * SLOT);
+            if (slotHash == 0) {
+                return;
+            }
+            if (slotHash == hash && table.getInt(slot * SLOT + 8) == recordId) {
+                table.putInt(slot * SLOT + 8, TOMBSTONE);
+                size--;
+                tombstones++;
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getReservedBytes() {
+        return table.capacity();
+    }
+
+    /**
+     * 64-bit FNV-1a of the key bytes, never 0, which marks an empty slot
+     */
+    static long hash(byte[] key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * the same hash, of key bytes read in place
+     */
+    static long hash(ByteBuffer buffer, int position, int length) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < length; i++) {
+            hash ^= buffer.get(position + i) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * a hash that is already 64-bit, such as a shopping list content hash, with 0 moved out of the way
+     */
+    static long hash(long value) {
+        return value == 0 ? 1 : value;
+    }
+
+    /**
+     * Grow when half full, otherwise only clear the tombstones. The old slots are copied from an empty one on, so no
+     * probe sequence wraps around mid copy and the holders of a key keep their order.
+     */
+    private void rehash() {
+        ByteBuffer old = table;
+        int oldCapacity = capacity;
+        int newCapacity = (size + 1) * 2L > oldCapacity ? oldCapacity * 2 : oldCapacity;
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("off-heap index is full at " + size + " keys");
+        }
+        int start = 0;
+        while (old.getLong(start * SLOT) != 0) {
+            start++;
+        }
+        allocate(newCapacity);
+        int mask = capacity - 1;
+        for (int n = 0; n < oldCapacity; n++) {
+            int i = (start + n) & (oldCapacity - 1);
+            long hash = old.getLong(i * SLOT);
+            int recordId = old.getInt(i * SLOT + 8);
+            if (hash == 0 || recordId == TOMBSTONE) {
+                continue;
+            }
+            int slot = (int) spread(hash) & mask;
+            while (table.getLong(slot * SLOT) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table.putLong(slot * SLOT, hash);
+            table.putInt(slot * SLOT + 8, recordId);
+            size++;
+        }
+    }
+
+    private void allocate(int newCapacity) {
+        table = ByteBuffer.allocateDirect(newCapacity * SLOT);
+        capacity = newCapacity;
+        size = 0;
+        tombstones = 0;
+    }
+
+    static long spread(long hash) {
+        return hash ^ (hash >>> 32);
+    }
+}
@@ -0,0 +1,10 @@
+package codingdojo.data.offheap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives serialized customers, see CustomerCodec, in place: the record is length bytes from offset in the buffer
+ */
+interface RecordVisitor {
+    void visit(ByteBuffer buffer, int offset, int length);
+}
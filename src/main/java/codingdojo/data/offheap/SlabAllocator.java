@@ -0,0 +1,307 @@
+package codingdojo.data.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Hands out blocks of direct memory for records. Blocks come in power of two size classes, from 32 bytes up, and
+ * each slab, a direct ByteBuffer, only holds blocks of one class, so a freed block is reused as is by the next
+ * record of its class. A block starts with a header, the id of the record it holds, FREE once released, and the
+ * length of the record.
+ *
+ * A block is addressed by a handle, the slab index in the high 32 bits and the offset in the low ones.
+ * Compacting a size class moves its last blocks into the holes of its first slabs, and releases the slabs left
+ * empty; the owner is told where each record went. Not thread safe, the owner locks.
+ */
+final class SlabAllocator {
+
+    static final int HEADER = 8;
+    static final int FREE = -1;
+
+    private static final int MIN_BLOCK_BITS = 5;
+    private static final int SIZE_CLASSES = 31 - MIN_BLOCK_BITS;
+
+    interface Relocation {
+        void moved(int recordId, long handle);
+    }
+
+    private final int slabSize;
+    private ByteBuffer[] slabs = new ByteBuffer[16];
+    private int[] slabClass = new int[16];
+    private int[] slabTop = new int[16];
+    private int[] slabUsed = new int[16];
+    private int slabCount;
+    private final IntStack releasedSlabs = new IntStack();
+
+    private final int[] currentSlab = new int[SIZE_CLASSES];
+    private final LongStack[] freeBlocks = new LongStack[SIZE_CLASSES];
+    private final long[] usedBlocks = new long[SIZE_CLASSES];
+
+    private long reservedBytes;
+    private long usedBytes;
+
+    SlabAllocator(int slabSize) {
+        if (slabSize < (1 << MIN_BLOCK_BITS) || Integer.bitCount(slabSize) != 1) {
+            throw new IllegalArgumentException("slabSize must be a power of two of at least 32 bytes: " + slabSize);
+        }
+        this.slabSize = slabSize;
+        Arrays.fill(currentSlab, -1);
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            freeBlocks[i] = new LongStack();
+        }
+    }
+
+    /**
+     * a block holding at least recordLength bytes after its header, with the header written
+     */
+    long allocate(int recordId, int recordLength) {
+        int sizeClass = sizeClass(HEADER + recordLength);
+        long handle;
+        if (!freeBlocks[sizeClass].isEmpty()) {
+            handle = freeBlocks[sizeClass].pop();
+        } else {
+            int slab = currentSlab[sizeClass];
+            if (slab == -1 || slabTop[slab] == slabs[slab].capacity()) {
+                slab = newSlab(sizeClass);
+                currentSlab[sizeClass] = slab;
+            }
+            handle = handle(slab, slabTop[slab]);
+            slabTop[slab] += blockSize(sizeClass);
+        }
+        int slab = slabIndex(handle);
+        slabUsed[slab]++;
+        usedBlocks[sizeClass]++;
+        usedBytes += blockSize(sizeClass);
+        ByteBuffer buffer = slabs[slab];
+        buffer.putInt(offset(handle), recordId);
+        buffer.putInt(offset(handle) + 4, recordLength);
+        return handle;
+    }
+
+    /**
+     * Release the block, and return its size class, for compactIfFragmented
+     */
+    int free(long handle) {
+        int slab = slabIndex(handle);
+        int sizeClass = slabClass[slab];
+        slabs[slab].putInt(offset(handle), FREE);
+        slabUsed[slab]--;
+        usedBlocks[sizeClass]--;
+        usedBytes -= blockSize(sizeClass);
+        freeBlocks[sizeClass].push(handle);
+        return sizeClass;
+    }
+
+    /**
+     * the record bytes a block can hold, after its header
+     */
+    int capacity(long handle) {
+        return blockSize(slabClass[slabIndex(handle)]) - HEADER;
+    }
+
+    void setLength(long handle, int recordLength) {
+        slabs[slabIndex(handle)].putInt(offset(handle) + 4, recordLength);
+    }
+
+    ByteBuffer slab(long handle) {
+        return slabs[slabIndex(handle)];
+    }
+
+    static int offset(long handle) {
+        return (int) handle;
+    }
+
+    /**
+     * Compact the size class once at least two slabs worth of its blocks are free, and more blocks are free than used
+     */
+    void compactIfFragmented(int sizeClass, Relocation relocation) {
+        long free = freeBlocks[sizeClass].size();
+        if (free >= 2L * blocksPerSlab(sizeClass) && free > usedBlocks[sizeClass]) {
+            compact(sizeClass, relocation);
+        }
+    }
+
+    void compactAll(Relocation relocation) {
+        for (int sizeClass = 0; sizeClass < SIZE_CLASSES; sizeClass++) {
+            if (!freeBlocks[sizeClass].isEmpty()) {
+                compact(sizeClass, relocation);
+            }
+        }
+    }
+
+    long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Fill the lowest holes with the highest used blocks, until every hole is above every used block,
+     * then release the empty slabs and rebuild the free list from what is left.
+     */
+    private void compact(int sizeClass, Relocation relocation) {
+        int blockSize = blockSize(sizeClass);
+        long[] holes = freeBlocks[sizeClass].toSortedArray();
+        int nextHole = 0;
+        moving:
+        for (int slab = slabCount - 1; slab >= 0; slab--) {
+            if (slabs[slab] == null || slabClass[slab] != sizeClass) {
+                continue;
+            }
+            for (int offset = slabTop[slab] - blockSize; offset >= 0; offset -= blockSize) {
+                long block = handle(slab, offset);
+                if (nextHole == holes.length || holes[nextHole] >= block) {
+                    break moving;
+                }
+                if (slabs[slab].getInt(offset) != FREE) {
+                    move(block, holes[nextHole++], relocation);
+                }
+            }
+        }
+        freeBlocks[sizeClass].clear();
+        for (int slab = 0; slab < slabCount; slab++) {
+            if (slabs[slab] == null || slabClass[slab] != sizeClass) {
+                continue;
+            }
+            if (slabUsed[slab] == 0) {
+                releaseSlab(slab);
+                continue;
+            }
+            for (int offset = 0; offset < slabTop[slab]; offset += blockSize) {
+                if (slabs[slab].getInt(offset) == FREE) {
+                    freeBlocks[sizeClass].push(handle(slab, offset));
+                }
+            }
+        }
+    }
+
+    private void move(long from, long to, Relocation relocation) {
+        ByteBuffer source = slabs[slabIndex(from)].duplicate();
+        int recordId = source.getInt(offset(from));
+        int length = HEADER + source.getInt(offset(from) + 4);
+        source.limit(offset(from) + length).position(offset(from));
+        ByteBuffer target = slabs[slabIndex(to)].duplicate();
+        target.position(offset(to));
+        target.put(source);
+        slabs[slabIndex(from)].putInt(offset(from), FREE);
+        slabUsed[slabIndex(from)]--;
+        slabUsed[slabIndex(to)]++;
+        relocation.moved(recordId, to);
+    }
+
+    private int newSlab(int sizeClass) {
+        int capacity = Math.max(slabSize, blockSize(sizeClass));
+        int slab;
+        if (!releasedSlabs.isEmpty()) {
+            slab = releasedSlabs.pop();
+        } else {
+            if (slabCount == slabs.length) {
+                int grown = slabs.length * 2;
+                slabs = Arrays.copyOf(slabs, grown);
+                slabClass = Arrays.copyOf(slabClass, grown);
+                slabTop = Arrays.copyOf(slabTop, grown);
+                slabUsed = Arrays.copyOf(slabUsed, grown);
+            }
+            slab = slabCount++;
+        }
+        slabs[slab] = ByteBuffer.allocateDirect(capacity);
+        slabClass[slab] = sizeClass;
+        slabTop[slab] = 0;
+        slabUsed[slab] = 0;
+        reservedBytes += capacity;
+        return slab;
+    }
+
+    /**
+     * dropping the last reference lets the direct memory go with the next collection of the buffer object
+     */
+    private void releaseSlab(int slab) {
+        reservedBytes -= slabs[slab].capacity();
+        if (currentSlab[slabClass[slab]] == slab) {
+            currentSlab[slabClass[slab]] = -1;
+        }
+        slabs[slab] = null;
+        releasedSlabs.push(slab);
+    }
+
+    private int blocksPerSlab(int sizeClass) {
+        return Math.max(slabSize, blockSize(sizeClass)) / blockSize(sizeClass);
+    }
+
+    private static int sizeClass(int blockLength) {
+        int bits = 32 - Integer.numberOfLeadingZeros(blockLength - 1);
+        int sizeClass = Math.max(bits - MIN_BLOCK_BITS, 0);
+        if (sizeClass >= SIZE_CLASSES) {
+            throw new IllegalArgumentException("record of " + blockLength + " bytes is too large to be stored off-heap");
+        }
+        return sizeClass;
+    }
+
+    private static int blockSize(int sizeClass) {
+        return 1 << (sizeClass + MIN_BLOCK_BITS);
+    }
+
+    private static long handle(int slab, int offset) {
+        return ((long) slab << 32) | offset;
+    }
+
+    private static int slabIndex(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+    private static class LongStack {
+        private long[] values = new long[16];
+        private int size;
+
+        void push(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long pop() {
+            return values[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    private static class IntStack {
+        private int[] values = new int[16];
+        private int size;
+
+        void push(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int pop() {
+            return values[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
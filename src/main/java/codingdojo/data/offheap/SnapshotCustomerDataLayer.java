@@ -0,0 +1,291 @@
+package codingdojo.data.offheap;
+
+import codingdojo.data.CustomerDataLayer;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Data layer served from a memory-mapped CustomerSnapshot, usable as soon as the snapshot is opened. Writes go to an
+ * off-heap overlay, and a lookup checks the overlays, newest first, then the snapshot; a record found in an older
+ * layer is skipped when a newer one holds the same internalId, since that newer version no longer has the key.
+ *
+ * Taking a snapshot freezes the current overlay and starts a new one, which only holds writers back for that switch.
+ * A background thread then writes the old snapshot merged with the frozen overlays to the new file, and once it is
+ * written, serves from it and drops the frozen overlays. One snapshot is taken at a time.
+ * Stored shopping lists are only known to the overlays, so a list found in the snapshot alone is written again.
+ *
+ * Records keep their version through every layer, and an update compares it with the latest layer holding the
+ * record: a stale customer throws an OptimisticLockException, see OffHeapCustomerDataLayer. Customer writes go one
+ * at a time, so no other write gets between that check and the write.
+ */
+public class SnapshotCustomerDataLayer implements CustomerDataLayer, Closeable {
+
+    private volatile Layers layers;
+    private final ReadWriteLock switchLock = new ReentrantReadWriteLock();
+    private final Object writeLock = new Object();
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+    private final AtomicLong nextInternalId = new AtomicLong(1);
+    private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "customer-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private SnapshotCustomerDataLayer(CustomerSnapshot snapshot) {
+        this.layers = new Layers(snapshot, Collections.singletonList(new OffHeapCustomerDataLayer()));
+    }
+
+    public SnapshotCustomerDataLayer() {
+        this(null);
+    }
+
+    /**
+     * Serve the snapshot in the file, or start empty when there is none
+     */
+    public static SnapshotCustomerDataLayer open(Path snapshotFile) throws IOException {
+        return new SnapshotCustomerDataLayer(Files.exists(snapshotFile) ? CustomerSnapshot.open(snapshotFile) : null);
+    }
+
+    /**
+     * Store a new record. A customer without internalId gets one that no layer holds, one with an internalId some
+     * layer holds is rejected.
+     */
+    @Override
+    public Customer createCustomerRecord(Customer customer) {
+        switchLock.readLock().lock();
+        try {
+            synchronized (writeLock) {
+                Layers current = layers;
+                if (customer.getInternalId() == null) {
+                    customer.setInternalId(newInternalId(current));
+                } else if (findByInternalId(customer.getInternalId()) != null) {
+                    throw new IllegalArgumentException("a customer is already stored with internalId " + customer.getInternalId());
+                }
+                return current.active().createCustomerRecord(customer);
+            }
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A customer the active overlay does not hold yet, read from an older layer, is copied into it, at the version
+     * after the one of that layer
+     */
+    @Override
+    public Customer updateCustomerRecord(Customer customer) {
+        switchLock.readLock().lock();
+        try {
+            synchronized (writeLock) {
+                OffHeapCustomerDataLayer active = layers.active();
+                if (active.containsInternalId(CustomerCodec.utf8(customer.getInternalId()))) {
+                    return active.updateCustomerRecord(customer);
+                }
+                Customer stored = findByInternalId(customer.getInternalId());
+                return active.copyIn(customer, stored == null ? 0 : stored.getVersion());
+            }
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateShoppingList(ShoppingList consumerShoppingList) {
+        switchLock.readLock().lock();
+        try {
+            layers.active().updateShoppingList(consumerShoppingList);
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsShoppingList(long contentHash) {
+        for (OffHeapCustomerDataLayer overlay : layers.overlays) {
+            if (overlay.containsShoppingList(contentHash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Customer findByExternalId(String externalId) {
+        return find(CustomerCodec.EXTERNAL_ID, externalId);
+    }
+
+    @Override
+    public Customer findByMasterExternalId(String externalId) {
+        return find(CustomerCodec.MASTER_EXTERNAL_ID, externalId);
+    }
+
+    @Override
+    public Customer findByCompanyNumber(String companyNumber) {
+        return find(CustomerCodec.COMPANY_NUMBER, companyNumber);
+    }
+
+    public Customer findByInternalId(String internalId) {
+        return find(CustomerCodec.INTERNAL_ID, internalId);
+    }
+
+    /**
+     * Write a point-in-time image of every customer to the file in the background, then serve from it.
+     * The future completes once the new snapshot is served.
+     */
+    public CompletableFuture<Void> takeSnapshot(Path snapshotFile) {
+        if (!snapshotting.compareAndSet(false, true)) {
+            throw new IllegalStateException("a snapshot is already being taken");
+        }
+        Layers frozen;
+        switchLock.writeLock().lock();
+        try {
+            List<OffHeapCustomerDataLayer> overlays = new ArrayList<>();
+            overlays.add(new OffHeapCustomerDataLayer());
+            overlays.addAll(layers.overlays);
+            frozen = new Layers(layers.snapshot, overlays);
+            layers = frozen;
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+        return CompletableFuture.runAsync(() -> writeSnapshot(frozen, snapshotFile), snapshotter)
+                .whenComplete((done, failure) -> snapshotting.set(false));
+    }
+
+    @Override
+    public void close() throws IOException {
+        snapshotter.shutdown();
+        CustomerSnapshot snapshot = layers.snapshot;
+        if (snapshot != null) {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Everything but the overlay started with the snapshot goes to the file: the old snapshot first, then the frozen
+     * overlays from the oldest, each record only from the newest layer holding its internalId.
+     */
+    private void writeSnapshot(Layers frozen, Path snapshotFile) {
+        List<OffHeapCustomerDataLayer> frozenOverlays = frozen.overlays.subList(1, frozen.overlays.size());
+        try (CustomerSnapshotWriter writer = CustomerSnapshotWriter.create(snapshotFile)) {
+            if (frozen.snapshot != null) {
+                frozen.snapshot.forEachRecord((buffer, offset, length) ->
+                        addIfLatest(writer, frozenOverlays, frozenOverlays.size(), buffer, offset, length));
+            }
+            for (int i = frozenOverlays.size() - 1; i >= 0; i--) {
+                final int layer = i;
+                frozenOverlays.get(i).forEachRecord((buffer, offset, length) ->
+                        addIfLatest(writer, frozenOverlays, layer, buffer, offset, length));
+            }
+            writer.finish();
+            CustomerSnapshot snapshot = CustomerSnapshot.open(snapshotFile);
+            switchLock.writeLock().lock();
+            try {
+                layers = new Layers(snapshot, Collections.singletonList(frozen.active()));
+            } finally {
+                switchLock.writeLock().unlock();
+            }
+            if (frozen.snapshot != null) {
+                frozen.snapshot.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * add the record unless one of the overlays newer than its own, those before index newerThan, holds its internalId
+     */
+    private static void addIfLatest(CustomerSnapshotWriter writer, List<OffHeapCustomerDataLayer> overlays, int newerThan,
+                                    ByteBuffer buffer, int offset, int length) {
+        byte[] internalId = CustomerCodec.readKey(buffer, offset, CustomerCodec.INTERNAL_ID);
+        for (int i = 0; i < newerThan; i++) {
+            if (overlays.get(i).containsInternalId(internalId)) {
+                return;
+            }
+        }
+        try {
+            writer.addRecord(buffer, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Customer find(int field, String key) {
+        if (key == null) {
+            return null;
+        }
+        Layers current = layers;
+        List<OffHeapCustomerDataLayer> overlays = current.overlays;
+        for (int i = 0; i < overlays.size(); i++) {
+            Customer customer = overlays.get(i).findBy(field, key);
+            if (customer != null && isLatest(customer, overlays, i)) {
+                return customer;
+            }
+        }
+        if (current.snapshot != null) {
+            Customer customer = current.snapshot.find(field, CustomerCodec.utf8(key));
+            if (customer != null && isLatest(customer, overlays, overlays.size())) {
+                return customer;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isLatest(Customer customer, List<OffHeapCustomerDataLayer> overlays, int newerThan) {
+        byte[] internalId = CustomerCodec.utf8(customer.getInternalId());
+        for (int i = 0; i < newerThan; i++) {
+            if (overlays.get(i).containsInternalId(internalId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String newInternalId(Layers current) {
+        while (true) {
+            String internalId = Long.toString(nextInternalId.getAndIncrement());
+            byte[] key = CustomerCodec.utf8(internalId);
+            boolean taken = current.snapshot != null && current.snapshot.contains(CustomerCodec.INTERNAL_ID, key);
+            for (OffHeapCustomerDataLayer overlay : current.overlays) {
+                taken |= overlay.containsInternalId(key);
+            }
+            if (!taken) {
+                return internalId;
+            }
+        }
+    }
+
+    /**
+     * the snapshot served, null when there is none yet, and the overlays, the active one first
+     */
+    private static class Layers {
+        private final CustomerSnapshot snapshot;
+        private final List<OffHeapCustomerDataLayer> overlays;
+
+        Layers(CustomerSnapshot snapshot, List<OffHeapCustomerDataLayer> overlays) {
+            this.snapshot = snapshot;
+            this.overlays = overlays;
+        }
+
+        OffHeapCustomerDataLayer active() {
+            return overlays.get(0);
+        }
+    }
+}
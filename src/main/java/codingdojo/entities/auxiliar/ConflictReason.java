@@ -0,0 +1,19 @@
+package codingdojo.entities.auxiliar;
+
+/**
+ * The rule of CustomerSync a message broke
+ */
+public enum ConflictReason {
+    /**
+     * the externalId of a person belongs to a customer that is not a person
+     */
+    EXISTING_NOT_A_PERSON,
+    /**
+     * the externalId of a company belongs to a customer that is not a company
+     */
+    EXISTING_NOT_A_COMPANY,
+    /**
+     * the company number belongs to a customer with another externalId
+     */
+    COMPANY_NUMBER_OF_OTHER_EXTERNAL_ID
+}
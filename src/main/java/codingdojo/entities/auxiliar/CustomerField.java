@@ -0,0 +1,8 @@
+package codingdojo.entities.auxiliar;
+
+/**
+ * The Customer fields kept in sync with the externalCustomer, used to track what a sync actually changed
+ */
+public enum CustomerField {
+    EXTERNAL_ID, MASTER_EXTERNAL_ID, COMPANY_NUMBER, NAME, CUSTOMER_TYPE, ADDRESS, PREFERRED_STORE, BONUS_POINTS_BALANCE, SHOPPING_LISTS
+}
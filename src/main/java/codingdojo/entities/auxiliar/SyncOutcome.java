@@ -0,0 +1,8 @@
+package codingdojo.entities.auxiliar;
+
+/**
+ * What the sync of one externalCustomer message did. REPLAYED: the message was already applied, nothing was done.
+ */
+public enum SyncOutcome {
+    CREATED, UPDATED, CONFLICT, REPLAYED
+}
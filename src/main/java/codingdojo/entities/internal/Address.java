@@ -1,10 +1,14 @@
 package codingdojo.entities.internal;
 
+import java.util.Objects;
+
 public class Address {
     private String street;
     private String city;
     private String postalCode;
 
+    private boolean changed;
+
     public Address(String street, String city, String postalCode) {
         this.street = street;
         this.city = city;
@@ -20,6 +24,7 @@ public class Address {
     }
 
     public void setPostalCode(String postalCode) {
+        track(this.postalCode, postalCode);
         this.postalCode = postalCode;
     }
 
@@ -28,10 +33,44 @@ public class Address {
     }
 
     public void setCity(String city) {
+        track(this.city, city);
         this.city = city;
     }
 
     public void setStreet(String street) {
+        track(this.street, street);
         this.street = street;
     }
+
+    /**
+     * true when a setter changed a value since the address was loaded or last written
+     */
+    public boolean hasChanges() {
+        return changed;
+    }
+
+    public void clearChanges() {
+        changed = false;
+    }
+
+    private void track(String oldValue, String newValue) {
+        if (!Objects.equals(oldValue, newValue)) {
+            changed = true;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Address)) return false;
+        Address address = (Address) o;
+        return Objects.equals(street, address.street) &&
+                Objects.equals(city, address.city) &&
+                Objects.equals(postalCode, address.postalCode);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(street, city, postalCode);
+    }
 }
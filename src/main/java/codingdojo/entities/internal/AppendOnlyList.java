@@ -0,0 +1,112 @@
+package codingdojo.entities.internal;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list where appending returns a new list in amortized O(1), without copying the elements.
+ * The elements live in fixed size chunks shared by all the versions of the list; a version only sees its first
+ * size elements, and those slots are never written again, so an older version handed out to a reader never changes.
+ * Appending to the latest version writes into the shared chunks, appending to an older one copies it first.
+ * Each version keeps, in a final field, the chunk directory as it was when the version was made, so a version can be
+ * read from any thread without locking. Appending is meant for one writer at a time.
+ */
+final class AppendOnlyList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final int CHUNK_BITS = 5;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final Storage storage;
+    private final Object[][] chunks;
+    private final int size;
+
+    private AppendOnlyList(Storage storage, int size) {
+        this.storage = storage;
+        this.chunks = storage.chunks;
+        this.size = size;
+    }
+
+    static <E> AppendOnlyList<E> empty() {
+        return new AppendOnlyList<>(new Storage(), 0);
+    }
+
+    /**
+     * the list itself when it already is an AppendOnlyList, a copy otherwise
+     */
+    static <E> AppendOnlyList<E> of(List<E> elements) {
+        if (elements instanceof AppendOnlyList) {
+            return (AppendOnlyList<E>) elements;
+        }
+        AppendOnlyList<E> list = empty();
+        return list.appendAll(elements);
+    }
+
+    AppendOnlyList<E> append(E element) {
+        Storage target = writableStorage();
+        target.set(size, element);
+        target.size = size + 1;
+        return new AppendOnlyList<>(target, size + 1);
+    }
+
+    AppendOnlyList<E> appendAll(Collection<? extends E> elements) {
+        if (elements.isEmpty()) {
+            return this;
+        }
+        Storage target = writableStorage();
+        int newSize = size;
+        for (E element : elements) {
+            target.set(newSize++, element);
+        }
+        target.size = newSize;
+        return new AppendOnlyList<>(target, newSize);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return (E) chunks[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * the shared storage when this is its latest version, else a copy of this version
+     */
+    private Storage writableStorage() {
+        if (storage.size == size) {
+            return storage;
+        }
+        Storage copy = new Storage();
+        for (int i = 0; i < size; i++) {
+            copy.set(i, get(i));
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    private static class Storage {
+        private Object[][] chunks = new Object[4][];
+        private int size;
+
+        void set(int index, Object element) {
+            int chunk = index >>> CHUNK_BITS;
+            if (chunk == chunks.length) {
+                Object[][] grown = new Object[chunks.length * 2][];
+                System.arraycopy(chunks, 0, grown, 0, chunks.length);
+                chunks = grown;
+            }
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new Object[CHUNK_SIZE];
+            }
+            chunks[chunk][index & (CHUNK_SIZE - 1)] = element;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package codingdojo.entities.internal;
+
+/**
+ * Every record that can take part in the match of a company: the one with the same externalId,
+ * the one having it as masterExternalId, and the one with the same companyNumber.
+ */
+public class CompanyCandidates {
+    private final Customer byExternalId;
+    private final Customer byMasterExternalId;
+    private final Customer byCompanyNumber;
+
+    public CompanyCandidates(Customer byExternalId, Customer byMasterExternalId, Customer byCompanyNumber) {
+        this.byExternalId = byExternalId;
+        this.byMasterExternalId = byMasterExternalId;
+        this.byCompanyNumber = byCompanyNumber;
+    }
+
+    public Customer getByExternalId() {
+        return byExternalId;
+    }
+
+    public Customer getByMasterExternalId() {
+        return byMasterExternalId;
+    }
+
+    public Customer getByCompanyNumber() {
+        return byCompanyNumber;
+    }
+}
@@ -1,37 +1,51 @@
 package codingdojo.entities.internal;
 
+import codingdojo.entities.auxiliar.CustomerField;
 import codingdojo.entities.auxiliar.CustomerType;
 
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 public class Customer {
     private String externalId;
     private String masterExternalId;
     private Address address;
     private String preferredStore;
-    private List<ShoppingList> shoppingLists = new ArrayList<>();
+    private List<ShoppingList> shoppingLists = AppendOnlyList.empty();
+    private Set<ShoppingList> shoppingListIndex;
+    private int storedShoppingListCount;
     private String internalId;
     private String name;
     private CustomerType customerType;
     private String companyNumber;
 
     private Integer bonusPointsBalance;
+    private long version;
+    private long syncFingerprint;
+
+    private final Set<CustomerField> changedFields = EnumSet.noneOf(CustomerField.class);
 
     public Integer getBonusPointsBalance() {
         return bonusPointsBalance;
     }
 
     public void setBonusPointsBalance(Integer bonusPointsBalance) {
+        track(CustomerField.BONUS_POINTS_BALANCE, this.bonusPointsBalance, bonusPointsBalance);
         this.bonusPointsBalance = bonusPointsBalance;
     }
 
     public void setExternalId(String externalId) {
+        track(CustomerField.EXTERNAL_ID, this.externalId, externalId);
         this.externalId = externalId;
     }
 
     public void setMasterExternalId(String masterExternalId) {
+        track(CustomerField.MASTER_EXTERNAL_ID, this.masterExternalId, masterExternalId);
         this.masterExternalId = masterExternalId;
     }
 
@@ -39,7 +53,14 @@ public class Customer {
         return masterExternalId;
     }
 
+    /**
+     * an address with the same values as the current one is not a change, and the current one is kept
+     */
     public void setAddress(Address address) {
+        if (Objects.equals(this.address, address)) {
+            return;
+        }
+        changedFields.add(CustomerField.ADDRESS);
         this.address = address;
     }
 
@@ -52,10 +73,12 @@ public class Customer {
     }
 
     public void setName(String name) {
+        track(CustomerField.NAME, this.name, name);
         this.name = name;
     }
 
     public void setPreferredStore(String preferredStore) {
+        track(CustomerField.PREFERRED_STORE, this.preferredStore, preferredStore);
         this.preferredStore = preferredStore;
     }
 
@@ -72,7 +95,21 @@ public class Customer {
     }
 
     public void setShoppingLists(List<ShoppingList> shoppingLists) {
+        track(CustomerField.SHOPPING_LISTS, this.shoppingLists, shoppingLists);
         this.shoppingLists = shoppingLists;
+        this.shoppingListIndex = null;
+        this.storedShoppingListCount = 0;
+    }
+
+    /**
+     * The lists appended since the customer was loaded or last written, all of them once setShoppingLists replaced
+     * them. A delta write only sends these.
+     */
+    public List<ShoppingList> getShoppingListsAdded() {
+        if (shoppingLists == null) {
+            return Collections.emptyList();
+        }
+        return shoppingLists.subList(Math.min(storedShoppingListCount, shoppingLists.size()), shoppingLists.size());
     }
 
     public String getName() {
@@ -84,6 +121,7 @@ public class Customer {
     }
 
     public void setCompanyNumber(String companyNumber) {
+        track(CustomerField.COMPANY_NUMBER, this.companyNumber, companyNumber);
         this.companyNumber = companyNumber;
     }
 
@@ -92,6 +130,7 @@ public class Customer {
     }
 
     public void setCustomerType(CustomerType customerType) {
+        track(CustomerField.CUSTOMER_TYPE, this.customerType, customerType);
         this.customerType = customerType;
     }
 
@@ -99,12 +138,120 @@ public class Customer {
         this.internalId = internalId;
     }
 
+    /**
+     * The version of the record this customer was loaded from, or last written as, bumped by the data layer on
+     * every write. 0 when it didn't come from a data layer keeping versions. Not a tracked field.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * The fingerprint of the last message synced into this customer, see ExternalCustomer.getFingerprint, 0 when
+     * unknown. Stored with the next write of the customer, not a tracked field.
+     */
+    public long getSyncFingerprint() {
+        return syncFingerprint;
+    }
+
+    public void setSyncFingerprint(long syncFingerprint) {
+        this.syncFingerprint = syncFingerprint;
+    }
+
     public void addShoppingList(ShoppingList consumerShoppingList) {
-        ArrayList<ShoppingList> newList = new ArrayList<ShoppingList>(this.shoppingLists);
-        newList.add(consumerShoppingList);
-        this.setShoppingLists(newList);
+        addShoppingLists(Collections.singletonList(consumerShoppingList));
+    }
+
+    /**
+     * Append the lists without copying the ones already held: getShoppingLists() returns a new list, and a list
+     * returned before never changes, but both share their elements.
+     */
+    public void addShoppingLists(Collection<ShoppingList> consumerShoppingLists) {
+        if (consumerShoppingLists.isEmpty()) {
+            return;
+        }
+        List<ShoppingList> current = shoppingLists == null ? Collections.emptyList() : shoppingLists;
+        this.shoppingLists = AppendOnlyList.of(current).appendAll(consumerShoppingLists);
+        if (shoppingListIndex != null) {
+            shoppingListIndex.addAll(consumerShoppingLists);
+        }
+        changedFields.add(CustomerField.SHOPPING_LISTS);
+    }
+
+    /**
+     * whether the customer already holds a list with the same products
+     */
+    public boolean hasShoppingList(ShoppingList shoppingList) {
+        if (shoppingLists == null) {
+            return false;
+        }
+        if (shoppingListIndex == null) {
+            shoppingListIndex = new HashSet<>(shoppingLists);
+        }
+        return shoppingListIndex.contains(shoppingList);
+    }
+
+    /**
+     * The fields changed since the customer was loaded or last written
+     */
+    public Set<CustomerField> getChangedFields() {
+        Set<CustomerField> changed = EnumSet.noneOf(CustomerField.class);
+        changed.addAll(changedFields);
+        if (address != null && address.hasChanges()) {
+            changed.add(CustomerField.ADDRESS);
+        }
+        return Collections.unmodifiableSet(changed);
+    }
+
+    public boolean hasChanges() {
+        return !changedFields.isEmpty() || (address != null && address.hasChanges());
+    }
+
+    /**
+     * Mark the customer as in sync with the data layer
+     */
+    public void clearChanges() {
+        changedFields.clear();
+        storedShoppingListCount = shoppingLists == null ? 0 : shoppingLists.size();
+        if (address != null) {
+            address.clearChanges();
+        }
     }
 
+    /**
+     * A customer with the same values and no changes, sharing nothing a sync changes in place
+     */
+    public Customer copy() {
+        Customer copy = new Customer();
+        copy.internalId = internalId;
+        copy.version = version;
+        copy.syncFingerprint = syncFingerprint;
+        copy.externalId = externalId;
+        copy.masterExternalId = masterExternalId;
+        copy.companyNumber = companyNumber;
+        copy.customerType = customerType;
+        copy.name = name;
+        copy.preferredStore = preferredStore;
+        copy.bonusPointsBalance = bonusPointsBalance;
+        if (address != null) {
+            copy.address = new Address(address.getStreet(), address.getCity(), address.getPostalCode());
+        }
+        if (shoppingLists != null && !shoppingLists.isEmpty()) {
+            copy.shoppingLists = AppendOnlyList.<ShoppingList>empty().appendAll(shoppingLists);
+        }
+        copy.clearChanges();
+        return copy;
+    }
+
+    private void track(CustomerField field, Object oldValue, Object newValue) {
+        if (!Objects.equals(oldValue, newValue)) {
+            changedFields.add(field);
+        }
+    }
 
     @Override
     public boolean equals(Object o) {
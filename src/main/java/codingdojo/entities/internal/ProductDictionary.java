@@ -0,0 +1,99 @@
+package codingdojo.entities.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Maps product names to small int ids and back, so each distinct product string is kept once however many
+ * shopping lists hold it. Ids are dense and never reused, a dictionary only grows, up to maxProducts: past that a new
+ * product is not encoded, and the ShoppingList holding it keeps its plain strings instead.
+ *
+ * Lookups take no lock: encoding a known product is a ConcurrentHashMap get, decoding an id two array reads.
+ * Only the first encoding of a new product goes through computeIfAbsent. The name is stored in its chunk before
+ * the id is published in the map, so whoever got hold of an id can decode it.
+ */
+public class ProductDictionary {
+
+    private static final ProductDictionary SHARED = new ProductDictionary();
+
+    static final int NULL_PRODUCT = -1;
+    static final int NOT_ENCODED = -2;
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 14;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String[]> chunks;
+    private final int maxProducts;
+    private int nextId;
+
+    public ProductDictionary() {
+        this(MAX_CHUNKS * CHUNK_SIZE);
+    }
+
+    public ProductDictionary(int maxProducts) {
+        if (maxProducts < 0 || maxProducts > MAX_CHUNKS * CHUNK_SIZE) {
+            throw new IllegalArgumentException("maxProducts must be between 0 and " + MAX_CHUNKS * CHUNK_SIZE);
+        }
+        this.maxProducts = maxProducts;
+        this.chunks = new AtomicReferenceArray<>((maxProducts + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+    }
+
+    /**
+     * the dictionary of every ShoppingList built from product names
+     */
+    public static ProductDictionary shared() {
+        return SHARED;
+    }
+
+    /**
+     * NOT_ENCODED when the product is new and the dictionary is full
+     */
+    public int encode(String product) {
+        if (product == null) {
+            return NULL_PRODUCT;
+        }
+        Integer id = ids.get(product);
+        if (id == null) {
+            id = ids.computeIfAbsent(product, this::register);
+        }
+        return id == null ? NOT_ENCODED : id;
+    }
+
+    public String decode(int id) {
+        if (id == NULL_PRODUCT) {
+            return null;
+        }
+        String[] chunk = id < 0 || id >>> CHUNK_BITS >= chunks.length() ? null : chunks.get(id >>> CHUNK_BITS);
+        String product = chunk == null ? null : chunk[id & (CHUNK_SIZE - 1)];
+        if (product == null) {
+            throw new IllegalArgumentException("unknown product id " + id);
+        }
+        return product;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * called by computeIfAbsent, at most once per product; ids are handed out under the dictionary lock so that
+     * two new products hashing to different bins don't get the same id. Null once full, so nothing is mapped.
+     */
+    private synchronized Integer register(String product) {
+        int id = nextId;
+        if (id >= maxProducts) {
+            return null;
+        }
+        int chunkIndex = id >>> CHUNK_BITS;
+        String[] chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunk = new String[CHUNK_SIZE];
+            chunks.set(chunkIndex, chunk);
+        }
+        chunk[id & (CHUNK_SIZE - 1)] = product;
+        nextId = id + 1;
+        return id;
+    }
+}
@@ -1,17 +1,111 @@
 package codingdojo.entities.internal;
 
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
+/**
+ * Immutable list of products. Two lists with the same products in the same order are equal, and share the same
+ * content hash, so a list already stored can be recognized without sending it again.
+ * The products are held as ids of the shared ProductDictionary, getProducts() decodes them on access, or as plain
+ * strings when the dictionary is full.
+ */
 public class ShoppingList {
-    private final List<String> products;
+    private final int[] productIds;
+    private final String[] products;
+    private final ProductDictionary dictionary;
+    private long contentHash;
 
     public ShoppingList(String... products) {
-        this.products = Arrays.asList(products);
+        this(ProductDictionary.shared(), products);
     }
 
+    public ShoppingList(ProductDictionary dictionary, String... products) {
+        this.dictionary = dictionary;
+        int[] ids = new int[products.length];
+        for (int i = 0; i < products.length; i++) {
+            ids[i] = dictionary.encode(products[i]);
+            if (ids[i] == ProductDictionary.NOT_ENCODED) {
+                ids = null;
+                break;
+            }
+        }
+        this.productIds = ids;
+        this.products = ids == null ? products.clone() : null;
+    }
+
+    /**
+     * read only view, decoding each product from the dictionary when it is read
+     */
     public List<String> getProducts() {
-        return products;
+        return new Products();
+    }
+
+    public int size() {
+        return productIds == null ? products.length : productIds.length;
+    }
+
+    private String product(int index) {
+        return productIds == null ? products[index] : dictionary.decode(productIds[index]);
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the products, stable across runs and JVMs, so it can be stored next to the list.
+     * Equal lists have equal hashes, different lists almost never do.
+     */
+    public long getContentHash() {
+        long hash = contentHash;
+        if (hash == 0) {
+            hash = 0xcbf29ce484222325L;
+            for (int index = 0; index < size(); index++) {
+                String product = product(index);
+                hash = fnv(hash, product == null ? -1 : product.length());
+                if (product != null) {
+                    for (int i = 0; i < product.length(); i++) {
+                        hash = fnv(hash, product.charAt(i));
+                    }
+                }
+            }
+            contentHash = hash;
+        }
+        return hash;
     }
 
+    private static long fnv(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash ^= (value >>> shift) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ShoppingList that = (ShoppingList) o;
+        if (dictionary == that.dictionary && productIds != null && that.productIds != null) {
+            return Arrays.equals(productIds, that.productIds);
+        }
+        return getContentHash() == that.getContentHash() && getProducts().equals(that.getProducts());
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = getContentHash();
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private class Products extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            return product(index);
+        }
+
+        @Override
+        public int size() {
+            return ShoppingList.this.size();
+        }
+    }
 }
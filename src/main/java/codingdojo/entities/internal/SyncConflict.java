@@ -0,0 +1,69 @@
+package codingdojo.entities.internal;
+
+import codingdojo.entities.auxiliar.ConflictReason;
+import codingdojo.exceptions.ConflictException;
+
+/**
+ * Why a message could not be synced, and the ids involved: the ones of the message, and the ones of the existing
+ * customer it conflicts with. The message text is only built when asked for.
+ */
+public class SyncConflict {
+    private final ConflictReason reason;
+    private final String externalId;
+    private final String companyNumber;
+    private final String existingInternalId;
+    private final String existingExternalId;
+
+    public SyncConflict(ConflictReason reason, String externalId, String companyNumber, Customer existing) {
+        this.reason = reason;
+        this.externalId = externalId;
+        this.companyNumber = companyNumber;
+        this.existingInternalId = existing.getInternalId();
+        this.existingExternalId = existing.getExternalId();
+    }
+
+    public ConflictReason getReason() {
+        return reason;
+    }
+
+    public String getExternalId() {
+        return externalId;
+    }
+
+    /**
+     * null for a person
+     */
+    public String getCompanyNumber() {
+        return companyNumber;
+    }
+
+    public String getExistingInternalId() {
+        return existingInternalId;
+    }
+
+    public String getExistingExternalId() {
+        return existingExternalId;
+    }
+
+    public String getMessage() {
+        switch (reason) {
+            case EXISTING_NOT_A_PERSON:
+                return "Existing customer for externalCustomer " + externalId + " already exists and is not a person";
+            case EXISTING_NOT_A_COMPANY:
+                return "Existing customer for externalCustomer " + externalId + " already exists and is not a company";
+            default:
+                return "Existing customer for externalCustomer " + companyNumber + " doesn't match external id " + externalId
+                        + " instead found " + existingExternalId;
+        }
+    }
+
+    public ConflictException toException() {
+        return new ConflictException(this);
+    }
+
+    @Override
+    public String toString() {
+        return "SyncConflict{" + reason + ", externalId=" + externalId + ", companyNumber=" + companyNumber
+                + ", existingInternalId=" + existingInternalId + ", existingExternalId=" + existingExternalId + '}';
+    }
+}
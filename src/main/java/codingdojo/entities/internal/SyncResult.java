@@ -0,0 +1,75 @@
+package codingdojo.entities.internal;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.auxiliar.SyncOutcome;
+import codingdojo.entities.message.ExternalCustomer;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Outcome of the sync of one externalCustomer message
+ */
+public class SyncResult {
+    private final ExternalCustomer externalCustomer;
+    private final SyncOutcome outcome;
+    private final Set<CustomerField> changedFields;
+    private final SyncConflict conflict;
+
+    private SyncResult(ExternalCustomer externalCustomer, SyncOutcome outcome, Set<CustomerField> changedFields, SyncConflict conflict) {
+        this.externalCustomer = externalCustomer;
+        this.outcome = outcome;
+        this.changedFields = changedFields;
+        this.conflict = conflict;
+    }
+
+    public static SyncResult synced(ExternalCustomer externalCustomer, boolean created, Set<CustomerField> changedFields) {
+        return new SyncResult(externalCustomer, created ? SyncOutcome.CREATED : SyncOutcome.UPDATED, changedFields, null);
+    }
+
+    public static SyncResult replayed(ExternalCustomer externalCustomer) {
+        return new SyncResult(externalCustomer, SyncOutcome.REPLAYED, Collections.emptySet(), null);
+    }
+
+    public static SyncResult conflict(ExternalCustomer externalCustomer, SyncConflict conflict) {
+        return new SyncResult(externalCustomer, SyncOutcome.CONFLICT, Collections.emptySet(), conflict);
+    }
+
+    public ExternalCustomer getExternalCustomer() {
+        return externalCustomer;
+    }
+
+    public SyncOutcome getOutcome() {
+        return outcome;
+    }
+
+    public boolean isCreated() {
+        return outcome == SyncOutcome.CREATED;
+    }
+
+    /**
+     * The fields of the matched customer changed by the sync, empty when the message didn't change anything
+     */
+    public Set<CustomerField> getChangedFields() {
+        return changedFields;
+    }
+
+    public boolean hasChanges() {
+        return !changedFields.isEmpty();
+    }
+
+    public boolean isReplayed() {
+        return outcome == SyncOutcome.REPLAYED;
+    }
+
+    public boolean isConflict() {
+        return outcome == SyncOutcome.CONFLICT;
+    }
+
+    /**
+     * The broken rule and the ids involved, null unless isConflict()
+     */
+    public SyncConflict getConflict() {
+        return conflict;
+    }
+}
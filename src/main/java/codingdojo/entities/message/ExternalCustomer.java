@@ -1,11 +1,14 @@
 package codingdojo.entities.message;
 
+import codingdojo.entities.auxiliar.CustomerField;
 import codingdojo.entities.internal.Address;
 import codingdojo.entities.internal.ShoppingList;
 
 import java.util.List;
 
 public class ExternalCustomer {
+    private static final long ABSENT = -2;
+
     private Address address;
     private String name;
     private String preferredStore;
@@ -76,4 +79,64 @@ public class ExternalCustomer {
         this.address = address;
     }
 
+    /**
+     * Whether the message carries this field of the customer. Always true here, a full message sets every field,
+     * see ExternalCustomerDelta.
+     */
+    public boolean isPresent(CustomerField field) {
+        return true;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of everything the sync reads from the message: the ids, name, preferred store, bonus points,
+     * address and the content hashes of the shopping lists, in order. Stable across runs and JVMs, so it can be
+     * stored; two messages with the same fingerprint sync to the same customer. Never 0.
+     * An absent field hashes differently from a field set to null.
+     */
+    public long getFingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv(hash, externalId);
+        hash = fnv(hash, companyNumber);
+        hash = isPresent(CustomerField.NAME) ? fnv(hash, name) : fnv(hash, ABSENT);
+        hash = isPresent(CustomerField.PREFERRED_STORE) ? fnv(hash, preferredStore) : fnv(hash, ABSENT);
+        hash = isPresent(CustomerField.BONUS_POINTS_BALANCE)
+                ? fnv(hash, bonusPointsBalance == null ? null : bonusPointsBalance.toString()) : fnv(hash, ABSENT);
+        if (isPresent(CustomerField.ADDRESS)) {
+            hash = fnv(hash, address == null ? null : address.getStreet());
+            hash = fnv(hash, address == null ? null : address.getCity());
+            hash = fnv(hash, address == null ? null : address.getPostalCode());
+        } else {
+            hash = fnv(hash, ABSENT);
+        }
+        if (!isPresent(CustomerField.SHOPPING_LISTS)) {
+            hash = fnv(hash, ABSENT);
+        } else if (shoppingLists != null) {
+            for (ShoppingList shoppingList : shoppingLists) {
+                hash = fnv(hash, shoppingList.getContentHash());
+            }
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * the length first, -1 for null, ABSENT for a field the message doesn't carry, so that adjacent fields can't run into each other
+     */
+    private static long fnv(long hash, String value) {
+        hash = fnv(hash, value == null ? -1L : value.length());
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash = fnv(hash, (long) value.charAt(i));
+            }
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            hash ^= (value >>> shift) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
 }
@@ -0,0 +1,75 @@
+package codingdojo.entities.message;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.Address;
+import codingdojo.entities.internal.ShoppingList;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A message carrying only some fields of the customer. A field is present once set, even to null, which clears it;
+ * an absent field is left as the customer has it. The externalId and companyNumber identify the customer, and are
+ * always present, the companyNumber still telling a company from a person.
+ * The fields that can be absent: NAME, PREFERRED_STORE, BONUS_POINTS_BALANCE, ADDRESS and SHOPPING_LISTS, whose
+ * lists are appended to the ones the customer holds, as with a full message.
+ */
+public class ExternalCustomerDelta extends ExternalCustomer {
+
+    private static final Set<CustomerField> OPTIONAL_FIELDS = EnumSet.of(CustomerField.NAME, CustomerField.PREFERRED_STORE,
+            CustomerField.BONUS_POINTS_BALANCE, CustomerField.ADDRESS, CustomerField.SHOPPING_LISTS);
+
+    private final Set<CustomerField> presentFields = EnumSet.noneOf(CustomerField.class);
+
+    public ExternalCustomerDelta(String externalId, String companyNumber) {
+        setExternalId(externalId);
+        setCompanyNumber(companyNumber);
+    }
+
+    /**
+     * true for the identifying fields, and for the optional ones once set
+     */
+    @Override
+    public boolean isPresent(CustomerField field) {
+        return !OPTIONAL_FIELDS.contains(field) || presentFields.contains(field);
+    }
+
+    /**
+     * the optional fields set on this delta
+     */
+    public Set<CustomerField> getPresentFields() {
+        return Collections.unmodifiableSet(presentFields);
+    }
+
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        presentFields.add(CustomerField.NAME);
+    }
+
+    @Override
+    public void setPreferredStore(String preferredStore) {
+        super.setPreferredStore(preferredStore);
+        presentFields.add(CustomerField.PREFERRED_STORE);
+    }
+
+    @Override
+    public void setBonusPointsBalance(Integer bonusPointsBalance) {
+        super.setBonusPointsBalance(bonusPointsBalance);
+        presentFields.add(CustomerField.BONUS_POINTS_BALANCE);
+    }
+
+    @Override
+    public void setAddress(Address address) {
+        super.setAddress(address);
+        presentFields.add(CustomerField.ADDRESS);
+    }
+
+    @Override
+    public void setShoppingLists(List<ShoppingList> shoppingLists) {
+        super.setShoppingLists(shoppingLists);
+        presentFields.add(CustomerField.SHOPPING_LISTS);
+    }
+}
@@ -1,7 +1,38 @@
 package codingdojo.exceptions;
 
+import codingdojo.entities.internal.SyncConflict;
+
+/**
+ * Thrown by the throwing entrypoints when a message breaks a rule. Conflicts are an expected outcome, not a bug,
+ * so no stack trace is captured, and the message is only built from the conflict when someone reads it.
+ */
 public class ConflictException extends RuntimeException {
+    private final SyncConflict conflict;
+    private String message;
+
     public ConflictException(String s) {
-        super(s);
+        super(null, null, false, false);
+        this.conflict = null;
+        this.message = s;
+    }
+
+    public ConflictException(SyncConflict conflict) {
+        super(null, null, false, false);
+        this.conflict = conflict;
+    }
+
+    /**
+     * null when thrown with a plain message
+     */
+    public SyncConflict getConflict() {
+        return conflict;
+    }
+
+    @Override
+    public String getMessage() {
+        if (message == null && conflict != null) {
+            message = conflict.getMessage();
+        }
+        return message;
     }
 }
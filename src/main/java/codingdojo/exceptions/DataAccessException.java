@@ -0,0 +1,11 @@
+package codingdojo.exceptions;
+
+public class DataAccessException extends RuntimeException {
+    public DataAccessException(String s) {
+        super(s);
+    }
+
+    public DataAccessException(String s, Throwable cause) {
+        super(s, cause);
+    }
+}
@@ -0,0 +1,11 @@
+package codingdojo.exceptions;
+
+public class FeedFormatException extends RuntimeException {
+    public FeedFormatException(String s) {
+        super(s);
+    }
+
+    public FeedFormatException(String s, Throwable cause) {
+        super(s, cause);
+    }
+}
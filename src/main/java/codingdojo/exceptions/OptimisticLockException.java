@@ -0,0 +1,43 @@
+package codingdojo.exceptions;
+
+/**
+ * Thrown by a data layer when a customer is updated from a stale version, another writer stored it since it was
+ * loaded; CustomerSync retries. Built like ConflictException.
+ */
+public class OptimisticLockException extends RuntimeException {
+    private final String internalId;
+    private final long expectedVersion;
+    private final long storedVersion;
+    private String message;
+
+    public OptimisticLockException(String internalId, long expectedVersion, long storedVersion) {
+        super(null, null, false, false);
+        this.internalId = internalId;
+        this.expectedVersion = expectedVersion;
+        this.storedVersion = storedVersion;
+    }
+
+    @Override
+    public String getMessage() {
+        if (message == null) {
+            message = "customer " + internalId + " was loaded at version " + expectedVersion + " but is stored at version "
+                    + storedVersion;
+        }
+        return message;
+    }
+
+    public String getInternalId() {
+        return internalId;
+    }
+
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    /**
+     * the version found in the data layer, 0 when it doesn't hold the customer or doesn't tell
+     */
+    public long getStoredVersion() {
+        return storedVersion;
+    }
+}
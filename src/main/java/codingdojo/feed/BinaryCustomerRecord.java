@@ -0,0 +1,233 @@
+package codingdojo.feed;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.Address;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.message.ExternalCustomer;
+import codingdojo.entities.message.ExternalCustomerDelta;
+import codingdojo.exceptions.FeedFormatException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static codingdojo.feed.BinaryFeedFormat.*;
+
+/**
+ * Flyweight over one record of a binary feed, see BinaryFeedFormat. Nothing is copied out of the buffer until
+ * an accessor asks for a field, and the field offsets are only worked out on the first access.
+ * The reader moves the same instance to the next record, so do not hold on to it; toExternalCustomer() takes a copy.
+ */
+public class BinaryCustomerRecord {
+
+    private ByteBuffer buffer;
+    private int start;
+    private int end;
+    private boolean located;
+    private int companyNumberAt;
+    private int nameAt;
+    private int preferredStoreAt;
+    private int flagsAt;
+    private int addressAt;
+    private int shoppingListsAt;
+    private byte[] scratch = new byte[64];
+
+    void wrap(ByteBuffer buffer, int start, int length) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = start + length;
+        this.located = false;
+    }
+
+    public String getExternalId() {
+        return readString(start);
+    }
+
+    public String getCompanyNumber() {
+        locate();
+        return readString(companyNumberAt);
+    }
+
+    public boolean isCompany() {
+        locate();
+        return buffer.getInt(companyNumberAt) != NULL_STRING;
+    }
+
+    public String getName() {
+        locate();
+        return readString(nameAt);
+    }
+
+    public String getPreferredStore() {
+        locate();
+        return readString(preferredStoreAt);
+    }
+
+    /**
+     * whether the record is an ExternalCustomerDelta
+     */
+    public boolean isDelta() {
+        locate();
+        return (flags() & DELTA) != 0;
+    }
+
+    /**
+     * whether the record carries the field, always true unless it is a delta
+     */
+    public boolean isPresent(CustomerField field) {
+        if (!isDelta()) {
+            return true;
+        }
+        switch (field) {
+            case NAME: return (flags() & PRESENT_NAME) != 0;
+            case PREFERRED_STORE: return (flags() & PRESENT_PREFERRED_STORE) != 0;
+            case BONUS_POINTS_BALANCE: return (flags() & PRESENT_BONUS_POINTS) != 0;
+            case ADDRESS: return (flags() & PRESENT_ADDRESS) != 0;
+            case SHOPPING_LISTS: return (flags() & PRESENT_SHOPPING_LISTS) != 0;
+            default: return true;
+        }
+    }
+
+    public Integer getBonusPointsBalance() {
+        locate();
+        if ((buffer.get(flagsAt) & HAS_BONUS_POINTS) == 0) {
+            return null;
+        }
+        return buffer.getInt(flagsAt + 1);
+    }
+
+    public Address getPostalAddress() {
+        locate();
+        if ((buffer.get(flagsAt) & HAS_ADDRESS) == 0) {
+            return null;
+        }
+        int cityAt = skipString(addressAt);
+        return new Address(readString(addressAt), readString(cityAt), readString(skipString(cityAt)));
+    }
+
+    public int getShoppingListCount() {
+        locate();
+        return checkedCount(shoppingListsAt);
+    }
+
+    public List<ShoppingList> getShoppingLists() {
+        int count = getShoppingListCount();
+        List<ShoppingList> shoppingLists = new ArrayList<>(count);
+        int position = shoppingListsAt + 4;
+        for (int i = 0; i < count; i++) {
+            String[] products = new String[checkedCount(position)];
+            position += 4;
+            for (int j = 0; j < products.length; j++) {
+                products[j] = readString(position);
+                position = skipString(position);
+            }
+            shoppingLists.add(new ShoppingList(products));
+        }
+        return shoppingLists;
+    }
+
+    public ExternalCustomer toExternalCustomer() {
+        if (isDelta()) {
+            return toExternalCustomerDelta();
+        }
+        ExternalCustomer externalCustomer = new ExternalCustomer();
+        externalCustomer.setExternalId(getExternalId());
+        externalCustomer.setCompanyNumber(getCompanyNumber());
+        externalCustomer.setName(getName());
+        externalCustomer.setPreferredStore(getPreferredStore());
+        externalCustomer.setBonusPointsBalance(getBonusPointsBalance());
+        externalCustomer.setAddress(getPostalAddress());
+        externalCustomer.setShoppingLists(getShoppingLists());
+        return externalCustomer;
+    }
+
+    private ExternalCustomerDelta toExternalCustomerDelta() {
+        ExternalCustomerDelta delta = new ExternalCustomerDelta(getExternalId(), getCompanyNumber());
+        if (isPresent(CustomerField.NAME)) {
+            delta.setName(getName());
+        }
+        if (isPresent(CustomerField.PREFERRED_STORE)) {
+            delta.setPreferredStore(getPreferredStore());
+        }
+        if (isPresent(CustomerField.BONUS_POINTS_BALANCE)) {
+            delta.setBonusPointsBalance(getBonusPointsBalance());
+        }
+        if (isPresent(CustomerField.ADDRESS)) {
+            delta.setAddress(getPostalAddress());
+        }
+        if (isPresent(CustomerField.SHOPPING_LISTS)) {
+            delta.setShoppingLists(getShoppingLists());
+        }
+        return delta;
+    }
+
+    private int flags() {
+        return buffer.get(flagsAt) & 0xFF;
+    }
+
+    private void locate() {
+        if (located) {
+            return;
+        }
+        companyNumberAt = skipString(start);
+        nameAt = skipString(companyNumberAt);
+        preferredStoreAt = skipString(nameAt);
+        flagsAt = skipString(preferredStoreAt);
+        addressAt = flagsAt + 5;
+        checkBounds(addressAt);
+        shoppingListsAt = addressAt;
+        if ((buffer.get(flagsAt) & HAS_ADDRESS) != 0) {
+            shoppingListsAt = skipString(skipString(skipString(addressAt)));
+        }
+        checkBounds(shoppingListsAt + 4);
+        located = true;
+    }
+
+    private int skipString(int position) {
+        int length = checkedLength(position);
+        return position + 4 + Math.max(length, 0);
+    }
+
+    private String readString(int position) {
+        int length = checkedLength(position);
+        if (length == NULL_STRING) {
+            return null;
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(scratch.length * 2, length)];
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private int checkedLength(int position) {
+        checkBounds(position + 4);
+        int length = buffer.getInt(position);
+        if (length < NULL_STRING) {
+            throw new FeedFormatException("invalid string length " + length + " at offset " + position);
+        }
+        checkBounds(position + 4 + Math.max(length, 0));
+        return length;
+    }
+
+    /**
+     * A count of entries, each at least a 4 byte length, so one larger than the rest of the record over 4 is corrupt
+     */
+    private int checkedCount(int position) {
+        checkBounds(position + 4);
+        int count = buffer.getInt(position);
+        if (count < 0 || count > (end - position - 4) / 4) {
+            throw new FeedFormatException("invalid count " + count + " at offset " + position);
+        }
+        return count;
+    }
+
+    private void checkBounds(int position) {
+        if (position > end || position < start) {
+            throw new FeedFormatException("field runs past the end of the record");
+        }
+    }
+}
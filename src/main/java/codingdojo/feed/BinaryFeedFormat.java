@@ -0,0 +1,36 @@
+package codingdojo.feed;
+
+/**
+ * Layout of the binary ExternalCustomer feed, all numbers big endian.
+ *
+ * header:  int MAGIC, int VERSION
+ * record:  int length of the rest of the record
+ *          string externalId, string companyNumber, string name, string preferredStore
+ *          byte flags (HAS_BONUS_POINTS, HAS_ADDRESS, DELTA and the PRESENT_ bits), int bonusPointsBalance
+ *          string street, string city, string postalCode, only with HAS_ADDRESS
+ *          int number of shopping lists, each one: int number of products, then the products as strings
+ * string:  int length of the UTF-8 bytes, -1 for null, then the bytes
+ *
+ * A DELTA record is an ExternalCustomerDelta, whose PRESENT_ bits tell which fields it carries; the absent ones are
+ * written as null. Version 1 had no DELTA records, and is read as it is.
+ */
+final class BinaryFeedFormat {
+    static final int MAGIC = 0x45434631;
+    static final int VERSION = 2;
+    static final int FIRST_VERSION = 1;
+    static final int HEADER_LENGTH = 8;
+
+    static final byte HAS_BONUS_POINTS = 1;
+    static final byte HAS_ADDRESS = 2;
+    static final int DELTA = 4;
+    static final int PRESENT_NAME = 8;
+    static final int PRESENT_PREFERRED_STORE = 16;
+    static final int PRESENT_BONUS_POINTS = 32;
+    static final int PRESENT_ADDRESS = 64;
+    static final int PRESENT_SHOPPING_LISTS = 128;
+
+    static final int NULL_STRING = -1;
+
+    private BinaryFeedFormat() {
+    }
+}
@@ -0,0 +1,131 @@
+package codingdojo.feed;
+
+import codingdojo.entities.message.ExternalCustomer;
+import codingdojo.exceptions.FeedFormatException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+import static codingdojo.feed.BinaryFeedFormat.*;
+
+/**
+ * Reads a binary feed written by BinaryFeedWriter straight from a memory mapped file. The file is mapped one
+ * window at a time, and a window always starts at a record boundary and holds whole records, so a record never
+ * spans two mappings. nextRecord() hands out a flyweight over the mapping; next() copies the record into an
+ * ExternalCustomer so the reader can be used wherever an ExternalCustomerFeed is expected.
+ */
+public class BinaryFeedReader implements ExternalCustomerFeed {
+
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+    private final BinaryCustomerRecord record = new BinaryCustomerRecord();
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private long recordsRead;
+
+    public BinaryFeedReader(FileChannel channel, int windowSize) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+        if (fileSize < HEADER_LENGTH) {
+            throw new FeedFormatException("not a binary customer feed: too short");
+        }
+        map(0, HEADER_LENGTH);
+        int magic = window.getInt(0);
+        int version = window.getInt(4);
+        if (magic != MAGIC) {
+            throw new FeedFormatException("not a binary customer feed: bad magic number");
+        }
+        if (version < FIRST_VERSION || version > VERSION) {
+            throw new FeedFormatException("unsupported binary feed version " + version);
+        }
+        this.position = HEADER_LENGTH;
+    }
+
+    public static BinaryFeedReader open(Path file) throws IOException {
+        return open(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public static BinaryFeedReader open(Path file, int windowSize) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new BinaryFeedReader(channel, windowSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < fileSize;
+    }
+
+    /**
+     * Move the flyweight to the next record. It is only valid until the next call.
+     */
+    public BinaryCustomerRecord nextRecord() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (fileSize - position < 4) {
+            throw new FeedFormatException("truncated or corrupt record " + (recordsRead + 1) + " at offset " + position);
+        }
+        try {
+            ensureMapped(position, 4);
+            int length = window.getInt((int) (position - windowStart));
+            if (length < 0 || position + 4 + length > fileSize) {
+                throw new FeedFormatException("truncated or corrupt record " + (recordsRead + 1) + " at offset " + position);
+            }
+            ensureMapped(position, 4 + length);
+            record.wrap(window, (int) (position - windowStart) + 4, length);
+            position += 4 + length;
+            recordsRead++;
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public ExternalCustomer next() {
+        return nextRecord().toExternalCustomer();
+    }
+
+    @Override
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private void ensureMapped(long from, int length) throws IOException {
+        if (from < windowStart || from + length > windowStart + window.capacity()) {
+            map(from, length);
+        }
+    }
+
+    private void map(long from, int length) throws IOException {
+        long size = Math.min(fileSize - from, Math.max(windowSize, length));
+        window = channel.map(FileChannel.MapMode.READ_ONLY, from, size);
+        windowStart = from;
+    }
+}
@@ -0,0 +1,169 @@
+package codingdojo.feed;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.Address;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.message.ExternalCustomer;
+import codingdojo.entities.message.ExternalCustomerDelta;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+
+import static codingdojo.feed.BinaryFeedFormat.*;
+
+/**
+ * Writes ExternalCustomer records in the binary feed format, see BinaryFeedFormat. An ExternalCustomerDelta is
+ * written as a DELTA record with the fields it carries.
+ */
+public class BinaryFeedWriter implements Closeable {
+
+    private final DataOutputStream output;
+    private final RecordBuffer record = new RecordBuffer();
+    private long recordsWritten;
+
+    public BinaryFeedWriter(OutputStream outputStream) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+    }
+
+    public static BinaryFeedWriter create(Path file) throws IOException {
+        return new BinaryFeedWriter(Files.newOutputStream(file));
+    }
+
+    /**
+     * Convert a whole feed, one record at a time, and return the number of records written
+     */
+    public static long convert(Iterator<ExternalCustomer> feed, Path file) throws IOException {
+        try (BinaryFeedWriter writer = create(file)) {
+            while (feed.hasNext()) {
+                writer.write(feed.next());
+            }
+            return writer.recordsWritten;
+        }
+    }
+
+    public void write(ExternalCustomer externalCustomer) throws IOException {
+        record.reset();
+        record.writeString(externalCustomer.getExternalId());
+        record.writeString(externalCustomer.getCompanyNumber());
+        record.writeString(externalCustomer.getName());
+        record.writeString(externalCustomer.getPreferredStore());
+        Address address = externalCustomer.getPostalAddress();
+        Integer bonusPointsBalance = externalCustomer.getBonusPointsBalance();
+        byte flags = 0;
+        if (externalCustomer instanceof ExternalCustomerDelta) {
+            flags |= DELTA;
+            flags |= presence(externalCustomer);
+        }
+        if (bonusPointsBalance != null) {
+            flags |= HAS_BONUS_POINTS;
+        }
+        if (address != null) {
+            flags |= HAS_ADDRESS;
+        }
+        record.writeByte(flags);
+        record.writeInt(bonusPointsBalance == null ? 0 : bonusPointsBalance);
+        if (address != null) {
+            record.writeString(address.getStreet());
+            record.writeString(address.getCity());
+            record.writeString(address.getPostalCode());
+        }
+        List<ShoppingList> shoppingLists = externalCustomer.getShoppingLists();
+        record.writeInt(shoppingLists == null ? 0 : shoppingLists.size());
+        if (shoppingLists != null) {
+            for (ShoppingList shoppingList : shoppingLists) {
+                List<String> products = shoppingList.getProducts();
+                record.writeInt(products.size());
+                for (String product : products) {
+                    record.writeString(product);
+                }
+            }
+        }
+        output.writeInt(record.length);
+        output.write(record.bytes, 0, record.length);
+        recordsWritten++;
+    }
+
+    private static int presence(ExternalCustomer delta) {
+        int bits = 0;
+        if (delta.isPresent(CustomerField.NAME)) {
+            bits |= PRESENT_NAME;
+        }
+        if (delta.isPresent(CustomerField.PREFERRED_STORE)) {
+            bits |= PRESENT_PREFERRED_STORE;
+        }
+        if (delta.isPresent(CustomerField.BONUS_POINTS_BALANCE)) {
+            bits |= PRESENT_BONUS_POINTS;
+        }
+        if (delta.isPresent(CustomerField.ADDRESS)) {
+            bits |= PRESENT_ADDRESS;
+        }
+        if (delta.isPresent(CustomerField.SHOPPING_LISTS)) {
+            bits |= PRESENT_SHOPPING_LISTS;
+        }
+        return bits;
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    /**
+     * growable buffer reused for every record, the record length is only known once it is encoded
+     */
+    private static class RecordBuffer {
+        private byte[] bytes = new byte[256];
+        private int length;
+
+        void reset() {
+            length = 0;
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            bytes[length++] = (byte) (value >>> 24);
+            bytes[length++] = (byte) (value >>> 16);
+            bytes[length++] = (byte) (value >>> 8);
+            bytes[length++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeInt(NULL_STRING);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(utf8.length);
+            ensureCapacity(utf8.length);
+            System.arraycopy(utf8, 0, bytes, length, utf8.length);
+            length += utf8.length;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, length + extra)];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package codingdojo.feed;
+
+import codingdojo.entities.message.ExternalCustomer;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * A feed of ExternalCustomer records read one at a time, whatever the format on disk
+ */
+public interface ExternalCustomerFeed extends Iterator<ExternalCustomer>, Closeable {
+
+    long getRecordsRead();
+
+    /**
+     * bytes consumed from the feed so far
+     */
+    long getBytesRead();
+}
@@ -0,0 +1,144 @@
+package codingdojo.feed;
+
+import codingdojo.business.CustomerSync;
+import codingdojo.business.ParallelCustomerSync;
+import codingdojo.entities.internal.SyncResult;
+import codingdojo.entities.message.ExternalCustomer;
+import codingdojo.exceptions.FeedFormatException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Feeds the records of a reader straight into a sync, one by one, without holding the feed in memory.
+ * The next record is only read once the sync accepted the previous one: right away for CustomerSync, and as soon
+ * as the worker queue has room for ParallelCustomerSync, so a slow data layer slows down the reading.
+ * A malformed record the reader could skip is counted as failed, and the ingestion goes on; one it cannot read
+ * past ends the ingestion with its FeedFormatException.
+ * The progress listener is called every reportEvery records, and once at the end.
+ */
+public class FeedIngestion {
+
+    private final Consumer<FeedProgress> progressListener;
+    private final long reportEvery;
+
+    public FeedIngestion(Consumer<FeedProgress> progressListener, long reportEvery) {
+        if (reportEvery <= 0) {
+            throw new IllegalArgumentException("reportEvery must be positive, got " + reportEvery);
+        }
+        this.progressListener = progressListener;
+        this.reportEvery = reportEvery;
+    }
+
+    /**
+     * Sync every record in the calling thread. A conflict or a failed sync is counted, and the ingestion goes on,
+     * as with ParallelCustomerSync.
+     */
+    public FeedProgress ingest(ExternalCustomerFeed reader, CustomerSync customerSync) {
+        Counts counts = new Counts(reader);
+        ExternalCustomer externalCustomer;
+        while ((externalCustomer = nextWellFormed(reader, counts)) != null) {
+            try {
+                counts.synced(customerSync.sync(externalCustomer).isConflict(), false);
+            } catch (RuntimeException e) {
+                counts.synced(false, true);
+            }
+            report(counts);
+        }
+        return finish(counts);
+    }
+
+    /**
+     * Hand every record to the parallel sync, and wait until all of them are synced, also when the ingestion ends
+     * on a feed it cannot read on or on a record the sync refused, which is counted as failed
+     */
+    public FeedProgress ingest(ExternalCustomerFeed reader, ParallelCustomerSync parallelSync) throws InterruptedException {
+        Counts counts = new Counts(reader);
+        try {
+            ExternalCustomer externalCustomer;
+            while ((externalCustomer = nextWellFormed(reader, counts)) != null) {
+                CompletableFuture<SyncResult> result;
+                try {
+                    result = parallelSync.submit(externalCustomer);
+                } catch (RuntimeException e) {
+                    counts.synced(false, true);
+                    throw e;
+                }
+                result.whenComplete((synced, error) -> counts.synced(synced != null && synced.isConflict(), error != null));
+                report(counts);
+            }
+        } catch (RuntimeException e) {
+            counts.awaitSynced(reader.getRecordsRead());
+            throw e;
+        }
+        counts.awaitSynced(reader.getRecordsRead());
+        return finish(counts);
+    }
+
+    /**
+     * The next record, or null at the end of the feed. A malformed record is counted as failed and skipped, as long
+     * as the reader got past it, otherwise its exception is thrown.
+     */
+    private ExternalCustomer nextWellFormed(ExternalCustomerFeed reader, Counts counts) {
+        while (true) {
+            long recordsRead = reader.getRecordsRead();
+            try {
+                return reader.hasNext() ? reader.next() : null;
+            } catch (FeedFormatException e) {
+                if (reader.getRecordsRead() == recordsRead) {
+                    throw e;
+                }
+                counts.synced(false, true);
+                report(counts);
+            }
+        }
+    }
+
+    private void report(Counts counts) {
+        if (counts.reader.getRecordsRead() % reportEvery == 0) {
+            progressListener.accept(counts.progress());
+        }
+    }
+
+    private FeedProgress finish(Counts counts) {
+        FeedProgress progress = counts.progress();
+        progressListener.accept(progress);
+        return progress;
+    }
+
+    /**
+     * the counts of one ingestion, updated by the sync workers
+     */
+    private static class Counts {
+        private final ExternalCustomerFeed reader;
+        private final long start = System.nanoTime();
+        private long synced;
+        private long conflicts;
+        private long failed;
+
+        Counts(ExternalCustomerFeed reader) {
+            this.reader = reader;
+        }
+
+        synchronized void synced(boolean conflict, boolean failure) {
+            synced++;
+            if (conflict) {
+                conflicts++;
+            }
+            if (failure) {
+                failed++;
+            }
+            notifyAll();
+        }
+
+        synchronized void awaitSynced(long records) throws InterruptedException {
+            while (synced < records) {
+                wait();
+            }
+        }
+
+        synchronized FeedProgress progress() {
+            return new FeedProgress(reader.getRecordsRead(), reader.getBytesRead(), conflicts, failed, System.nanoTime() - start);
+        }
+    }
+}
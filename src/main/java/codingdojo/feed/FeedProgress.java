@@ -0,0 +1,64 @@
+package codingdojo.feed;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the progress of a feed ingestion
+ */
+public class FeedProgress {
+    private final long records;
+    private final long bytesRead;
+    private final long conflicts;
+    private final long failed;
+    private final long elapsedNanos;
+
+    public FeedProgress(long records, long bytesRead, long conflicts, long failed, long elapsedNanos) {
+        this.records = records;
+        this.bytesRead = bytesRead;
+        this.conflicts = conflicts;
+        this.failed = failed;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * records read from the feed and handed to the sync
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getRecordsPerSecond() {
+        return perSecond(records);
+    }
+
+    public double getBytesPerSecond() {
+        return perSecond(bytesRead);
+    }
+
+    private double perSecond(long count) {
+        return elapsedNanos == 0 ? 0.0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "FeedProgress{records=" + records + ", bytesRead=" + bytesRead + ", conflicts=" + conflicts
+                + ", failed=" + failed + ", recordsPerSecond=" + String.format("%.1f", getRecordsPerSecond())
+                + ", bytesPerSecond=" + String.format("%.1f", getBytesPerSecond()) + '}';
+    }
+}
@@ -0,0 +1,239 @@
+package codingdojo.feed;
+
+import codingdojo.exceptions.FeedFormatException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON parser for one feed record. Objects become maps, arrays lists, numbers Long or Double.
+ * Objects and arrays nest at most MAX_DEPTH deep, so a hostile record can't exhaust the stack.
+ */
+class JsonParser {
+
+    static final int MAX_DEPTH = 64;
+
+    private final CharSequence text;
+    private int position;
+    private int depth;
+
+    private JsonParser(CharSequence text) {
+        this.text = text;
+    }
+
+    static Object parse(CharSequence text) {
+        JsonParser parser = new JsonParser(text);
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.position != text.length()) {
+            throw parser.error("unexpected content after the value");
+        }
+        return value;
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        if (position >= text.length()) {
+            throw error("unexpected end of record");
+        }
+        char c = text.charAt(position);
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                expect("true");
+                return Boolean.TRUE;
+            case 'f':
+                expect("false");
+                return Boolean.FALSE;
+            case 'n':
+                expect("null");
+                return null;
+            default:
+                return readNumber();
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        enter();
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            depth--;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("expected a field name");
+            }
+            String name = readString();
+            skipWhitespace();
+            consume(':');
+            object.put(name, readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                consume('}');
+                depth--;
+                return object;
+            }
+        }
+    }
+
+    private List<Object> readArray() {
+        List<Object> array = new ArrayList<>();
+        enter();
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            depth--;
+            return array;
+        }
+        while (true) {
+            array.add(readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                consume(']');
+                depth--;
+                return array;
+            }
+        }
+    }
+
+    private void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw error("nested deeper than " + MAX_DEPTH + " levels");
+        }
+    }
+
+    private String readString() {
+        position++;
+        StringBuilder sb = null;
+        int start = position;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '"') {
+                String value = sb == null ? text.subSequence(start, position).toString() : sb.toString();
+                position++;
+                return value;
+            }
+            if (c == '\\') {
+                if (sb == null) {
+                    sb = new StringBuilder().append(text, start, position);
+                }
+                position++;
+                sb.append(readEscape());
+            } else {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                position++;
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private char readEscape() {
+        if (position >= text.length()) {
+            throw error("unterminated escape");
+        }
+        char c = text.charAt(position++);
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (position + 4 > text.length()) {
+                    throw error("invalid unicode escape");
+                }
+                try {
+                    char unicode = (char) Integer.parseInt(text.subSequence(position, position + 4).toString(), 16);
+                    position += 4;
+                    return unicode;
+                } catch (NumberFormatException e) {
+                    throw error("invalid unicode escape");
+                }
+            default:
+                throw error("invalid escape \\" + c);
+        }
+    }
+
+    private Number readNumber() {
+        int start = position;
+        boolean decimal = false;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            position++;
+        }
+        if (start == position) {
+            throw error("unexpected character '" + text.charAt(position) + "'");
+        }
+        String number = text.subSequence(start, position).toString();
+        try {
+            return decimal ? (Number) Double.valueOf(number) : (Number) Long.valueOf(number);
+        } catch (NumberFormatException e) {
+            throw error("invalid number " + number);
+        }
+    }
+
+    private void expect(String literal) {
+        if (position + literal.length() > text.length()
+                || !literal.contentEquals(text.subSequence(position, position + literal.length()))) {
+            throw error("expected " + literal);
+        }
+        position += literal.length();
+    }
+
+    private void consume(char expected) {
+        if (peek() != expected) {
+            throw error("expected '" + expected + "'");
+        }
+        position++;
+    }
+
+    private char peek() {
+        if (position >= text.length()) {
+            throw error("unexpected end of record");
+        }
+        return text.charAt(position);
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private FeedFormatException error(String message) {
+        return new FeedFormatException(message + " at column " + (position + 1));
+    }
+}
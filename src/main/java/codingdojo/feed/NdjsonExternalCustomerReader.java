@@ -0,0 +1,272 @@
+package codingdojo.feed;
+
+import codingdojo.entities.internal.Address;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.message.ExternalCustomer;
+import codingdojo.entities.message.ExternalCustomerDelta;
+import codingdojo.exceptions.FeedFormatException;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads ExternalCustomer records from a newline delimited JSON feed, one record per line, one at a time.
+ * Only the current line is held in memory, and a line longer than maxRecordLength is rejected, so memory
+ * stays bounded whatever the size of the feed. Blank lines are skipped, unknown fields ignored.
+ * A malformed record throws a FeedFormatException once its whole line is consumed, and counts as read, so the
+ * caller can skip it and go on with the next line.
+ *
+ * {"externalId":"12345","companyNumber":"470813-8895","name":"Acme Inc.","preferredStore":"Nordstan",
+ *  "bonusPointsBalance":1234,"address":{"street":"123 main st","city":"Helsingborg","postalCode":"SE-123 45"},
+ *  "shoppingLists":[{"products":["lipstick","blusher"]}]}
+ *
+ * A record with "delta":true is read as an ExternalCustomerDelta, with only the fields the record has:
+ * {"delta":true,"externalId":"12345","companyNumber":"470813-8895","bonusPointsBalance":1300}
+ */
+public class NdjsonExternalCustomerReader implements ExternalCustomerFeed {
+
+    public static final int DEFAULT_MAX_RECORD_LENGTH = 1 << 20;
+
+    private final CountingInputStream input;
+    private final Reader reader;
+    private final int maxRecordLength;
+    private final StringBuilder line = new StringBuilder();
+    private ExternalCustomer next;
+    private long lineNumber;
+    private long recordsRead;
+
+    public NdjsonExternalCustomerReader(InputStream inputStream) {
+        this(inputStream, DEFAULT_MAX_RECORD_LENGTH);
+    }
+
+    public NdjsonExternalCustomerReader(InputStream inputStream, int maxRecordLength) {
+        this.input = new CountingInputStream(inputStream);
+        this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 64 * 1024);
+        this.maxRecordLength = maxRecordLength;
+    }
+
+    public static NdjsonExternalCustomerReader open(Path file) throws IOException {
+        return new NdjsonExternalCustomerReader(Files.newInputStream(file));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public ExternalCustomer next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ExternalCustomer externalCustomer = next;
+        next = null;
+        return externalCustomer;
+    }
+
+    /**
+     * bytes consumed from the underlying stream, read ahead included
+     */
+    @Override
+    public long getBytesRead() {
+        return input.count;
+    }
+
+    @Override
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private ExternalCustomer readNext() {
+        try {
+            while (readLine()) {
+                if (!isBlank(line)) {
+                    recordsRead++;
+                    return toExternalCustomer(line);
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean readLine() throws IOException {
+        line.setLength(0);
+        int c = reader.read();
+        if (c == -1) {
+            return false;
+        }
+        lineNumber++;
+        while (c != -1 && c != '\n') {
+            if (c != '\r') {
+                if (line.length() == maxRecordLength) {
+                    skipRestOfLine();
+                    recordsRead++;
+                    throw new FeedFormatException("record at line " + lineNumber + " is longer than " + maxRecordLength + " characters");
+                }
+                line.append((char) c);
+            }
+            c = reader.read();
+        }
+        return true;
+    }
+
+    private void skipRestOfLine() throws IOException {
+        int c;
+        do {
+            c = reader.read();
+        } while (c != -1 && c != '\n');
+    }
+
+    private ExternalCustomer toExternalCustomer(CharSequence json) {
+        try {
+            Object value = JsonParser.parse(json);
+            if (!(value instanceof Map)) {
+                throw new FeedFormatException("expected an object");
+            }
+            Map<?, ?> record = (Map<?, ?>) value;
+            if (Boolean.TRUE.equals(record.get("delta"))) {
+                return toDelta(record);
+            }
+            ExternalCustomer externalCustomer = new ExternalCustomer();
+            externalCustomer.setExternalId(string(record, "externalId"));
+            externalCustomer.setCompanyNumber(string(record, "companyNumber"));
+            externalCustomer.setName(string(record, "name"));
+            externalCustomer.setPreferredStore(string(record, "preferredStore"));
+            externalCustomer.setBonusPointsBalance(integer(record, "bonusPointsBalance"));
+            externalCustomer.setAddress(address(record.get("address")));
+            externalCustomer.setShoppingLists(shoppingLists(record.get("shoppingLists")));
+            return externalCustomer;
+        } catch (FeedFormatException | ClassCastException e) {
+            throw new FeedFormatException("invalid record at line " + lineNumber + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static ExternalCustomerDelta toDelta(Map<?, ?> record) {
+        ExternalCustomerDelta delta = new ExternalCustomerDelta(string(record, "externalId"), string(record, "companyNumber"));
+        if (record.containsKey("name")) {
+            delta.setName(string(record, "name"));
+        }
+        if (record.containsKey("preferredStore")) {
+            delta.setPreferredStore(string(record, "preferredStore"));
+        }
+        if (record.containsKey("bonusPointsBalance")) {
+            delta.setBonusPointsBalance(integer(record, "bonusPointsBalance"));
+        }
+        if (record.containsKey("address")) {
+            delta.setAddress(address(record.get("address")));
+        }
+        if (record.containsKey("shoppingLists")) {
+            delta.setShoppingLists(shoppingLists(record.get("shoppingLists")));
+        }
+        return delta;
+    }
+
+    private static Address address(Object value) {
+        if (value == null) {
+            return null;
+        }
+        Map<?, ?> address = (Map<?, ?>) value;
+        return new Address(string(address, "street"), string(address, "city"), string(address, "postalCode"));
+    }
+
+    private static List<ShoppingList> shoppingLists(Object value) {
+        List<ShoppingList> shoppingLists = new ArrayList<>();
+        if (value == null) {
+            return shoppingLists;
+        }
+        for (Object shoppingList : (List<?>) value) {
+            if (shoppingList == null) {
+                throw new FeedFormatException("null shopping list");
+            }
+            List<?> products = (List<?>) ((Map<?, ?>) shoppingList).get("products");
+            String[] names = new String[products == null ? 0 : products.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = (String) products.get(i);
+                if (names[i] == null) {
+                    throw new FeedFormatException("null product in a shopping list");
+                }
+            }
+            shoppingLists.add(new ShoppingList(names));
+        }
+        return shoppingLists;
+    }
+
+    private static String string(Map<?, ?> object, String field) {
+        return (String) object.get(field);
+    }
+
+    private static Integer integer(Map<?, ?> object, String field) {
+        Object value = object.get(field);
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof Long)) {
+            double decimal = ((Number) value).doubleValue();
+            if (decimal != Math.rint(decimal)) {
+                throw new FeedFormatException(field + " is not an integer: " + value);
+            }
+        }
+        long number = ((Number) value).longValue();
+        if (number < Integer.MIN_VALUE || number > Integer.MAX_VALUE) {
+            throw new FeedFormatException(field + " out of range: " + number);
+        }
+        return (int) number;
+    }
+
+    private static boolean isBlank(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package codingdojo.metrics;
+
+/**
+ * Values of a LatencyHistogram at one point in time, in nanoseconds
+ */
+public class HistogramSnapshot {
+    private final long[] buckets;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(long[] buckets, long count, long sum, long max) {
+        this.buckets = buckets;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile, between 0 and 100, capped by the max
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank && seen > 0) {
+                long upperBound = i == 0 ? 0 : (i == 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upperBound, max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", mean=" + Math.round(getMean()) + "ns, p50=" + getPercentile(50)
+                + "ns, p99=" + getPercentile(99) + "ns, max=" + max + "ns";
+    }
+}
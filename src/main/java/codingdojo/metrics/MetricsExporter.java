@@ -0,0 +1,10 @@
+package codingdojo.metrics;
+
+/**
+ * Ships a snapshot of the metrics to a monitoring system, a log, a file...
+ */
+@FunctionalInterface
+public interface MetricsExporter {
+
+    void export(MetricsSnapshot snapshot);
+}
@@ -0,0 +1,37 @@
+package codingdojo.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named timers and counters. Look them up once, when wiring things together, and keep the reference:
+ * recording then never goes through the registry.
+ */
+public class MetricsRegistry {
+
+    private final ConcurrentMap<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    public LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, HistogramSnapshot> timerSnapshots = new TreeMap<>();
+        timers.forEach((name, timer) -> timerSnapshots.put(name, timer.snapshot()));
+        Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+        return new MetricsSnapshot(System.currentTimeMillis(), timerSnapshots, counterValues);
+    }
+
+    public void exportTo(MetricsExporter exporter) {
+        exporter.export(snapshot());
+    }
+}
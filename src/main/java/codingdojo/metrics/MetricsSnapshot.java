@@ -0,0 +1,50 @@
+package codingdojo.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Every timer and counter of a MetricsRegistry at one point in time, sorted by name
+ */
+public class MetricsSnapshot {
+    private final long timestampMillis;
+    private final Map<String, HistogramSnapshot> timers;
+    private final Map<String, Long> counters;
+
+    MetricsSnapshot(long timestampMillis, Map<String, HistogramSnapshot> timers, Map<String, Long> counters) {
+        this.timestampMillis = timestampMillis;
+        this.timers = Collections.unmodifiableMap(timers);
+        this.counters = Collections.unmodifiableMap(counters);
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public Map<String, HistogramSnapshot> getTimers() {
+        return timers;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public HistogramSnapshot getTimer(String name) {
+        return timers.get(name);
+    }
+
+    /**
+     * 0 for a counter that was never registered
+     */
+    public long getCounter(String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        timers.forEach((name, timer) -> sb.append(name).append(": ").append(timer).append('\n'));
+        counters.forEach((name, value) -> sb.append(name).append(": ").append(value).append('\n'));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,168 @@
+package codingdojo.metrics;
+
+import codingdojo.entities.auxiliar.ConflictReason;
+import codingdojo.entities.internal.CustomerMatches;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static codingdojo.entities.auxiliar.Constants.COMPANY_NUMBER;
+import static codingdojo.entities.auxiliar.Constants.EXTERNAL_ID;
+
+/**
+ * The timers and counters of CustomerSync, looked up once in the registry so that recording is lock free.
+ * Phases: match (loading the candidates), rules (validating them), apply (deciding the writes in memory),
+ * write (flushing them), and the whole sync. Contention is counted as the syncs retried after an optimistic lock
+ * failure, and the ones that ran out of attempts. Replays are counted by where they were recognized, the replay
+ * cache or the fingerprint stored on the customer. DISABLED records nothing and doesn't even read the clock.
+ */
+public class SyncMetrics {
+
+    public static final SyncMetrics DISABLED = new SyncMetrics();
+
+    private final boolean enabled;
+    private final LatencyHistogram matchTime;
+    private final LatencyHistogram rulesTime;
+    private final LatencyHistogram applyTime;
+    private final LatencyHistogram writeTime;
+    private final LatencyHistogram syncTime;
+    private final LongAdder created;
+    private final LongAdder updated;
+    private final LongAdder matchedByExternalId;
+    private final LongAdder matchedByCompanyNumber;
+    private final LongAdder notMatched;
+    private final LongAdder duplicates;
+    private final Map<ConflictReason, LongAdder> conflictsByReason;
+    private final LongAdder retries;
+    private final LongAdder retriesExhausted;
+    private final LongAdder replayedFromCache;
+    private final LongAdder replayedFromRecord;
+
+    public SyncMetrics(MetricsRegistry registry) {
+        this.enabled = true;
+        this.matchTime = registry.timer("sync.phase.match");
+        this.rulesTime = registry.timer("sync.phase.rules");
+        this.applyTime = registry.timer("sync.phase.apply");
+        this.writeTime = registry.timer("sync.phase.write");
+        this.syncTime = registry.timer("sync.total");
+        this.created = registry.counter("sync.outcome.created");
+        this.updated = registry.counter("sync.outcome.updated");
+        this.matchedByExternalId = registry.counter("sync.match.externalId");
+        this.matchedByCompanyNumber = registry.counter("sync.match.companyNumber");
+        this.notMatched = registry.counter("sync.match.none");
+        this.duplicates = registry.counter("sync.duplicates");
+        this.conflictsByReason = new EnumMap<>(ConflictReason.class);
+        for (ConflictReason reason : ConflictReason.values()) {
+            conflictsByReason.put(reason, registry.counter("sync.conflict." + reason));
+        }
+        this.retries = registry.counter("sync.contention.retries");
+        this.retriesExhausted = registry.counter("sync.contention.exhausted");
+        this.replayedFromCache = registry.counter("sync.replay.cache");
+        this.replayedFromRecord = registry.counter("sync.replay.record");
+    }
+
+    private SyncMetrics() {
+        this.enabled = false;
+        this.matchTime = null;
+        this.rulesTime = null;
+        this.applyTime = null;
+        this.writeTime = null;
+        this.syncTime = null;
+        this.created = null;
+        this.updated = null;
+        this.matchedByExternalId = null;
+        this.matchedByCompanyNumber = null;
+        this.notMatched = null;
+        this.duplicates = null;
+        this.conflictsByReason = null;
+        this.retries = null;
+        this.retriesExhausted = null;
+        this.replayedFromCache = null;
+        this.replayedFromRecord = null;
+    }
+
+    /**
+     * start time of a phase, to hand back to the method recording it
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void matched(long start) {
+        if (enabled) {
+            matchTime.recordSince(start);
+        }
+    }
+
+    /**
+     * the rules passed: count how the customer was matched, and the duplicates to update along with it
+     */
+    public void rulesChecked(long start, CustomerMatches customerMatches) {
+        if (!enabled) {
+            return;
+        }
+        rulesTime.recordSince(start);
+        if (EXTERNAL_ID.equals(customerMatches.getMatchTerm())) {
+            matchedByExternalId.increment();
+        } else if (COMPANY_NUMBER.equals(customerMatches.getMatchTerm())) {
+            matchedByCompanyNumber.increment();
+        } else {
+            notMatched.increment();
+        }
+        duplicates.add(customerMatches.getDuplicates().size());
+    }
+
+    public void applied(long start) {
+        if (enabled) {
+            applyTime.recordSince(start);
+        }
+    }
+
+    public void written(long start) {
+        if (enabled) {
+            writeTime.recordSince(start);
+        }
+    }
+
+    public void synced(long start, boolean customerCreated) {
+        if (!enabled) {
+            return;
+        }
+        syncTime.recordSince(start);
+        (customerCreated ? created : updated).increment();
+    }
+
+    public void conflict(ConflictReason reason) {
+        if (enabled) {
+            conflictsByReason.get(reason).increment();
+        }
+    }
+
+    /**
+     * the message was already applied, found in the replay cache or, after matching, on the customer
+     */
+    public void replayed(boolean fromCache) {
+        if (enabled) {
+            (fromCache ? replayedFromCache : replayedFromRecord).increment();
+        }
+    }
+
+    /**
+     * a write hit a newer version of a customer, the sync runs again
+     */
+    public void retried() {
+        if (enabled) {
+            retries.increment();
+        }
+    }
+
+    /**
+     * a write hit a newer version of a customer on the last attempt, the sync fails
+     */
+    public void retriesExhausted() {
+        if (enabled) {
+            retriesExhausted.increment();
+        }
+    }
+}
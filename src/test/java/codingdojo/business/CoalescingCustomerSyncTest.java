@@ -0,0 +1,108 @@
+package codingdojo.business;
+
+import codingdojo.business.helpers.FakeDatabase;
+import codingdojo.business.helpers.SynchronizedDatabase;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.internal.SyncResult;
+import codingdojo.entities.message.ExternalCustomer;
+import codingdojo.entities.message.ExternalCustomerDelta;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalPerson;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CoalescingCustomerSyncTest {
+
+    @Test
+    public void messagesForTheSameCustomerAreMergedKeepingAllShoppingLists() {
+        FakeDatabase db = new FakeDatabase();
+        CompletableFuture<SyncResult> first;
+        CompletableFuture<SyncResult> last;
+        try (CoalescingCustomerSync sut = new CoalescingCustomerSync(new CustomerSync(new SynchronizedDatabase(db)), 4, 60_000)) {
+            // ACT
+            first = sut.submit(createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick")));
+            sut.submit(createExternalPerson("67890", "Jane Bloggs", 2233, new ShoppingList("mascara")));
+            sut.submit(createExternalPerson("12345", "Joe B. Bloggs", 2233, new ShoppingList("blusher")));
+            last = sut.submit(createExternalPerson("12345", "Joseph Bloggs", 2233, new ShoppingList("foundation")));
+
+            assertEquals(4, sut.getReceived());
+            assertEquals(2, sut.getCollapsed());
+            assertEquals(1, sut.getWindowsSynced());
+        }
+
+        assertSame(first.join(), last.join());
+        assertTrue(last.join().isCreated());
+        Customer joe = db.findByExternalId("12345");
+        assertEquals("Joseph Bloggs", joe.getName());
+        assertEquals(3, joe.getShoppingLists().size());
+        assertEquals(List.of("foundation"), joe.getShoppingLists().get(2).getProducts());
+        assertNotNull(db.findByExternalId("67890"));
+    }
+
+    @Test
+    public void windowIsSyncedAfterTheDelay() throws Exception {
+        FakeDatabase db = new FakeDatabase();
+        try (CoalescingCustomerSync sut = new CoalescingCustomerSync(new CustomerSync(new SynchronizedDatabase(db)), 100, 10)) {
+            // ACT
+            SyncResult result = sut.submit(createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick"))).get(5, TimeUnit.SECONDS);
+
+            assertTrue(result.isCreated());
+            assertEquals(0, sut.getCollapsed());
+        }
+    }
+
+    @Test
+    public void deltasMergeIntoADeltaOfTheFieldsEitherCarries() {
+        FakeDatabase db = new FakeDatabase();
+        CustomerSync customerSync = new CustomerSync(new SynchronizedDatabase(db));
+        customerSync.sync(createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick")));
+        try (CoalescingCustomerSync sut = new CoalescingCustomerSync(customerSync, 3, 60_000)) {
+            ExternalCustomerDelta bonus = new ExternalCustomerDelta("12345", null);
+            bonus.setBonusPointsBalance(100);
+            ExternalCustomerDelta blusher = new ExternalCustomerDelta("12345", null);
+            blusher.setShoppingLists(List.of(new ShoppingList("blusher")));
+            ExternalCustomerDelta mascara = new ExternalCustomerDelta("12345", null);
+            mascara.setShoppingLists(List.of(new ShoppingList("mascara")));
+
+            // ACT
+            sut.submit(bonus);
+            sut.submit(blusher);
+            sut.submit(mascara).join();
+
+            assertEquals(2, sut.getCollapsed());
+        }
+
+        Customer joe = db.findByExternalId("12345");
+        assertEquals("Joe Bloggs", joe.getName());
+        assertEquals("Nordstan", joe.getPreferredStore());
+        assertEquals("Stockholm", joe.getAddress().getCity());
+        assertEquals(Integer.valueOf(100), joe.getBonusPointsBalance());
+        assertEquals(3, joe.getShoppingLists().size());
+        assertEquals(List.of("mascara"), joe.getShoppingLists().get(2).getProducts());
+    }
+
+    @Test
+    public void deltaOverAFullMessageOnlyReplacesItsFields() {
+        FakeDatabase db = new FakeDatabase();
+        try (CoalescingCustomerSync sut = new CoalescingCustomerSync(new CustomerSync(new SynchronizedDatabase(db)), 2, 60_000)) {
+            ExternalCustomerDelta delta = new ExternalCustomerDelta("12345", null);
+            delta.setPreferredStore("Kista");
+
+            // ACT
+            sut.submit(createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick")));
+            assertTrue(sut.submit(delta).join().isCreated());
+        }
+
+        Customer joe = db.findByExternalId("12345");
+        assertEquals("Joe Bloggs", joe.getName());
+        assertEquals("Kista", joe.getPreferredStore());
+        assertEquals("Stockholm", joe.getAddress().getCity());
+        assertEquals(1, joe.getShoppingLists().size());
+    }
+
+}
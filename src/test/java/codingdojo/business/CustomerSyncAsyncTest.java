@@ -0,0 +1,90 @@
+package codingdojo.business;
+
+import codingdojo.business.helpers.FakeDatabase;
+import codingdojo.business.helpers.SynchronizedDatabase;
+import codingdojo.entities.auxiliar.ConflictReason;
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.auxiliar.SyncOutcome;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.SyncResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalCompany;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerSyncAsyncTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void syncAsyncCreatesNewCompany() {
+        FakeDatabase db = new FakeDatabase();
+        CustomerSync sut = new CustomerSync(new SynchronizedDatabase(db), executor);
+
+        // ACT
+        SyncResult result = sut.syncAsync(createExternalCompany()).join();
+
+        assertTrue(result.isCreated());
+        Customer created = db.findByExternalId("12345");
+        assertEquals("Acme Inc.", created.getName());
+        assertEquals(CustomerType.COMPANY, created.getCustomerType());
+        assertEquals(List.of("lipstick", "blusher"), created.getShoppingLists().get(0).getProducts());
+    }
+
+    @Test
+    public void syncAsyncUpdatesCompanyAndDuplicate() {
+        Customer customer = new Customer();
+        customer.setCustomerType(CustomerType.COMPANY);
+        customer.setCompanyNumber("470813-8895");
+        customer.setInternalId("45435");
+        customer.setExternalId("12345");
+
+        Customer duplicate = new Customer();
+        duplicate.setCustomerType(CustomerType.COMPANY);
+        duplicate.setCompanyNumber("470813-8895");
+        duplicate.setInternalId("45435234");
+        duplicate.setMasterExternalId("12345");
+
+        FakeDatabase db = new FakeDatabase();
+        db.addCustomer(customer);
+        db.addCustomer(duplicate);
+        CustomerSync sut = new CustomerSync(new SynchronizedDatabase(db), executor);
+
+        // ACT
+        SyncResult result = sut.syncAsync(createExternalCompany()).join();
+
+        assertFalse(result.isCreated());
+        assertEquals("Acme Inc.", customer.getName());
+        assertEquals("Acme Inc.", duplicate.getName());
+        assertEquals(1, customer.getShoppingLists().size());
+    }
+
+    @Test
+    public void syncAsyncConflictCompletesWithConflictResult() {
+        Customer person = new Customer();
+        person.setCustomerType(CustomerType.PERSON);
+        person.setInternalId("45435");
+        person.setExternalId("12345");
+
+        FakeDatabase db = new FakeDatabase();
+        db.addCustomer(person);
+        CustomerSync sut = new CustomerSync(new SynchronizedDatabase(db), executor);
+
+        // ACT
+        SyncResult result = sut.syncAsync(createExternalCompany()).join();
+
+        assertEquals(SyncOutcome.CONFLICT, result.getOutcome());
+        assertEquals(ConflictReason.EXISTING_NOT_A_COMPANY, result.getConflict().getReason());
+        assertEquals("45435", result.getConflict().getExistingInternalId());
+    }
+}
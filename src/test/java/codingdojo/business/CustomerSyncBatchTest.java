@@ -0,0 +1,117 @@
+package codingdojo.business;
+
+import codingdojo.business.helpers.FakeDatabase;
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.internal.SyncResult;
+import codingdojo.entities.message.ExternalCustomer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalPerson;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerSyncBatchTest {
+
+    @Test
+    public void syncBatchCreatesAndUpdatesInOrder() {
+        FakeDatabase db = new FakeDatabase();
+        CustomerSync sut = new CustomerSync(db);
+
+        ExternalCustomer first = createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick", "foundation"));
+        ExternalCustomer second = createExternalPerson("12345", "Joe B. Bloggs", 2233, new ShoppingList("lipstick", "foundation"));
+
+        // ACT
+        List<SyncResult> results = sut.syncBatch(List.of(first, second));
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isCreated());
+        assertFalse(results.get(1).isCreated());
+        assertEquals(1, db.getAllCustomers().size());
+        assertEquals("Joe B. Bloggs", db.findByExternalId("12345").getName());
+    }
+
+    @Test
+    public void syncBatchReportsConflictsAndKeepsGoing() {
+        Customer company = new Customer();
+        company.setCustomerType(CustomerType.COMPANY);
+        company.setCompanyNumber("32423-342");
+        company.setInternalId("45435");
+        company.setExternalId("12345");
+
+        FakeDatabase db = new FakeDatabase();
+        db.addCustomer(company);
+        CustomerSync sut = new CustomerSync(db);
+
+        // ACT
+        List<SyncResult> results = sut.syncBatch(List.of(
+                createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick", "foundation")),
+                createExternalPerson("67890", "Jane Bloggs", 2233, new ShoppingList("lipstick", "foundation"))));
+
+        assertTrue(results.get(0).isConflict());
+        assertFalse(results.get(1).isConflict());
+        assertTrue(results.get(1).isCreated());
+    }
+
+    @Test
+    public void syncBatchLooksUpEachKeyOnce() {
+        CountingDatabase db = new CountingDatabase();
+        CustomerSync sut = new CustomerSync(db);
+
+        // ACT
+        sut.syncBatch(List.of(
+                createExternalPerson("1", "Joe Bloggs", 2233, new ShoppingList("lipstick", "foundation")),
+                createExternalPerson("2", "Jane Bloggs", 2233, new ShoppingList("lipstick", "foundation")),
+                createExternalPerson("1", "Joe Bloggs", 2233, new ShoppingList("lipstick", "foundation"))));
+
+        assertEquals(2, db.lookups);
+    }
+
+    @Test
+    public void syncBatchUsesBulkLookups() {
+        CountingDatabase db = new CountingDatabase();
+        CustomerSync sut = new CustomerSync(db);
+
+        // ACT
+        sut.syncBatch(List.of(
+                createExternalPerson("1", "Joe Bloggs", 2233, new ShoppingList("lipstick", "foundation")),
+                createExternalPerson("2", "Jane Bloggs", 2233, new ShoppingList("lipstick", "foundation")),
+                createExternalPerson("3", "Jim Bloggs", 2233, new ShoppingList("lipstick", "foundation"))));
+
+        assertEquals(1, db.bulkLookups);
+    }
+
+
+    private static class CountingDatabase extends FakeDatabase {
+        private int lookups;
+        private int bulkLookups;
+
+        @Override
+        public Map<String, Customer> findByExternalIds(Collection<String> externalIds) {
+            bulkLookups++;
+            return super.findByExternalIds(externalIds);
+        }
+
+        @Override
+        public Customer findByExternalId(String externalId) {
+            lookups++;
+            return super.findByExternalId(externalId);
+        }
+
+        @Override
+        public Customer findByMasterExternalId(String masterExternalId) {
+            lookups++;
+            return super.findByMasterExternalId(masterExternalId);
+        }
+
+        @Override
+        public Customer findByCompanyNumber(String companyNumber) {
+            lookups++;
+            return super.findByCompanyNumber(companyNumber);
+        }
+    }
+}
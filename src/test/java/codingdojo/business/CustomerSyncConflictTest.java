@@ -0,0 +1,58 @@
+package codingdojo.business;
+
+import codingdojo.business.helpers.FakeDatabase;
+import codingdojo.entities.auxiliar.ConflictReason;
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.auxiliar.SyncOutcome;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.SyncResult;
+import codingdojo.exceptions.ConflictException;
+import org.junit.jupiter.api.Test;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalCompany;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerSyncConflictTest {
+
+    @Test
+    public void syncReportsConflictWithoutThrowing() {
+        FakeDatabase db = new FakeDatabase();
+        db.addCustomer(createCompanyOwnedBy("conflicting id"));
+        CustomerSync sut = new CustomerSync(db);
+
+        // ACT
+        SyncResult result = sut.sync(createExternalCompany("45646", "12345"));
+
+        assertEquals(SyncOutcome.CONFLICT, result.getOutcome());
+        assertEquals(ConflictReason.COMPANY_NUMBER_OF_OTHER_EXTERNAL_ID, result.getConflict().getReason());
+        assertEquals("45646", result.getConflict().getExternalId());
+        assertEquals("12345", result.getConflict().getCompanyNumber());
+        assertEquals("45435", result.getConflict().getExistingInternalId());
+        assertEquals("conflicting id", result.getConflict().getExistingExternalId());
+        assertEquals(1, db.getAllCustomers().size());
+    }
+
+    @Test
+    public void syncWithDataLayerThrowsStacklessException() {
+        FakeDatabase db = new FakeDatabase();
+        db.addCustomer(createCompanyOwnedBy("conflicting id"));
+        CustomerSync sut = new CustomerSync(db);
+
+        // ACT
+        ConflictException thrown = assertThrows(ConflictException.class, () -> sut.syncWithDataLayer(createExternalCompany("45646", "12345")));
+
+        assertEquals(0, thrown.getStackTrace().length);
+        assertEquals(ConflictReason.COMPANY_NUMBER_OF_OTHER_EXTERNAL_ID, thrown.getConflict().getReason());
+        assertEquals("Existing customer for externalCustomer 12345 doesn't match external id 45646 instead found conflicting id",
+                thrown.getMessage());
+    }
+
+    private Customer createCompanyOwnedBy(String externalId) {
+        Customer customer = new Customer();
+        customer.setCompanyNumber("12345");
+        customer.setCustomerType(CustomerType.COMPANY);
+        customer.setInternalId("45435");
+        customer.setExternalId(externalId);
+        return customer;
+    }
+}
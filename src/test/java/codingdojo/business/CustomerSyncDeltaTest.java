@@ -0,0 +1,55 @@
+package codingdojo.business;
+
+import codingdojo.data.InMemoryCustomerDataLayer;
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.internal.SyncResult;
+import codingdojo.entities.message.ExternalCustomerDelta;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalCompany;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerSyncDeltaTest {
+
+    @Test
+    public void deltaLeavesAbsentFieldsAlone() {
+        InMemoryCustomerDataLayer db = new InMemoryCustomerDataLayer();
+        CustomerSync sut = new CustomerSync(db);
+        sut.sync(createExternalCompany());
+        ExternalCustomerDelta delta = new ExternalCustomerDelta("12345", "470813-8895");
+        delta.setName("Acme Corporation");
+        delta.setShoppingLists(List.of(new ShoppingList("eyeliner")));
+
+        // ACT
+        SyncResult result = sut.sync(delta);
+
+        assertEquals(EnumSet.of(CustomerField.NAME, CustomerField.SHOPPING_LISTS), result.getChangedFields());
+        Customer customer = db.findByExternalId("12345");
+        assertEquals("Acme Corporation", customer.getName());
+        assertEquals("Helsingborg", customer.getAddress().getCity());
+        assertEquals(2, customer.getShoppingLists().size());
+        assertEquals(List.of("eyeliner"), customer.getShoppingLists().get(1).getProducts());
+    }
+
+    @Test
+    public void deltaClearsAFieldSetToNull() {
+        InMemoryCustomerDataLayer db = new InMemoryCustomerDataLayer();
+        CustomerSync sut = new CustomerSync(db);
+        sut.sync(createExternalCompany());
+        ExternalCustomerDelta delta = new ExternalCustomerDelta("12345", "470813-8895");
+        delta.setAddress(null);
+
+        // ACT
+        sut.sync(delta);
+
+        Customer customer = db.findByExternalId("12345");
+        assertNull(customer.getAddress());
+        assertEquals("Acme Inc.", customer.getName());
+        assertNotEquals(createExternalCompany().getFingerprint(), delta.getFingerprint());
+    }
+}
@@ -0,0 +1,52 @@
+package codingdojo.business;
+
+import codingdojo.business.helpers.FakeDatabase;
+import codingdojo.data.CustomerDataAccess;
+import codingdojo.data.MeteredCustomerDataLayer;
+import codingdojo.entities.auxiliar.ConflictReason;
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.internal.Customer;
+import codingdojo.metrics.MetricsRegistry;
+import codingdojo.metrics.MetricsSnapshot;
+import codingdojo.metrics.SyncMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalCompany;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerSyncMetricsTest {
+
+    @Test
+    public void phasesAndOutcomesAreRecorded() {
+        Customer person = new Customer();
+        person.setCustomerType(CustomerType.PERSON);
+        person.setInternalId("45435");
+        person.setExternalId("67890");
+
+        FakeDatabase db = new FakeDatabase();
+        db.addCustomer(person);
+        MetricsRegistry registry = new MetricsRegistry();
+        CustomerSync sut = new CustomerSync(new CustomerDataAccess(new MeteredCustomerDataLayer(db, registry)), null, new SyncMetrics(registry));
+
+        // ACT
+        sut.sync(createExternalCompany("12345", "470813-8895"));
+        assertTrue(sut.sync(createExternalCompany("67890", "470813-8895")).isConflict());
+
+        List<MetricsSnapshot> exported = new ArrayList<>();
+        registry.exportTo(exported::add);
+        MetricsSnapshot snapshot = exported.get(0);
+        assertEquals(1, snapshot.getCounter("sync.outcome.created"));
+        assertEquals(0, snapshot.getCounter("sync.outcome.updated"));
+        assertEquals(1, snapshot.getCounter("sync.match.none"));
+        assertEquals(1, snapshot.getCounter("sync.conflict." + ConflictReason.EXISTING_NOT_A_COMPANY));
+        assertEquals(2, snapshot.getTimer("sync.phase.match").getCount());
+        assertEquals(1, snapshot.getTimer("sync.phase.rules").getCount());
+        assertEquals(1, snapshot.getTimer("sync.phase.write").getCount());
+        assertEquals(1, snapshot.getTimer("sync.total").getCount());
+        assertEquals(2, snapshot.getTimer("dataLayer.findCompanyCandidates").getCount());
+        assertEquals(1, snapshot.getTimer("dataLayer.flush").getCount());
+    }
+}
@@ -0,0 +1,93 @@
+package codingdojo.business;
+
+import codingdojo.data.CustomerDataAccess;
+import codingdojo.data.InMemoryCustomerDataLayer;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.message.ExternalCustomer;
+import codingdojo.exceptions.OptimisticLockException;
+import codingdojo.metrics.MetricsRegistry;
+import codingdojo.metrics.SyncMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalPerson;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerSyncOptimisticLockTest {
+
+    @Test
+    public void staleWriteIsRetriedOnFreshRecords() {
+        InMemoryCustomerDataLayer db = new InMemoryCustomerDataLayer() {
+            private boolean interfered;
+
+            @Override
+            public void flush(List<Customer> createdCustomers, List<Customer> updatedCustomers, List<ShoppingList> shoppingLists) {
+                if (!interfered && !updatedCustomers.isEmpty()) {
+                    interfered = true;
+                    Customer concurrent = findByExternalId("12345");
+                    concurrent.addShoppingList(new ShoppingList("mascara"));
+                    updateCustomerRecord(concurrent);
+                }
+                super.flush(createdCustomers, updatedCustomers, shoppingLists);
+            }
+        };
+        MetricsRegistry registry = new MetricsRegistry();
+        CustomerSync sut = new CustomerSync(new CustomerDataAccess(db), null, new SyncMetrics(registry));
+        sut.sync(createExternalPerson("12345", "Joe Bloggs", 100, new ShoppingList("lipstick")));
+
+        // ACT
+        sut.sync(createExternalPerson("12345", "Joe Bloggs", 200, new ShoppingList("blusher")));
+
+        Customer customer = db.findByExternalId("12345");
+        assertEquals(Integer.valueOf(200), customer.getBonusPointsBalance());
+        assertEquals(3, customer.getShoppingLists().size());
+        assertTrue(customer.hasShoppingList(new ShoppingList("mascara")));
+        assertEquals(3, customer.getVersion());
+        assertEquals(1, registry.snapshot().getCounter("sync.contention.retries"));
+        assertEquals(0, registry.snapshot().getCounter("sync.contention.exhausted"));
+
+        Customer stale = new Customer();
+        stale.setInternalId(customer.getInternalId());
+        stale.setExternalId("12345");
+        stale.setVersion(2);
+        OptimisticLockException exception = assertThrows(OptimisticLockException.class, () -> db.updateCustomerRecord(stale));
+        assertEquals(3, exception.getStoredVersion());
+    }
+
+    @Test
+    public void concurrentSyncsOfOneCustomerLoseNoUpdate() throws Exception {
+        InMemoryCustomerDataLayer db = new InMemoryCustomerDataLayer();
+        MetricsRegistry registry = new MetricsRegistry();
+        CustomerSync sut = new CustomerSync(new CustomerDataAccess(db), null, new SyncMetrics(registry), 1000);
+        sut.sync(createExternalPerson("12345", "Joe Bloggs", 0));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int writer = 0; writer < 8; writer++) {
+                final int id = writer;
+                // ACT
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        sut.sync(createExternalPerson("12345", "Joe Bloggs", i, new ShoppingList("product " + id + "-" + i)));
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Customer customer = db.findByExternalId("12345");
+        assertEquals(200, customer.getShoppingLists().size());
+        assertEquals(0, registry.snapshot().getCounter("sync.contention.exhausted"));
+    }
+
+}
@@ -0,0 +1,54 @@
+package codingdojo.business;
+
+import codingdojo.data.CustomerDataAccess;
+import codingdojo.data.InMemoryCustomerDataLayer;
+import codingdojo.data.MeteredCustomerDataLayer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.metrics.MetricsRegistry;
+import codingdojo.metrics.MetricsSnapshot;
+import codingdojo.metrics.SyncMetrics;
+import org.junit.jupiter.api.Test;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalCompany;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerSyncReplayTest {
+
+    @Test
+    public void redeliveryIsSkippedBeforeAnyDataLayerCall() {
+        MetricsRegistry registry = new MetricsRegistry();
+        CustomerDataAccess db = new CustomerDataAccess(new MeteredCustomerDataLayer(new InMemoryCustomerDataLayer(), registry));
+        CustomerSync sut = new CustomerSync(db, null, new SyncMetrics(registry), CustomerSync.DEFAULT_MAX_ATTEMPTS,
+                new ReplayCache(1_000));
+        sut.sync(createExternalCompany());
+
+        // ACT
+        assertTrue(sut.sync(createExternalCompany()).isReplayed());
+        assertFalse(sut.sync(createExternalCompany("12345", "470813-8895", "Acme Corporation", new ShoppingList("lipstick", "blusher"))).isReplayed());
+
+        MetricsSnapshot snapshot = registry.snapshot();
+        assertEquals(1, snapshot.getCounter("sync.replay.cache"));
+        assertEquals(2, snapshot.getTimer("dataLayer.findCompanyCandidates").getCount());
+        assertEquals(2, snapshot.getTimer("dataLayer.flush").getCount());
+        assertEquals(createExternalCompany().getFingerprint(), createExternalCompany().getFingerprint());
+        assertNotEquals(createExternalCompany().getFingerprint(), createExternalCompany("12345", "470813-8895", "Acme Corporation", new ShoppingList("lipstick", "blusher")).getFingerprint());
+    }
+
+    @Test
+    public void storedFingerprintCatchesAReplayMissingFromTheCache() {
+        InMemoryCustomerDataLayer inMemory = new InMemoryCustomerDataLayer();
+        new CustomerSync(inMemory).sync(createExternalCompany());
+        MetricsRegistry registry = new MetricsRegistry();
+        CustomerSync sut = new CustomerSync(new CustomerDataAccess(new MeteredCustomerDataLayer(inMemory, registry)), null,
+                new SyncMetrics(registry), CustomerSync.DEFAULT_MAX_ATTEMPTS, null);
+
+        // ACT
+        assertTrue(sut.sync(createExternalCompany()).isReplayed());
+
+        MetricsSnapshot snapshot = registry.snapshot();
+        assertEquals(1, snapshot.getCounter("sync.replay.record"));
+        assertEquals(1, snapshot.getTimer("dataLayer.findCompanyCandidates").getCount());
+        assertEquals(0, snapshot.getTimer("dataLayer.flush").getCount());
+        assertEquals(createExternalCompany().getFingerprint(), inMemory.findByExternalId("12345").getSyncFingerprint());
+    }
+}
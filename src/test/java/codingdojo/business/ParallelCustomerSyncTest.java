@@ -0,0 +1,67 @@
+package codingdojo.business;
+
+import codingdojo.business.helpers.FakeDatabase;
+import codingdojo.business.helpers.SynchronizedDatabase;
+import codingdojo.entities.internal.SyncResult;
+import codingdojo.entities.message.ExternalCustomer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalCompany;
+import static codingdojo.business.helpers.ExternalCustomers.createExternalPerson;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelCustomerSyncTest {
+
+    @Test
+    public void messagesForTheSameKeyKeepTheirOrder() {
+        FakeDatabase db = new FakeDatabase();
+        List<ExternalCustomer> messages = new ArrayList<>();
+        for (int sequence = 0; sequence < 20; sequence++) {
+            for (int key = 0; key < 50; key++) {
+                messages.add(createExternalPerson("person " + key, "Joe Bloggs", sequence));
+            }
+        }
+
+        List<SyncResult> results;
+        SyncThroughputReport report;
+        try (ParallelCustomerSync sut = new ParallelCustomerSync(new CustomerSync(new SynchronizedDatabase(db)), 4, 8)) {
+            // ACT
+            results = sut.syncAll(messages);
+            report = sut.getReport();
+        }
+
+        assertEquals(messages.size(), results.size());
+        assertEquals(50, results.stream().filter(SyncResult::isCreated).count());
+        assertEquals(50, db.getAllCustomers().size());
+        for (int key = 0; key < 50; key++) {
+            assertEquals(Integer.valueOf(19), db.findByExternalId("person " + key).getBonusPointsBalance());
+        }
+        assertEquals(messages.size(), report.getProcessed());
+        assertEquals(50, report.getCreated());
+        assertEquals(0, report.getFailed());
+    }
+
+    @Test
+    public void messageSharingKeysWithTwoMessagesIsSyncedAfterThem() {
+        FakeDatabase db = new FakeDatabase();
+        List<ExternalCustomer> messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            messages.add(createExternalCompany("company " + i, "470813-" + i));
+        }
+        messages.add(createExternalCompany("company 1", "470813-2"));
+
+        List<SyncResult> results;
+        try (ParallelCustomerSync sut = new ParallelCustomerSync(new CustomerSync(new SynchronizedDatabase(db)), 4, 8)) {
+            // ACT
+            results = sut.syncAll(messages);
+        }
+
+        assertTrue(results.get(10).isCreated());
+        assertNull(db.findByCompanyNumber("470813-1").getMasterExternalId());
+        assertEquals("company 1", db.findByCompanyNumber("470813-2").getMasterExternalId());
+    }
+
+}
@@ -0,0 +1,45 @@
+package codingdojo.business.helpers;
+
+import codingdojo.entities.internal.Address;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.message.ExternalCustomer;
+
+import java.util.List;
+
+/**
+ * External customer messages for the tests, companies in Helsingborg, people in Stockholm
+ */
+public class ExternalCustomers {
+
+    private ExternalCustomers() {
+    }
+
+    public static ExternalCustomer createExternalCompany() {
+        return createExternalCompany("12345", "470813-8895");
+    }
+
+    public static ExternalCustomer createExternalCompany(String externalId, String companyNumber) {
+        return createExternalCompany(externalId, companyNumber, "Acme Inc.", new ShoppingList("lipstick", "blusher"));
+    }
+
+    public static ExternalCustomer createExternalCompany(String externalId, String companyNumber, String name, ShoppingList... shoppingLists) {
+        ExternalCustomer externalCustomer = new ExternalCustomer();
+        externalCustomer.setExternalId(externalId);
+        externalCustomer.setName(name);
+        externalCustomer.setAddress(new Address("123 main st", "Helsingborg", "SE-123 45"));
+        externalCustomer.setCompanyNumber(companyNumber);
+        externalCustomer.setShoppingLists(List.of(shoppingLists));
+        return externalCustomer;
+    }
+
+    public static ExternalCustomer createExternalPerson(String externalId, String name, int bonusPointsBalance, ShoppingList... shoppingLists) {
+        ExternalCustomer externalCustomer = new ExternalCustomer();
+        externalCustomer.setExternalId(externalId);
+        externalCustomer.setName(name);
+        externalCustomer.setPreferredStore("Nordstan");
+        externalCustomer.setBonusPointsBalance(bonusPointsBalance);
+        externalCustomer.setAddress(new Address("123 main st", "Stockholm", "SE-123 45"));
+        externalCustomer.setShoppingLists(List.of(shoppingLists));
+        return externalCustomer;
+    }
+}
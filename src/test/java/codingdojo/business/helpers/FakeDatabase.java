@@ -1,6 +1,7 @@
 package codingdojo.business.helpers;
 
 import codingdojo.data.CustomerDataLayer;
+import codingdojo.entities.internal.CompanyCandidates;
 import codingdojo.entities.internal.Customer;
 import codingdojo.entities.internal.ShoppingList;
 
@@ -66,6 +67,11 @@ public class FakeDatabase implements CustomerDataLayer {
         return this.customersByCompanyNumber.get(companyNumber);
     }
 
+    @Override
+    public CompanyCandidates findCompanyCandidates(String externalId, String companyNumber) {
+        return new CompanyCandidates(findByExternalId(externalId), findByMasterExternalId(externalId), findByCompanyNumber(companyNumber));
+    }
+
     public List<Customer> getAllCustomers() {
         Set<Customer> allCustomers = new HashSet<Customer>(customersByExternalId.values());
         allCustomers.addAll(customersByMasterExternalId.values());
@@ -0,0 +1,49 @@
+package codingdojo.business.helpers;
+
+import codingdojo.data.CustomerDataLayer;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+
+/**
+ * Serializes the calls to a FakeDatabase, which is not thread safe, and gives each created customer its
+ * externalId as internalId so they can be told apart
+ */
+public class SynchronizedDatabase implements CustomerDataLayer {
+    private final FakeDatabase db;
+
+    public SynchronizedDatabase(FakeDatabase db) {
+        this.db = db;
+    }
+
+    @Override
+    public synchronized Customer updateCustomerRecord(Customer customer) {
+        return db.updateCustomerRecord(customer);
+    }
+
+    @Override
+    public synchronized Customer createCustomerRecord(Customer customer) {
+        Customer created = db.createCustomerRecord(customer);
+        created.setInternalId(customer.getExternalId());
+        return created;
+    }
+
+    @Override
+    public synchronized void updateShoppingList(ShoppingList consumerShoppingList) {
+        db.updateShoppingList(consumerShoppingList);
+    }
+
+    @Override
+    public synchronized Customer findByExternalId(String externalId) {
+        return db.findByExternalId(externalId);
+    }
+
+    @Override
+    public synchronized Customer findByMasterExternalId(String externalId) {
+        return db.findByMasterExternalId(externalId);
+    }
+
+    @Override
+    public synchronized Customer findByCompanyNumber(String companyNumber) {
+        return db.findByCompanyNumber(companyNumber);
+    }
+}
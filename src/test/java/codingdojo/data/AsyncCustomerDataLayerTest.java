@@ -0,0 +1,157 @@
+package codingdojo.data;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncCustomerDataLayerTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void flushRunsAtMostMaxConcurrentWrites() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        InMemoryCustomerDataLayer db = new InMemoryCustomerDataLayer() {
+            @Override
+            public void updateShoppingList(ShoppingList consumerShoppingList) {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.updateShoppingList(consumerShoppingList);
+                running.decrementAndGet();
+            }
+        };
+        AsyncCustomerDataLayer sut = new PerRecordLayer(AsyncCustomerDataLayer.wrap(db, executor), 2);
+        List<ShoppingList> shoppingLists = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            shoppingLists.add(new ShoppingList("lipstick " + i));
+        }
+
+        // ACT
+        sut.flush(Collections.emptyList(), Collections.emptyList(), shoppingLists).join();
+
+        assertTrue(mostRunning.get() <= 2);
+        for (ShoppingList shoppingList : shoppingLists) {
+            assertTrue(db.containsShoppingList(shoppingList.getContentHash()));
+        }
+    }
+
+    @Test
+    public void flushWritesOnlyTheChangedFieldsOfUpdatedCustomers() {
+        List<Set<CustomerField>> writtenFields = new ArrayList<>();
+        InMemoryCustomerDataLayer db = new InMemoryCustomerDataLayer() {
+            @Override
+            public Customer updateCustomerFields(Customer customer, Set<CustomerField> changedFields) {
+                writtenFields.add(changedFields);
+                return super.updateCustomerFields(customer, changedFields);
+            }
+        };
+        Customer customer = new Customer();
+        customer.setExternalId("12345");
+        customer.setCustomerType(CustomerType.COMPANY);
+        customer.setName("Acme Inc.");
+        db.createCustomerRecord(customer);
+        Customer loaded = db.findByExternalId("12345");
+        loaded.setName("Acme Corporation");
+        AsyncCustomerDataLayer sut = AsyncCustomerDataLayer.wrap(db, executor);
+
+        // ACT
+        sut.flush(Collections.emptyList(), List.of(loaded), Collections.emptyList()).join();
+
+        assertEquals(List.of(Set.of(CustomerField.NAME)), writtenFields);
+        assertEquals("Acme Corporation", db.findByExternalId("12345").getName());
+    }
+
+    @Test
+    public void wrappedLayerFlushesTheUnitOfWorkItself() {
+        List<Integer> flushedRecords = new ArrayList<>();
+        InMemoryCustomerDataLayer db = new InMemoryCustomerDataLayer() {
+            @Override
+            public void flush(List<Customer> createdCustomers, List<Customer> updatedCustomers, List<ShoppingList> shoppingLists) {
+                flushedRecords.add(createdCustomers.size() + updatedCustomers.size() + shoppingLists.size());
+                super.flush(createdCustomers, updatedCustomers, shoppingLists);
+            }
+        };
+        Customer customer = new Customer();
+        customer.setExternalId("12345");
+        customer.setCustomerType(CustomerType.COMPANY);
+        AsyncCustomerDataLayer sut = AsyncCustomerDataLayer.wrap(db, executor);
+
+        // ACT
+        sut.flush(List.of(customer), Collections.emptyList(), List.of(new ShoppingList("lipstick"))).join();
+
+        assertEquals(List.of(2), flushedRecords);
+        assertEquals(customer.getInternalId(), db.findByExternalId("12345").getInternalId());
+    }
+
+    /**
+     * an async layer without a flush of its own, so that flush splits into a write per record
+     */
+    private static class PerRecordLayer implements AsyncCustomerDataLayer {
+        private final AsyncCustomerDataLayer delegate;
+        private final int maxConcurrentWrites;
+
+        PerRecordLayer(AsyncCustomerDataLayer delegate, int maxConcurrentWrites) {
+            this.delegate = delegate;
+            this.maxConcurrentWrites = maxConcurrentWrites;
+        }
+
+        @Override
+        public CompletableFuture<Customer> updateCustomerRecord(Customer customer) {
+            return delegate.updateCustomerRecord(customer);
+        }
+
+        @Override
+        public CompletableFuture<Customer> createCustomerRecord(Customer customer) {
+            return delegate.createCustomerRecord(customer);
+        }
+
+        @Override
+        public CompletableFuture<Void> updateShoppingList(ShoppingList consumerShoppingList) {
+            return delegate.updateShoppingList(consumerShoppingList);
+        }
+
+        @Override
+        public CompletableFuture<Customer> findByExternalId(String externalId) {
+            return delegate.findByExternalId(externalId);
+        }
+
+        @Override
+        public CompletableFuture<Customer> findByMasterExternalId(String externalId) {
+            return delegate.findByMasterExternalId(externalId);
+        }
+
+        @Override
+        public CompletableFuture<Customer> findByCompanyNumber(String companyNumber) {
+            return delegate.findByCompanyNumber(companyNumber);
+        }
+
+        @Override
+        public int maxConcurrentWrites() {
+            return maxConcurrentWrites;
+        }
+    }
+}
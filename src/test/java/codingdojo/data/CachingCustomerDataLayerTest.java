@@ -0,0 +1,125 @@
+package codingdojo.data;
+
+import codingdojo.business.helpers.FakeDatabase;
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.internal.Customer;
+import codingdojo.exceptions.DataAccessException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingCustomerDataLayerTest {
+
+    @Test
+    public void lookupsAreCachedIncludingNotFound() {
+        FakeDatabase db = new FakeDatabase();
+        db.addCustomer(createCompany("12345", "470813-8895"));
+        CachingCustomerDataLayer sut = new CachingCustomerDataLayer(db, 100);
+
+        Customer first = sut.findByExternalId("12345");
+        Customer second = sut.findByExternalId("12345");
+        assertNull(sut.findByCompanyNumber("000-3234"));
+        assertNull(sut.findByCompanyNumber("000-3234"));
+
+        assertNotSame(first, second);
+        assertEquals(first.getInternalId(), second.getInternalId());
+        CacheStats stats = sut.getStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(2, stats.getMisses());
+    }
+
+    @Test
+    public void updateDropsTheKeysTheRecordNoLongerHas() {
+        Customer customer = createCompany("12345", "470813-8895");
+        customer.setMasterExternalId("12345");
+        FakeDatabase db = new FakeDatabase();
+        db.addCustomer(customer);
+        CachingCustomerDataLayer sut = new CachingCustomerDataLayer(db, 100);
+        assertNotNull(sut.findByMasterExternalId("12345"));
+
+        Customer updated = new Customer();
+        updated.setInternalId(customer.getInternalId());
+        updated.setExternalId("12345");
+        updated.setCompanyNumber("470813-8895");
+        sut.updateCustomerRecord(updated);
+
+        sut.findByMasterExternalId("12345");
+        assertNull(sut.findByCompanyNumber("470813-8895").getMasterExternalId());
+        CacheStats stats = sut.getStats();
+        assertEquals(2, stats.getMisses());
+        assertEquals(1, stats.getHits());
+    }
+
+    @Test
+    public void createRefreshesCachedNotFound() {
+        FakeDatabase db = new FakeDatabase();
+        CachingCustomerDataLayer sut = new CachingCustomerDataLayer(db, 100);
+        assertNull(sut.findByExternalId("12345"));
+
+        Customer created = sut.createCustomerRecord(createCompany("12345", "470813-8895"));
+
+        assertEquals(created.getInternalId(), sut.findByExternalId("12345").getInternalId());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() {
+        FakeDatabase db = new FakeDatabase();
+        CachingCustomerDataLayer sut = new CachingCustomerDataLayer(db, 2);
+
+        sut.findByExternalId("1");
+        sut.findByExternalId("2");
+        sut.findByExternalId("1");
+        sut.findByExternalId("3");
+        sut.findByExternalId("1");
+
+        CacheStats stats = sut.getStats();
+        assertEquals(1, stats.getEvictions());
+        assertEquals(2, stats.getHits());
+        assertEquals(2, stats.getSize());
+    }
+
+    @Test
+    public void changesToACustomerFoundStayOutOfTheCache() {
+        FakeDatabase db = new FakeDatabase();
+        Customer stored = createCompany("12345", "470813-8895");
+        stored.setName("Alice");
+        db.addCustomer(stored);
+        CachingCustomerDataLayer sut = new CachingCustomerDataLayer(db, 100);
+        sut.findByExternalId("12345");
+
+        Customer customer = sut.findByExternalId("12345");
+        customer.setName("Bob");
+
+        assertEquals("Alice", sut.findByExternalId("12345").getName());
+    }
+
+    @Test
+    public void failedWriteDropsTheKeysOfTheCustomer() {
+        Customer stored = createCompany("12345", "470813-8895");
+        stored.setName("Alice");
+        InMemoryCustomerDataLayer db = new InMemoryCustomerDataLayer() {
+            @Override
+            public Customer updateCustomerRecord(Customer customer) {
+                throw new DataAccessException("connection lost");
+            }
+        };
+        db.createCustomerRecord(stored);
+        CachingCustomerDataLayer sut = new CachingCustomerDataLayer(db, 100);
+        Customer customer = sut.findByExternalId("12345");
+        customer.setName("Bob");
+
+        assertThrows(DataAccessException.class, () -> sut.updateCustomerRecord(customer));
+
+        assertEquals("Alice", sut.findByExternalId("12345").getName());
+        assertEquals(2, sut.getStats().getMisses());
+    }
+
+    private Customer createCompany(String externalId, String companyNumber) {
+        Customer customer = new Customer();
+        customer.setCustomerType(CustomerType.COMPANY);
+        customer.setInternalId("45435");
+        customer.setExternalId(externalId);
+        customer.setCompanyNumber(companyNumber);
+        return customer;
+    }
+}
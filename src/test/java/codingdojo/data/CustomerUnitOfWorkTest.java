@@ -0,0 +1,181 @@
+package codingdojo.data;
+
+import codingdojo.business.CustomerSync;
+import codingdojo.business.helpers.FakeDatabase;
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.internal.Address;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.internal.SyncResult;
+import codingdojo.entities.message.ExternalCustomer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalPerson;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerUnitOfWorkTest {
+
+    @Test
+    public void customerWithManyShoppingListsIsWrittenOnce() {
+        Customer customer = new Customer();
+        customer.setCustomerType(CustomerType.PERSON);
+        customer.setInternalId("67576");
+        customer.setExternalId("12345");
+
+        CountingDatabase db = new CountingDatabase();
+        db.addCustomer(customer);
+        CustomerSync sut = new CustomerSync(db);
+
+        List<ShoppingList> shoppingLists = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            shoppingLists.add(new ShoppingList("lipstick " + i));
+        }
+        ExternalCustomer externalCustomer = createExternalPerson("12345", "Joe Bloggs", 2233, shoppingLists.toArray(new ShoppingList[0]));
+
+        // ACT
+        sut.syncWithDataLayer(externalCustomer);
+
+        assertEquals(1, db.flushes);
+        assertEquals(1, db.updates);
+        assertEquals(0, db.creates);
+        assertEquals(20, db.shoppingListWrites);
+        assertEquals(20, customer.getShoppingLists().size());
+    }
+
+    @Test
+    public void newCustomerIsOnlyCreated() {
+        CountingDatabase db = new CountingDatabase();
+        CustomerSync sut = new CustomerSync(db);
+
+        // ACT
+        boolean created = sut.syncWithDataLayer(createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick", "foundation")));
+
+        assertTrue(created);
+        assertEquals(1, db.creates);
+        assertEquals(0, db.updates);
+        assertEquals("fake internalId", db.findByExternalId("12345").getInternalId());
+    }
+
+    @Test
+    public void unchangedCustomerIsNotWritten() {
+        CountingDatabase db = new CountingDatabase();
+        CustomerSync sut = new CustomerSync(db);
+        sut.syncWithDataLayer(createExternalPerson("12345", "Joe Bloggs", 2233));
+
+        // ACT
+        SyncResult result = sut.sync(createExternalPerson("12345", "Joe Bloggs", 2233));
+
+        assertFalse(result.isCreated());
+        assertFalse(result.hasChanges());
+        assertEquals(0, db.updates);
+    }
+
+    @Test
+    public void changedFieldsAreReported() {
+        CountingDatabase db = new CountingDatabase();
+        CustomerSync sut = new CustomerSync(db);
+        sut.syncWithDataLayer(createExternalPerson("12345", "Joe Bloggs", 2233));
+
+        ExternalCustomer externalCustomer = createExternalPerson("12345", "Joe Bloggs", 2233);
+        externalCustomer.setBonusPointsBalance(3344);
+        externalCustomer.setAddress(new Address("456 main st", "Stockholm", "SE-123 45"));
+
+        // ACT
+        SyncResult result = sut.sync(externalCustomer);
+
+        assertEquals(Set.of(CustomerField.BONUS_POINTS_BALANCE, CustomerField.ADDRESS), result.getChangedFields());
+        assertEquals(1, db.updates);
+    }
+
+    @Test
+    public void shoppingListsTheCustomerHoldsAreSkipped() {
+        CountingDatabase db = new CountingDatabase();
+        CustomerSync sut = new CustomerSync(db);
+        sut.syncWithDataLayer(createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick", "foundation")));
+
+        // ACT
+        SyncResult result = sut.sync(createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick", "foundation")));
+
+        assertFalse(result.hasChanges());
+        assertEquals(0, db.updates);
+        assertEquals(1, db.shoppingListWrites);
+        assertEquals(1, db.findByExternalId("12345").getShoppingLists().size());
+    }
+
+    @Test
+    public void shoppingListsAlreadyStoredAreNotSentAgain() {
+        CountingDatabase db = new CountingDatabase();
+        CustomerSync sut = new CustomerSync(db);
+        sut.syncWithDataLayer(createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick", "foundation")));
+
+        ExternalCustomer otherPerson = createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick", "foundation"));
+        otherPerson.setExternalId("67890");
+
+        // ACT
+        sut.syncWithDataLayer(otherPerson);
+
+        assertEquals(1, db.shoppingListWrites);
+        assertEquals(1, db.findByExternalId("67890").getShoppingLists().size());
+    }
+
+    @Test
+    public void shoppingListsAlreadyStoredAreNotSentAgainByAnAsyncFlush() {
+        CountingDatabase db = new CountingDatabase();
+        CustomerSync sut = new CustomerSync(db, Runnable::run);
+        sut.syncAsync(createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick", "foundation"))).join();
+
+        ExternalCustomer otherPerson = createExternalPerson("12345", "Joe Bloggs", 2233, new ShoppingList("lipstick", "foundation"));
+        otherPerson.setExternalId("67890");
+
+        // ACT
+        sut.syncAsync(otherPerson).join();
+
+        assertEquals(1, db.shoppingListWrites);
+        assertEquals(1, db.findByExternalId("67890").getShoppingLists().size());
+    }
+
+
+    private static class CountingDatabase extends FakeDatabase {
+        private int flushes;
+        private int creates;
+        private int updates;
+        private int shoppingListWrites;
+        private final Set<Long> storedShoppingLists = new HashSet<>();
+
+        @Override
+        public void flush(List<Customer> createdCustomers, List<Customer> updatedCustomers, List<ShoppingList> shoppingLists) {
+            flushes++;
+            super.flush(createdCustomers, updatedCustomers, shoppingLists);
+        }
+
+        @Override
+        public Customer createCustomerRecord(Customer customer) {
+            creates++;
+            return super.createCustomerRecord(customer);
+        }
+
+        @Override
+        public Customer updateCustomerRecord(Customer customer) {
+            updates++;
+            return super.updateCustomerRecord(customer);
+        }
+
+        @Override
+        public void updateShoppingList(ShoppingList consumerShoppingList) {
+            shoppingListWrites++;
+            storedShoppingLists.add(consumerShoppingList.getContentHash());
+            super.updateShoppingList(consumerShoppingList);
+        }
+
+        @Override
+        public boolean containsShoppingList(long contentHash) {
+            return storedShoppingLists.contains(contentHash);
+        }
+    }
+}
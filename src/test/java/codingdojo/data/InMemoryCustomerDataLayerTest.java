@@ -0,0 +1,123 @@
+package codingdojo.data;
+
+import codingdojo.business.CustomerSync;
+import codingdojo.business.ParallelCustomerSync;
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.SyncResult;
+import codingdojo.entities.message.ExternalCustomer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryCustomerDataLayerTest {
+
+    @Test
+    public void keysAnUpdateDropsAreNoLongerFound() {
+        InMemoryCustomerDataLayer db = new InMemoryCustomerDataLayer();
+        Customer duplicate = new Customer();
+        duplicate.setCustomerType(CustomerType.COMPANY);
+        duplicate.setExternalId("12345");
+        duplicate.setMasterExternalId("12345");
+        duplicate.setCompanyNumber("32423-342");
+        db.createCustomerRecord(duplicate);
+
+        Customer loaded = db.findByMasterExternalId("12345");
+        loaded.setMasterExternalId(null);
+        loaded.setCompanyNumber("32423-343");
+        loaded.setName("not stored yet");
+
+        // ACT
+        db.updateCustomerRecord(loaded);
+
+        assertNull(db.findByMasterExternalId("12345"));
+        assertNull(db.findByCompanyNumber("32423-342"));
+        assertEquals(duplicate.getInternalId(), db.findByCompanyNumber("32423-343").getInternalId());
+        assertEquals(1, db.getCustomerCount());
+        loaded.setName("changed after the update");
+        assertEquals("not stored yet", db.findByExternalId("12345").getName());
+    }
+
+    @Test
+    public void sharedKeyIsFoundOnTheOtherHolderOnceOneDropsIt() {
+        InMemoryCustomerDataLayer db = new InMemoryCustomerDataLayer();
+        Customer first = new Customer();
+        first.setCustomerType(CustomerType.PERSON);
+        first.setExternalId("first");
+        first.setMasterExternalId("shared");
+        db.createCustomerRecord(first);
+        Customer second = new Customer();
+        second.setCustomerType(CustomerType.PERSON);
+        second.setExternalId("second");
+        second.setMasterExternalId("shared");
+        db.createCustomerRecord(second);
+        assertEquals(second.getInternalId(), db.findByMasterExternalId("shared").getInternalId());
+
+        Customer loaded = db.findByExternalId("second");
+        loaded.setMasterExternalId(null);
+
+        // ACT
+        db.updateCustomerRecord(loaded);
+
+        assertEquals(first.getInternalId(), db.findByMasterExternalId("shared").getInternalId());
+    }
+
+    @Test
+    public void parallelSyncsCreateOneCustomerPerKey() {
+        InMemoryCustomerDataLayer db = new InMemoryCustomerDataLayer();
+        List<ExternalCustomer> messages = new ArrayList<>();
+        for (int sequence = 0; sequence < 10; sequence++) {
+            for (int key = 0; key < 200; key++) {
+                ExternalCustomer person = new ExternalCustomer();
+                person.setExternalId("person " + key);
+                person.setName("Joe Bloggs");
+                person.setBonusPointsBalance(sequence);
+                person.setShoppingLists(List.of());
+                messages.add(person);
+            }
+        }
+
+        List<SyncResult> results;
+        try (ParallelCustomerSync sut = new ParallelCustomerSync(new CustomerSync(db), 8, 16)) {
+            // ACT
+            results = sut.syncAll(messages);
+        }
+
+        assertEquals(200, results.stream().filter(SyncResult::isCreated).count());
+        assertEquals(200, db.getCustomerCount());
+        Set<String> internalIds = new HashSet<>();
+        for (int key = 0; key < 200; key++) {
+            Customer customer = db.findByExternalId("person " + key);
+            assertEquals(Integer.valueOf(9), customer.getBonusPointsBalance());
+            internalIds.add(customer.getInternalId());
+        }
+        assertEquals(200, internalIds.size());
+    }
+
+    @Test
+    public void creatingAStoredInternalIdFailsAndKeepsTheRecord() {
+        InMemoryCustomerDataLayer db = new InMemoryCustomerDataLayer();
+        Customer stored = new Customer();
+        stored.setCustomerType(CustomerType.COMPANY);
+        stored.setExternalId("12345");
+        stored.setCompanyNumber("470813-8895");
+        db.createCustomerRecord(stored);
+        db.updateCustomerRecord(db.findByExternalId("12345"));
+        Customer duplicate = new Customer();
+        duplicate.setCustomerType(CustomerType.COMPANY);
+        duplicate.setInternalId(stored.getInternalId());
+        duplicate.setExternalId("67890");
+
+        // ACT
+        assertThrows(IllegalArgumentException.class, () -> db.createCustomerRecord(duplicate));
+
+        assertEquals(2, db.findByExternalId("12345").getVersion());
+        assertEquals(stored.getInternalId(), db.findByCompanyNumber("470813-8895").getInternalId());
+        assertNull(db.findByExternalId("67890"));
+    }
+}
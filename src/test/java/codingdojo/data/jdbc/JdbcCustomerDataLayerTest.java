@@ -0,0 +1,179 @@
+package codingdojo.data.jdbc;
+
+import codingdojo.business.CustomerSync;
+import codingdojo.entities.internal.CompanyCandidates;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.message.ExternalCustomer;
+import codingdojo.exceptions.DataAccessException;
+import codingdojo.exceptions.OptimisticLockException;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalCompany;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JdbcCustomerDataLayerTest {
+
+    @Test
+    public void syncCreatesAndUpdatesCustomerRows() {
+        try (ConnectionPool pool = createPool()) {
+            JdbcCustomerDataLayer db = new JdbcCustomerDataLayer(pool);
+            db.createSchema();
+            CustomerSync sync = new CustomerSync(db);
+            sync.syncWithDataLayer(createExternalCompany("12345", "470813-8895", "Acme Inc.", new ShoppingList("lipstick", "blusher")));
+
+            // ACT
+            sync.syncWithDataLayer(createExternalCompany("12345", "470813-8895", "Acme Corporation", new ShoppingList("eyeliner")));
+
+            Customer customer = db.findByExternalId("12345");
+            assertEquals("Acme Corporation", customer.getName());
+            assertEquals("Helsingborg", customer.getAddress().getCity());
+            assertEquals(2, customer.getShoppingLists().size());
+            assertEquals(List.of("lipstick", "blusher"), customer.getShoppingLists().get(0).getProducts());
+            assertFalse(customer.hasChanges());
+            assertTrue(db.containsShoppingList(new ShoppingList("eyeliner").getContentHash()));
+            assertEquals(Set.of(new ShoppingList("eyeliner").getContentHash()), db.containsShoppingLists(
+                    List.of(new ShoppingList("eyeliner").getContentHash(), new ShoppingList("mascara").getContentHash())));
+            CompanyCandidates candidates = db.findCompanyCandidates("12345", "470813-8895");
+            assertEquals(customer.getInternalId(), candidates.getByExternalId().getInternalId());
+            assertEquals(customer.getInternalId(), candidates.getByCompanyNumber().getInternalId());
+            assertEquals(customer.getInternalId(), candidates.getByMasterExternalId().getInternalId());
+        }
+    }
+
+    @Test
+    public void batchIsWrittenAndFoundByItsKeys() {
+        try (ConnectionPool pool = createPool()) {
+            JdbcCustomerDataLayer db = new JdbcCustomerDataLayer(pool);
+            db.createSchema();
+            List<ExternalCustomer> messages = new ArrayList<>();
+            List<String> externalIds = new ArrayList<>();
+            for (int i = 0; i < 250; i++) {
+                messages.add(createExternalCompany("company " + i, "470813-" + i, "Acme " + i, new ShoppingList("lipstick")));
+                externalIds.add("company " + i);
+            }
+
+            // ACT
+            new CustomerSync(db).syncBatch(messages);
+
+            Map<String, Customer> customers = db.findByExternalIds(externalIds);
+            assertEquals(250, customers.size());
+            assertEquals("Acme 199", customers.get("company 199").getName());
+            assertEquals(List.of("lipstick"), customers.get("company 0").getShoppingLists().get(0).getProducts());
+            assertEquals("company 42", db.findByCompanyNumber("470813-42").getExternalId());
+        }
+    }
+
+    @Test
+    public void staleUpdateRollsTheFlushBack() {
+        try (ConnectionPool pool = createPool()) {
+            JdbcCustomerDataLayer db = new JdbcCustomerDataLayer(pool);
+            db.createSchema();
+            new CustomerSync(db).syncWithDataLayer(createExternalCompany("12345", "470813-8895", "Acme Inc.", new ShoppingList("lipstick")));
+            Customer first = db.findByExternalId("12345");
+            Customer second = db.findByExternalId("12345");
+            first.setName("Acme Corporation");
+            db.updateCustomerRecord(first);
+            Customer created = new Customer();
+            created.setExternalId("67890");
+            second.setName("Acme Holding");
+
+            // ACT
+            assertThrows(OptimisticLockException.class,
+                    () -> db.flush(List.of(created), List.of(second), List.of()));
+
+            assertEquals(2, db.findByExternalId("12345").getVersion());
+            assertEquals("Acme Corporation", db.findByExternalId("12345").getName());
+            assertNull(db.findByExternalId("67890"));
+        }
+    }
+
+    @Test
+    public void deltaUpdateOnlySetsTheChangedColumns() throws SQLException {
+        try (ConnectionPool pool = createPool()) {
+            JdbcCustomerDataLayer db = new JdbcCustomerDataLayer(pool);
+            db.createSchema();
+            new CustomerSync(db).syncWithDataLayer(createExternalCompany("12345", "470813-8895", "Acme Inc.", new ShoppingList("lipstick")));
+            Customer customer = db.findByExternalId("12345");
+            Connection connection = pool.acquire();
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("UPDATE customer SET city = 'Malmö' WHERE internal_id = '" + customer.getInternalId() + "'");
+                statement.executeUpdate("UPDATE customer_shopping_list SET products = 'blusher' WHERE internal_id = '"
+                        + customer.getInternalId() + "' AND position = 0");
+            } finally {
+                pool.release(connection);
+            }
+            customer.setName("Acme Corporation");
+            customer.addShoppingList(new ShoppingList("eyeliner"));
+
+            // ACT
+            db.flush(List.of(), List.of(customer), List.of());
+
+            Customer stored = db.findByExternalId("12345");
+            assertEquals("Acme Corporation", stored.getName());
+            assertEquals("Malmö", stored.getAddress().getCity());
+            assertEquals(List.of("blusher"), stored.getShoppingLists().get(0).getProducts());
+            assertEquals(List.of("eyeliner"), stored.getShoppingLists().get(1).getProducts());
+            assertEquals(2, stored.getVersion());
+        }
+    }
+
+    @Test
+    public void batchIsWrittenInOneTransaction() {
+        try (ConnectionPool pool = createPool()) {
+            JdbcCustomerDataLayer db = new JdbcCustomerDataLayer(pool);
+            db.createSchema();
+            new CustomerSync(db).syncWithDataLayer(createExternalCompany("12345", "470813-8895", "Acme Inc.", new ShoppingList("lipstick")));
+            List<Customer> created = new ArrayList<>();
+            for (int i = 0; i < 250; i++) {
+                Customer customer = new Customer();
+                customer.setExternalId("company " + i);
+                customer.setName("Acme " + i);
+                created.add(customer);
+            }
+            created.get(199).setInternalId(db.findByExternalId("12345").getInternalId());
+
+            // ACT
+            assertThrows(DataAccessException.class, () -> db.flush(created, List.of(), List.of(new ShoppingList("mascara"))));
+
+            assertNull(db.findByExternalId("company 0"));
+            assertNull(db.findByExternalId("company 249"));
+            assertFalse(db.containsShoppingList(new ShoppingList("mascara").getContentHash()));
+            assertEquals("Acme Inc.", db.findByExternalId("12345").getName());
+        }
+    }
+
+    @Test
+    public void createDoesNotOverwriteAnExistingRow() {
+        try (ConnectionPool pool = createPool()) {
+            JdbcCustomerDataLayer db = new JdbcCustomerDataLayer(pool);
+            db.createSchema();
+            new CustomerSync(db).syncWithDataLayer(createExternalCompany("12345", "470813-8895", "Acme Inc.", new ShoppingList("lipstick")));
+            Customer stored = db.findByExternalId("12345");
+            stored.setName("Acme Corporation");
+            db.updateCustomerRecord(stored);
+            Customer duplicate = new Customer();
+            duplicate.setInternalId(stored.getInternalId());
+            duplicate.setExternalId("67890");
+
+            // ACT
+            assertThrows(DataAccessException.class, () -> db.createCustomerRecord(duplicate));
+
+            assertEquals(2, db.findByExternalId("12345").getVersion());
+            assertNull(db.findByExternalId("67890"));
+        }
+    }
+
+    private static ConnectionPool createPool() {
+        return new ConnectionPool("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "", 4);
+    }
+}
@@ -0,0 +1,78 @@
+package codingdojo.data.journal;
+
+import codingdojo.business.CustomerSync;
+import codingdojo.business.ParallelCustomerSync;
+import codingdojo.data.InMemoryCustomerDataLayer;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.message.ExternalCustomer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalCompany;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournaledCustomerDataLayerTest {
+
+    @Test
+    public void replayRebuildsTheStoreAndIgnoresATornEntry() throws IOException {
+        Path file = Files.createTempFile("customers", ".journal");
+        try {
+            try (JournaledCustomerDataLayer db = JournaledCustomerDataLayer.open(file, new InMemoryCustomerDataLayer(), Durability.EVERY_WRITE, 0)) {
+                CustomerSync sync = new CustomerSync(db);
+                sync.syncWithDataLayer(createExternalCompany("12345", "470813-8895", "Acme Inc.", new ShoppingList("lipstick", "blusher")));
+                sync.syncWithDataLayer(createExternalCompany("12345", "470813-8895", "Acme Corporation"));
+            }
+            Files.write(file, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+            // ACT
+            InMemoryCustomerDataLayer replayed = new InMemoryCustomerDataLayer();
+            try (JournaledCustomerDataLayer db = JournaledCustomerDataLayer.open(file, replayed, Durability.OS_MANAGED, 0)) {
+                Customer customer = db.findByCompanyNumber("470813-8895");
+                assertEquals("Acme Corporation", customer.getName());
+                assertEquals(customer.getInternalId(), db.findByExternalId("12345").getInternalId());
+                assertEquals(List.of("lipstick", "blusher"), customer.getShoppingLists().get(0).getProducts());
+                assertTrue(db.containsShoppingList(new ShoppingList("lipstick", "blusher").getContentHash()));
+                assertEquals(1, replayed.getCustomerCount());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void concurrentWritersShareFsyncs() throws IOException {
+        Path file = Files.createTempFile("customers", ".journal");
+        try {
+            List<ExternalCustomer> messages = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                ExternalCustomer person = new ExternalCustomer();
+                person.setExternalId("person " + i);
+                person.setName("Joe Bloggs");
+                person.setShoppingLists(List.of());
+                messages.add(person);
+            }
+            CustomerJournal journal;
+            try (JournaledCustomerDataLayer db = JournaledCustomerDataLayer.open(file, new InMemoryCustomerDataLayer(), Durability.EVERY_WRITE, 0);
+                 ParallelCustomerSync sut = new ParallelCustomerSync(new CustomerSync(db), 8, 16)) {
+                // ACT
+                sut.syncAll(messages);
+                journal = db.getJournal();
+            }
+
+            assertEquals(400, journal.getEntriesAppended());
+            assertTrue(journal.getSyncs() <= journal.getEntriesAppended());
+            InMemoryCustomerDataLayer replayed = new InMemoryCustomerDataLayer();
+            JournaledCustomerDataLayer.open(file, replayed, Durability.OS_MANAGED, 0).close();
+            assertEquals(400, replayed.getCustomerCount());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
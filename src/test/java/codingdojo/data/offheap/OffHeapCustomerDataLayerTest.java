@@ -0,0 +1,124 @@
+package codingdojo.data.offheap;
+
+import codingdojo.business.CustomerSync;
+import codingdojo.entities.auxiliar.CustomerType;
+import codingdojo.entities.internal.Address;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.message.ExternalCustomer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapCustomerDataLayerTest {
+
+    @Test
+    public void syncedCustomersAreFoundByEveryKey() {
+        OffHeapCustomerDataLayer db = new OffHeapCustomerDataLayer();
+        CustomerSync sut = new CustomerSync(db);
+        ExternalCustomer company = new ExternalCustomer();
+        company.setExternalId("12345");
+        company.setCompanyNumber("470813-8895");
+        company.setName("Acme Inc.");
+        company.setAddress(new Address("123 main st", "Helsingborg", "SE-123 45"));
+        company.setShoppingLists(List.of(new ShoppingList("lipstick", "blusher")));
+
+        // ACT
+        sut.syncWithDataLayer(company);
+        Customer master = new Customer();
+        master.setCustomerType(CustomerType.COMPANY);
+        master.setExternalId("67890");
+        master.setMasterExternalId("12345");
+        db.createCustomerRecord(master);
+
+        Customer stored = db.findByExternalId("12345");
+        assertEquals("Acme Inc.", stored.getName());
+        assertEquals(CustomerType.COMPANY, stored.getCustomerType());
+        assertEquals("Helsingborg", stored.getAddress().getCity());
+        assertEquals(List.of("lipstick", "blusher"), stored.getShoppingLists().get(0).getProducts());
+        assertFalse(stored.hasChanges());
+        assertEquals(stored.getInternalId(), db.findByCompanyNumber("470813-8895").getInternalId());
+        assertEquals("67890", db.findByMasterExternalId("12345").getExternalId());
+        assertNotEquals(stored.getInternalId(), master.getInternalId());
+        assertTrue(db.containsShoppingList(new ShoppingList("lipstick", "blusher").getContentHash()));
+        assertNull(db.findByExternalId("470813-8895"));
+    }
+
+    @Test
+    public void growingRecordsMoveAndFreedSlabsAreReleased() {
+        OffHeapCustomerDataLayer db = new OffHeapCustomerDataLayer(4096);
+        for (int i = 0; i < 500; i++) {
+            Customer customer = new Customer();
+            customer.setExternalId("ext" + i);
+            customer.setCompanyNumber("company" + i);
+            db.createCustomerRecord(customer);
+        }
+        long reservedBeforeGrowth = db.getReservedBytes();
+
+        // ACT
+        for (int i = 0; i < 500; i++) {
+            Customer customer = db.findByExternalId("ext" + i);
+            customer.setCompanyNumber(null);
+            customer.addShoppingList(new ShoppingList("product with a rather long name " + i));
+            db.updateCustomerRecord(customer);
+        }
+        db.compact();
+
+        assertEquals(500, db.getCustomerCount());
+        for (int i = 0; i < 500; i++) {
+            Customer customer = db.findByExternalId("ext" + i);
+            assertEquals(List.of("product with a rather long name " + i), customer.getShoppingLists().get(0).getProducts());
+            assertNull(db.findByCompanyNumber("company" + i));
+        }
+        assertTrue(db.getReservedBytes() < reservedBeforeGrowth + db.getUsedBytes(),
+                "the slabs of the small records should have been released");
+    }
+
+    @Test
+    public void creatingAStoredInternalIdFailsAndKeepsTheRecord() {
+        OffHeapCustomerDataLayer db = new OffHeapCustomerDataLayer();
+        Customer stored = new Customer();
+        stored.setCustomerType(CustomerType.COMPANY);
+        stored.setExternalId("12345");
+        stored.setCompanyNumber("470813-8895");
+        db.createCustomerRecord(stored);
+        db.updateCustomerRecord(db.findByExternalId("12345"));
+        Customer duplicate = new Customer();
+        duplicate.setCustomerType(CustomerType.COMPANY);
+        duplicate.setInternalId(stored.getInternalId());
+        duplicate.setExternalId("67890");
+
+        // ACT
+        assertThrows(IllegalArgumentException.class, () -> db.createCustomerRecord(duplicate));
+
+        assertEquals(2, db.findByExternalId("12345").getVersion());
+        assertEquals(stored.getInternalId(), db.findByCompanyNumber("470813-8895").getInternalId());
+        assertNull(db.findByExternalId("67890"));
+    }
+
+    @Test
+    public void sharedKeyIsFoundOnTheOtherHolderOnceOneDropsIt() {
+        OffHeapCustomerDataLayer db = new OffHeapCustomerDataLayer();
+        Customer first = new Customer();
+        first.setCustomerType(CustomerType.PERSON);
+        first.setExternalId("first");
+        first.setMasterExternalId("shared");
+        db.createCustomerRecord(first);
+        Customer second = new Customer();
+        second.setCustomerType(CustomerType.PERSON);
+        second.setExternalId("second");
+        second.setMasterExternalId("shared");
+        db.createCustomerRecord(second);
+        assertEquals(second.getInternalId(), db.findByMasterExternalId("shared").getInternalId());
+
+        Customer loaded = db.findByExternalId("second");
+        loaded.setMasterExternalId(null);
+
+        // ACT
+        db.updateCustomerRecord(loaded);
+
+        assertEquals(first.getInternalId(), db.findByMasterExternalId("shared").getInternalId());
+    }
+}
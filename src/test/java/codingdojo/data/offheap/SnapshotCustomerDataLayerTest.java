@@ -0,0 +1,114 @@
+package codingdojo.data.offheap;
+
+import codingdojo.business.CustomerSync;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.exceptions.OptimisticLockException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalCompany;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotCustomerDataLayerTest {
+
+    @Test
+    public void snapshotIsServedAfterRestart() throws IOException {
+        Path directory = Files.createTempDirectory("snapshots");
+        Path file = directory.resolve("customers.snapshot");
+        try {
+            try (SnapshotCustomerDataLayer db = SnapshotCustomerDataLayer.open(file)) {
+                CustomerSync sync = new CustomerSync(db);
+                for (int i = 0; i < 100; i++) {
+                    sync.syncWithDataLayer(createExternalCompany("company " + i, "470813-" + i, "Acme " + i, new ShoppingList("lipstick")));
+                }
+
+                // ACT
+                db.takeSnapshot(file).join();
+                sync.syncWithDataLayer(createExternalCompany("company 7", "470813-7", "Acme renamed after the snapshot", new ShoppingList("lipstick")));
+                assertEquals("Acme renamed after the snapshot", db.findByCompanyNumber("470813-7").getName());
+            }
+
+            try (SnapshotCustomerDataLayer restarted = SnapshotCustomerDataLayer.open(file)) {
+                Customer customer = restarted.findByExternalId("company 42");
+                assertEquals("Acme 42", customer.getName());
+                assertEquals(customer.getInternalId(), restarted.findByCompanyNumber("470813-42").getInternalId());
+                assertEquals(List.of("lipstick"), customer.getShoppingLists().get(0).getProducts());
+                assertEquals("Acme 7", restarted.findByExternalId("company 7").getName());
+                assertNull(restarted.findByExternalId("company 100"));
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void keysMovedInAnOverlayHideTheSnapshotRecord() throws IOException {
+        Path directory = Files.createTempDirectory("snapshots");
+        Path file = directory.resolve("customers.snapshot");
+        try (SnapshotCustomerDataLayer db = SnapshotCustomerDataLayer.open(file)) {
+            Customer duplicate = new Customer();
+            duplicate.setExternalId("12345");
+            duplicate.setMasterExternalId("12345");
+            db.createCustomerRecord(duplicate);
+            db.takeSnapshot(file).join();
+
+            // ACT
+            Customer loaded = db.findByMasterExternalId("12345");
+            loaded.setMasterExternalId(null);
+            db.updateCustomerRecord(loaded);
+            Customer other = new Customer();
+            other.setExternalId("67890");
+            db.createCustomerRecord(other);
+            db.takeSnapshot(file).join();
+
+            assertNull(db.findByMasterExternalId("12345"));
+            assertEquals(duplicate.getInternalId(), db.findByExternalId("12345").getInternalId());
+            assertNotEquals(duplicate.getInternalId(), other.getInternalId());
+            try (CustomerSnapshot snapshot = CustomerSnapshot.open(file)) {
+                assertEquals(2, snapshot.getRecordCount());
+                assertNull(snapshot.findByMasterExternalId("12345"));
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void staleUpdateOfASnapshotRecordIsRejected() throws IOException {
+        Path directory = Files.createTempDirectory("snapshots");
+        Path file = directory.resolve("customers.snapshot");
+        try (SnapshotCustomerDataLayer db = SnapshotCustomerDataLayer.open(file)) {
+            new CustomerSync(db).syncWithDataLayer(createExternalCompany("12345", "470813-8895", "Acme Inc.", new ShoppingList("lipstick")));
+            db.takeSnapshot(file).join();
+            Customer first = db.findByExternalId("12345");
+            Customer second = db.findByExternalId("12345");
+            first.setName("Acme Corporation");
+            db.updateCustomerRecord(first);
+            second.setName("Acme Holding");
+
+            // ACT
+            OptimisticLockException thrown = assertThrows(OptimisticLockException.class, () -> db.updateCustomerRecord(second));
+
+            assertEquals(2, thrown.getStoredVersion());
+            assertEquals("Acme Corporation", db.findByExternalId("12345").getName());
+            assertEquals(2, db.findByExternalId("12345").getVersion());
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    private static void deleteAll(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,48 @@
+package codingdojo.entities.internal;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerShoppingListsTest {
+
+    @Test
+    public void appendingLeavesReturnedListsUnchanged() {
+        Customer customer = new Customer();
+        customer.setShoppingLists(List.of(new ShoppingList("eyeliner")));
+        List<ShoppingList> before = customer.getShoppingLists();
+
+        // ACT
+        List<ShoppingList> added = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            added.add(new ShoppingList("lipstick " + i));
+        }
+        customer.addShoppingLists(added);
+        List<ShoppingList> middle = customer.getShoppingLists();
+        customer.addShoppingList(new ShoppingList("blusher"));
+
+        assertEquals(1, before.size());
+        assertEquals(101, middle.size());
+        assertEquals(102, customer.getShoppingLists().size());
+        assertEquals(new ShoppingList("lipstick 99"), customer.getShoppingLists().get(100));
+        assertTrue(customer.hasShoppingList(new ShoppingList("blusher")));
+        assertTrue(customer.getChangedFields().contains(CustomerField.SHOPPING_LISTS));
+    }
+
+    @Test
+    public void appendingToAnOlderVersionDoesNotTouchTheLatest() {
+        AppendOnlyList<String> base = AppendOnlyList.<String>empty().append("a").append("b");
+        AppendOnlyList<String> latest = base.append("c");
+
+        // ACT
+        AppendOnlyList<String> branch = base.append("x");
+
+        assertEquals(List.of("a", "b", "c"), latest);
+        assertEquals(List.of("a", "b", "x"), branch);
+        assertEquals(List.of("a", "b"), base);
+    }
+}
@@ -0,0 +1,77 @@
+package codingdojo.entities.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductDictionaryTest {
+
+    @Test
+    public void shoppingListsShareTheProductStrings() {
+        ProductDictionary dictionary = new ProductDictionary();
+
+        // ACT
+        ShoppingList first = new ShoppingList(dictionary, new String("lipstick"), "blusher", null);
+        ShoppingList second = new ShoppingList(dictionary, new String("lipstick"), "mascara");
+
+        assertEquals(3, dictionary.size());
+        assertSame(first.getProducts().get(0), second.getProducts().get(0));
+        assertEquals(List.of("lipstick", "mascara"), second.getProducts());
+        assertNull(first.getProducts().get(2));
+        assertEquals(new ShoppingList("lipstick", "mascara"), second);
+        assertEquals(new ShoppingList("lipstick", "mascara").getContentHash(), second.getContentHash());
+    }
+
+    @Test
+    public void fullDictionaryLeavesNewProductsAsPlainStrings() {
+        ProductDictionary dictionary = new ProductDictionary(2);
+        new ShoppingList(dictionary, "lipstick", "blusher");
+
+        // ACT
+        ShoppingList shoppingList = new ShoppingList(dictionary, "lipstick", "mascara");
+
+        assertEquals(2, dictionary.size());
+        assertEquals(ProductDictionary.NOT_ENCODED, dictionary.encode("mascara"));
+        assertEquals(List.of("lipstick", "mascara"), shoppingList.getProducts());
+        assertEquals(new ShoppingList(dictionary, "lipstick", "mascara"), shoppingList);
+        assertEquals(new ShoppingList("lipstick", "mascara"), shoppingList);
+        assertEquals(new ShoppingList("lipstick", "mascara").getContentHash(), shoppingList.getContentHash());
+    }
+
+    @Test
+    public void concurrentEncodingHandsOutOneIdPerProduct() throws Exception {
+        ProductDictionary dictionary = new ProductDictionary();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    int[] ids = new int[10_000];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = dictionary.encode("product " + i);
+                    }
+                    return ids;
+                }));
+            }
+
+            // ACT
+            int[] expected = futures.get(0).get();
+            for (Future<int[]> future : futures) {
+                assertArrayEquals(expected, future.get());
+            }
+
+            assertEquals(10_000, dictionary.size());
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals("product " + i, dictionary.decode(expected[i]));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package codingdojo.feed;
+
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.ShoppingList;
+import codingdojo.entities.message.ExternalCustomer;
+import codingdojo.entities.message.ExternalCustomerDelta;
+import codingdojo.exceptions.FeedFormatException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import static codingdojo.business.helpers.ExternalCustomers.createExternalCompany;
+import static codingdojo.business.helpers.ExternalCustomers.createExternalPerson;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryFeedReaderTest {
+
+    private final Path file = createTempFile();
+
+    @AfterEach
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void readsBackWhatWasWritten() throws Exception {
+        List<ExternalCustomer> feed = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            if (i % 2 == 0) {
+                feed.add(createExternalCompany("company-" + i, "470813-8895", "Acme Inc.", new ShoppingList("lipstick", "blusher"), new ShoppingList("crème")));
+            } else {
+                ExternalCustomer person = createExternalPerson("person-" + i, "Joe Bloggs", 2233);
+                person.setAddress(null);
+                feed.add(person);
+            }
+        }
+        assertEquals(50, BinaryFeedWriter.convert(feed.iterator(), file));
+
+        List<ExternalCustomer> records = new ArrayList<>();
+        // a window smaller than most records, so every record needs its own mapping
+        try (BinaryFeedReader sut = BinaryFeedReader.open(file, 32)) {
+            // ACT
+            sut.forEachRemaining(records::add);
+
+            assertEquals(50, sut.getRecordsRead());
+            assertEquals(Files.size(file), sut.getBytesRead());
+        }
+
+        ExternalCustomer company = records.get(0);
+        assertEquals("company-0", company.getExternalId());
+        assertTrue(company.isCompany());
+        assertEquals("Acme Inc.", company.getName());
+        assertEquals("Helsingborg", company.getPostalAddress().getCity());
+        assertEquals(List.of("lipstick", "blusher"), company.getShoppingLists().get(0).getProducts());
+        assertEquals(List.of("crème"), company.getShoppingLists().get(1).getProducts());
+
+        ExternalCustomer person = records.get(49);
+        assertEquals("person-49", person.getExternalId());
+        assertFalse(person.isCompany());
+        assertEquals(Integer.valueOf(2233), person.getBonusPointsBalance());
+        assertNull(person.getPostalAddress());
+        assertTrue(person.getShoppingLists().isEmpty());
+    }
+
+    @Test
+    public void flyweightDecodesOnlyWhatIsAskedFor() throws Exception {
+        BinaryFeedWriter.convert(List.of(createExternalCompany("12345", "470813-8895", "Acme Inc.", new ShoppingList("lipstick", "blusher"), new ShoppingList("crème")), createExternalPerson("67890", "Joe Bloggs", 2233)).iterator(), file);
+
+        try (BinaryFeedReader sut = BinaryFeedReader.open(file)) {
+            // ACT
+            BinaryCustomerRecord record = sut.nextRecord();
+
+            assertTrue(record.isCompany());
+            assertEquals(2, record.getShoppingListCount());
+            assertNull(record.getBonusPointsBalance());
+
+            record = sut.nextRecord();
+            assertEquals("67890", record.getExternalId());
+            assertFalse(record.isCompany());
+            assertFalse(sut.hasNext());
+        }
+    }
+
+    @Test
+    public void deltaKeepsItsFieldMask() throws Exception {
+        ExternalCustomerDelta written = new ExternalCustomerDelta("12345", "470813-8895");
+        written.setPreferredStore("Nordstan");
+        written.setAddress(null);
+        BinaryFeedWriter.convert(List.of(written, createExternalCompany("67890", "470813-8895", "Acme Inc.", new ShoppingList("lipstick", "blusher"), new ShoppingList("crème"))).iterator(), file);
+
+        try (BinaryFeedReader sut = BinaryFeedReader.open(file)) {
+            // ACT
+            ExternalCustomer delta = sut.next();
+
+            assertEquals(EnumSet.of(CustomerField.PREFERRED_STORE, CustomerField.ADDRESS),
+                    ((ExternalCustomerDelta) delta).getPresentFields());
+            assertEquals("Nordstan", delta.getPreferredStore());
+            assertTrue(written.isPresent(CustomerField.EXTERNAL_ID) && delta.isPresent(CustomerField.EXTERNAL_ID));
+            assertTrue(written.isPresent(CustomerField.COMPANY_NUMBER) && delta.isPresent(CustomerField.COMPANY_NUMBER));
+            assertEquals(written.getFingerprint(), delta.getFingerprint());
+            assertFalse(sut.next() instanceof ExternalCustomerDelta);
+        }
+    }
+
+    @Test
+    public void truncatedFeedIsRejected() throws Exception {
+        BinaryFeedWriter.convert(List.of(createExternalCompany("12345", "470813-8895", "Acme Inc.", new ShoppingList("lipstick", "blusher"), new ShoppingList("crème"))).iterator(), file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        try (BinaryFeedReader sut = BinaryFeedReader.open(file)) {
+            // ACT
+            FeedFormatException thrown = assertThrows(FeedFormatException.class, sut::next);
+
+            assertTrue(thrown.getMessage().contains("record 1"));
+        }
+    }
+
+    @Test
+    public void tornLengthPrefixIsRejected() throws Exception {
+        BinaryFeedWriter.convert(List.of(createExternalPerson("12345", "Joe Bloggs", 2233), createExternalPerson("67890", "Joe Bloggs", 2233)).iterator(), file);
+        byte[] first;
+        try (BinaryFeedReader reader = BinaryFeedReader.open(file)) {
+            reader.next();
+            first = Arrays.copyOf(Files.readAllBytes(file), (int) reader.getBytesRead());
+        }
+        Files.write(file, Arrays.copyOf(first, first.length + 2));
+
+        try (BinaryFeedReader sut = BinaryFeedReader.open(file)) {
+            assertEquals("12345", sut.next().getExternalId());
+
+            // ACT
+            FeedFormatException thrown = assertThrows(FeedFormatException.class, sut::next);
+
+            assertTrue(thrown.getMessage().contains("record 2"));
+        }
+    }
+
+    @Test
+    public void corruptShoppingListCountIsRejected() throws Exception {
+        for (int count : new int[]{-1, Integer.MAX_VALUE}) {
+            BinaryFeedWriter.convert(List.of(createExternalPerson("67890", "Joe Bloggs", 2233)).iterator(), file);
+            byte[] bytes = Files.readAllBytes(file);
+            ByteBuffer.wrap(bytes).putInt(bytes.length - 4, count);
+            Files.write(file, bytes);
+
+            try (BinaryFeedReader sut = BinaryFeedReader.open(file)) {
+                // ACT
+                assertThrows(FeedFormatException.class, sut::next);
+            }
+        }
+    }
+
+
+    private static Path createTempFile() {
+        try {
+            return Files.createTempFile("feed", ".bin");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package codingdojo.feed;
+
+import codingdojo.business.CustomerSync;
+import codingdojo.business.ParallelCustomerSync;
+import codingdojo.business.helpers.FakeDatabase;
+import codingdojo.business.helpers.SynchronizedDatabase;
+import codingdojo.entities.auxiliar.CustomerField;
+import codingdojo.entities.internal.Customer;
+import codingdojo.entities.message.ExternalCustomer;
+import codingdojo.entities.message.ExternalCustomerDelta;
+import codingdojo.exceptions.DataAccessException;
+import codingdojo.exceptions.FeedFormatException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NdjsonExternalCustomerReaderTest {
+
+    private static final String FEED =
+            "{\"externalId\":\"12345\",\"companyNumber\":\"470813-8895\",\"name\":\"Acme \\\"Inc.\\\"\",\"unknown\":[1,2.5,true],"
+                    + "\"address\":{\"street\":\"123 main st\",\"city\":\"Helsingborg\",\"postalCode\":\"SE-123 45\"},"
+                    + "\"shoppingLists\":[{\"products\":[\"lipstick\",\"blusher\"]}]}\n"
+                    + "\n"
+                    + "{\"externalId\":\"67890\",\"name\":\"J\\u00f6e Bloggs\",\"preferredStore\":\"Nordstan\",\"bonusPointsBalance\":2233,"
+                    + "\"address\":null,\"shoppingLists\":[]}\r\n";
+
+    @Test
+    public void readsRecordsOneByOne() throws Exception {
+        List<ExternalCustomer> records = new ArrayList<>();
+        try (NdjsonExternalCustomerReader sut = reader(FEED)) {
+            sut.forEachRemaining(records::add);
+            assertEquals(2, sut.getRecordsRead());
+            assertEquals(FEED.getBytes(StandardCharsets.UTF_8).length, sut.getBytesRead());
+        }
+
+        ExternalCustomer company = records.get(0);
+        assertEquals("Acme \"Inc.\"", company.getName());
+        assertTrue(company.isCompany());
+        assertEquals("Helsingborg", company.getPostalAddress().getCity());
+        assertEquals(List.of("lipstick", "blusher"), company.getShoppingLists().get(0).getProducts());
+
+        ExternalCustomer person = records.get(1);
+        assertEquals("Jöe Bloggs", person.getName());
+        assertFalse(person.isCompany());
+        assertEquals(Integer.valueOf(2233), person.getBonusPointsBalance());
+        assertNull(person.getPostalAddress());
+        assertTrue(person.getShoppingLists().isEmpty());
+    }
+
+    @Test
+    public void deltaRecordOnlyHasItsFields() {
+        NdjsonExternalCustomerReader sut = reader("{\"delta\":true,\"externalId\":\"12345\",\"companyNumber\":\"470813-8895\","
+                + "\"bonusPointsBalance\":1300,\"address\":null}\n");
+
+        ExternalCustomerDelta delta = (ExternalCustomerDelta) sut.next();
+
+        assertEquals(EnumSet.of(CustomerField.BONUS_POINTS_BALANCE, CustomerField.ADDRESS), delta.getPresentFields());
+        assertEquals(Integer.valueOf(1300), delta.getBonusPointsBalance());
+        assertTrue(delta.isCompany());
+    }
+
+    @Test
+    public void invalidRecordReportsItsLine() {
+        NdjsonExternalCustomerReader sut = reader("{\"externalId\":\"12345\"}\n{\"externalId\":12345}\n");
+        sut.next();
+
+        FeedFormatException thrown = assertThrows(FeedFormatException.class, sut::next);
+
+        assertTrue(thrown.getMessage().contains("line 2"));
+    }
+
+    @Test
+    public void recordLongerThanTheLimitIsRejected() {
+        NdjsonExternalCustomerReader sut = new NdjsonExternalCustomerReader(
+                new ByteArrayInputStream(FEED.getBytes(StandardCharsets.UTF_8)), 64);
+
+        assertThrows(FeedFormatException.class, sut::next);
+    }
+
+    @Test
+    public void ingestionSyncsEveryRecordAndReportsProgress() {
+        FakeDatabase db = new FakeDatabase();
+        List<FeedProgress> reports = new ArrayList<>();
+        FeedIngestion sut = new FeedIngestion(reports::add, 1);
+
+        // ACT
+        FeedProgress progress = sut.ingest(reader(FEED), new CustomerSync(db));
+
+        assertEquals(2, progress.getRecords());
+        assertEquals(0, progress.getConflicts());
+        assertEquals(3, reports.size());
+        assertEquals("Jöe Bloggs", db.findByExternalId("67890").getName());
+        assertEquals("Acme \"Inc.\"", db.findByCompanyNumber("470813-8895").getName());
+    }
+
+    @Test
+    public void malformedValuesAreRejectedWithTheirLine() {
+        String deep = "{\"externalId\":" + "[".repeat(100_000) + "}";
+        NdjsonExternalCustomerReader sut = reader("{\"externalId\":\"1\",\"shoppingLists\":[null]}\n"
+                + "{\"externalId\":\"2\",\"bonusPointsBalance\":12.5}\n"
+                + deep + "\n");
+
+        assertTrue(assertThrows(FeedFormatException.class, sut::next).getMessage().contains("line 1"));
+        assertTrue(assertThrows(FeedFormatException.class, sut::next).getMessage().contains("line 2"));
+        assertTrue(assertThrows(FeedFormatException.class, sut::next).getMessage().contains("line 3"));
+    }
+
+    @Test
+    public void failedSyncIsCountedAndTheIngestionGoesOn() {
+        FakeDatabase db = new FakeDatabase() {
+            @Override
+            public Customer createCustomerRecord(Customer customer) {
+                if ("12345".equals(customer.getExternalId())) {
+                    throw new DataAccessException("connection lost");
+                }
+                return super.createCustomerRecord(customer);
+            }
+        };
+
+        // ACT
+        FeedProgress progress = new FeedIngestion(p -> { }, 10).ingest(reader(FEED), new CustomerSync(db));
+
+        assertEquals(2, progress.getRecords());
+        assertEquals(1, progress.getFailed());
+        assertNotNull(db.findByExternalId("67890"));
+    }
+
+    @Test
+    public void malformedRecordsAreCountedAndTheIngestionGoesOn() {
+        FakeDatabase db = new FakeDatabase();
+        String feed = "{\"externalId\":\"1\",\"name\":\"" + "x".repeat(100) + "\"}\n"
+                + "{\"externalId\":\"2\",\"bonusPointsBalance\":12.5}\n"
+                + "{\"externalId\":\"3\",\"name\":\"Joe Bloggs\",\"shoppingLists\":[]}\n";
+        NdjsonExternalCustomerReader reader = new NdjsonExternalCustomerReader(
+                new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)), 64);
+
+        // ACT
+        FeedProgress progress = new FeedIngestion(p -> { }, 10).ingest(reader, new CustomerSync(db));
+
+        assertEquals(3, progress.getRecords());
+        assertEquals(2, progress.getFailed());
+        assertNotNull(db.findByExternalId("3"));
+        assertEquals(1, db.getAllCustomers().size());
+    }
+
+    @Test
+    public void closingTheParallelSyncMidFeedEndsTheIngestion() {
+        ParallelCustomerSync parallelSync = new ParallelCustomerSync(new CustomerSync(new SynchronizedDatabase(new FakeDatabase())), 2, 4);
+        FeedIngestion sut = new FeedIngestion(progress -> parallelSync.close(), 1);
+
+        // ACT
+        assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> assertThrows(IllegalStateException.class, () -> sut.ingest(reader(FEED), parallelSync)));
+    }
+
+    private NdjsonExternalCustomerReader reader(String feed) {
+        return new NdjsonExternalCustomerReader(new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,36 @@
+package codingdojo.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesAreBucketUpperBounds() {
+        LatencyHistogram sut = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            sut.record(100);
+        }
+        sut.record(5000);
+
+        // ACT
+        HistogramSnapshot snapshot = sut.snapshot();
+
+        assertEquals(100, snapshot.getCount());
+        assertEquals(5000, snapshot.getMax());
+        assertEquals(127, snapshot.getPercentile(50));
+        assertEquals(127, snapshot.getPercentile(99));
+        assertEquals(5000, snapshot.getPercentile(100));
+        assertEquals(149.0, snapshot.getMean());
+    }
+
+    @Test
+    public void emptyHistogram() {
+        HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getPercentile(99));
+        assertEquals(0.0, snapshot.getMean());
+    }
+}